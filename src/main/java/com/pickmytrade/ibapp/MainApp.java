@@ -22,9 +22,14 @@ import com.google.gson.reflect.TypeToken;
 import com.google.pubsub.v1.Subscription;
 import com.ib.client.Contract;
 import com.ib.client.ContractDetails;
+import com.pickmytrade.ibapp.bussinesslogic.OrderOutboxSender;
 import com.pickmytrade.ibapp.bussinesslogic.PlaceOrderService;
+import com.pickmytrade.ibapp.bussinesslogic.SessionManager;
+import com.pickmytrade.ibapp.bussinesslogic.TwsConnectionManager;
 import com.pickmytrade.ibapp.bussinesslogic.TwsEngine;
 import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.PersistenceWriter;
+import com.pickmytrade.ibapp.db.RetentionJob;
 import com.pickmytrade.ibapp.db.entities.*;
 import javafx.animation.PauseTransition;
 import javafx.application.Application;
@@ -123,11 +128,13 @@ import com.pickmytrade.ibapp.config.LoggingConfig;
 public class MainApp extends Application {
     public TwsEngine twsEngine;
     private PlaceOrderService placeOrderService;
-    private int retrycheck_count = 1;
+    private SessionManager sessionManager;
     private final Gson gson = new GsonBuilder().serializeNulls().create();
     private final ExecutorService executor = Executors.newFixedThreadPool(32);
     private final ExecutorService websocketExecutor = Executors.newSingleThreadExecutor();
     private ExecutorService orderExecutor = Executors.newSingleThreadExecutor();
+    private volatile OrderOutboxSender orderOutboxSender;
+    private volatile RetentionJob retentionJob;
     private WebSocketClient websocket;
     private Label twsStatusLabel;
     private Label websocketStatusLabel; // Repurposed for server connection status
@@ -169,6 +176,11 @@ public class MainApp extends Application {
     private final AtomicLong networkDroppedTime = new AtomicLong(0);
     private int trade_server_port = 7507;
     private int tws_trade_port = 7497;
+    private int tws_client_id = 0;
+    // Optional second clientId for market data and lookups; null keeps everything on one connection
+    private Integer tws_data_client_id = null;
+    // Further TWS/Gateway logins hosted next to the primary one: [{"name", "tws_port", "client_id", "data_client_id"}]
+    private List<Map<String, Object>> extra_tws_sessions = new ArrayList<>();
     private String current_db_url;
     private static String pickMyTradeDirPath;
 
@@ -848,11 +860,23 @@ public class MainApp extends Application {
                 tradeServer.stop();
             }
 
-            if (twsEngine != null && twsEngine.isConnected()) {
-                log.info("Disconnecting TWS...");
-                twsEngine.disconnect();
+            if (sessionManager != null) {
+                log.info("Disconnecting TWS sessions...");
+                sessionManager.shutdown();
             }
 
+            if (orderOutboxSender != null) {
+                log.info("Stopping order outbox sender...");
+                orderOutboxSender.shutdown();
+            }
+
+            if (retentionJob != null) {
+                retentionJob.shutdown();
+            }
+
+            // Last, so writes queued by the components above are committed
+            PersistenceWriter.get().shutdown();
+
             if (websocket != null && websocket.isOpen()) {
                 log.info("Closing WebSocket...");
                 websocket.close();
@@ -973,6 +997,10 @@ public class MainApp extends Application {
                 Map<String, Object> last = configs.get(configs.size() - 1);
                 tws_trade_port = ((Number) last.get("tws_port")).intValue();
                 trade_server_port = ((Number) last.get("trade_port")).intValue();
+                tws_client_id = last.get("client_id") instanceof Number ? ((Number) last.get("client_id")).intValue() : 0;
+                tws_data_client_id = last.get("data_client_id") instanceof Number ? ((Number) last.get("data_client_id")).intValue() : null;
+                extra_tws_sessions = last.get("extra_sessions") instanceof List
+                        ? (List<Map<String, Object>>) last.get("extra_sessions") : new ArrayList<>();
                 current_db_url = (String) last.get("db_url");
             } else {
                 current_db_url = "jdbc:sqlite:" + pickMyTradeDirPath.replace("\\", "/") + "/IB_7497.db";
@@ -1627,12 +1655,25 @@ public class MainApp extends Application {
             log.info("Subscription ID: {}, Access Token: {}", lastSubscriptionId, accessTokenString);
 
             // Initialize after successful login
-            log.info("Creating TwsEngine");
-            twsEngine = new TwsEngine();
-            log.info("Creating PlaceOrderService");
-            placeOrderService = new PlaceOrderService(twsEngine);
+            log.info("Creating TWS sessions");
+            sessionManager = new SessionManager();
+            SessionManager.Session primarySession = sessionManager.addSession("primary", tws_trade_port, tws_client_id, tws_data_client_id);
+            for (Map<String, Object> extra : extra_tws_sessions) {
+                try {
+                    int extraPort = ((Number) extra.get("tws_port")).intValue();
+                    int extraClientId = extra.get("client_id") instanceof Number ? ((Number) extra.get("client_id")).intValue() : 0;
+                    Integer extraDataClientId = extra.get("data_client_id") instanceof Number
+                            ? ((Number) extra.get("data_client_id")).intValue() : null;
+                    String extraName = extra.get("name") != null ? (String) extra.get("name") : "tws-" + extraPort;
+                    sessionManager.addSession(extraName, extraPort, extraClientId, extraDataClientId);
+                } catch (Exception e) {
+                    log.error("Skipping invalid extra TWS session {}: {}", extra, e.getMessage());
+                }
+            }
+            twsEngine = primarySession.getEngine();
+            placeOrderService = primarySession.getPlaceOrderService();
             log.info("Initializing TradeServer");
-            tradeServer = new TradeServer(trade_server_port, placeOrderService);
+            tradeServer = new TradeServer(trade_server_port, sessionManager);
             log.info("Starting TradeServer");
             try {
                 tradeServer.start();
@@ -1640,8 +1681,8 @@ public class MainApp extends Application {
                 log.error("Failed to start trade server: {}", e.getMessage(), e);
                 showErrorPopup("Failed to start local trade server on port " + trade_server_port + ". Please check if the port is free or configure a different port.");
             }
-            log.info("Clearing OrderClient table");
-            DatabaseConfig.emptyOrderClientTable();
+            // order_clients is not cleared here: undelivered outbox entries, journal replay and reconnect
+            // reconciliation all need the rows, and RetentionJob archives closed orders
 
             connectionStage = new Stage();
             connectionStage.setTitle("Connection Status");
@@ -1666,8 +1707,9 @@ public class MainApp extends Application {
             heartbeat_new_token = accessTokenString;
             heartbeat_snew_token_id = accessTokenKey;
             orderExecutor.submit(this::scheduleOrderSender);
+            startRetentionJob();
 //                            executor.submit(() -> monitorHeartbeatAck(connectionStage));
-            executor.submit(() -> continuouslyCheckTwsConnection(connectionStage));
+            startTwsConnection();
             // Comment out WebSocket initialization as per requirement
             // websocketExecutor.submit(() -> checkWebsocket(connectionStage));
 
@@ -1820,69 +1862,77 @@ public class MainApp extends Application {
                     Ibsymbol // tradingClass (using localSymbol as initial value)
             );
 
-            // Fetch contract details synchronously
-            List<ContractDetails> contractDetailsList = twsEngine.reqContractDetailsSync(contract);
-            if (contractDetailsList == null || contractDetailsList.isEmpty()) {
-                log.error("No contract details found for contract: {}", contract.toString());
-                sendIbSettingsToApi(randomId, localSymbol, securityType, "LMT", exchange, symbol, "", "", currency,
-                        "", "", maturityDate, "", "", true, "No contract details found");
-                return;
-            }
-
-            // Extract details from the first contract
-            ContractDetails contractDetails = contractDetailsList.get(0);
-            Contract detailedContract = contractDetails.contract();
-            String lotSize = detailedContract.multiplier() != null ? detailedContract.multiplier() : "";
-            String minTick = contractDetails.minTick() > 0 ? String.valueOf(contractDetails.minTick()) : "";
-            String conId = String.valueOf(detailedContract.conid());
-            localSymbol = detailedContract.localSymbol() != null ? detailedContract.localSymbol() : "";
-            String tradingClass = detailedContract.tradingClass() != null ? detailedContract.tradingClass() : "";
-            String marketRule = contractDetails.marketRuleIds() != null ? contractDetails.marketRuleIds() : "";
-
-
-            sendIbSettingsToApi(
-                    randomId,
-                    localSymbol,
-                    securityType,
-                    "LMT",
-                    exchange,
-                    symbol,
-                    conId,
-                    Ibsymbol,
-                    currency,
-                    lotSize,
-                    minTick,
-                    maturityDate,
-                    tradingClass,
-                    marketRule,
-                    false,
-                    ""
-            );
+            // Contract details arrive on the TWS callback; the settings reply is built off the reader thread
+            String lookupLocalSymbol = localSymbol;
+            twsEngine.reqContractDetailsAsync(contract).thenAcceptAsync(contractDetailsList -> {
+                if (contractDetailsList == null || contractDetailsList.isEmpty()) {
+                    log.error("No contract details found for contract: {}", contract.toString());
+                    sendIbSettingsToApi(randomId, lookupLocalSymbol, securityType, "LMT", exchange, symbol, "", "", currency,
+                            "", "", maturityDate, "", "", true, "No contract details found");
+                    return;
+                }
 
+                // Extract details from the first contract
+                ContractDetails contractDetails = contractDetailsList.get(0);
+                Contract detailedContract = contractDetails.contract();
+                String lotSize = detailedContract.multiplier() != null ? detailedContract.multiplier() : "";
+                String minTick = contractDetails.minTick() > 0 ? String.valueOf(contractDetails.minTick()) : "";
+                String conId = String.valueOf(detailedContract.conid());
+                String resolvedLocalSymbol = detailedContract.localSymbol() != null ? detailedContract.localSymbol() : "";
+                String tradingClass = detailedContract.tradingClass() != null ? detailedContract.tradingClass() : "";
+                String marketRule = contractDetails.marketRuleIds() != null ? contractDetails.marketRuleIds() : "";
+
+
+                sendIbSettingsToApi(
+                        randomId,
+                        resolvedLocalSymbol,
+                        securityType,
+                        "LMT",
+                        exchange,
+                        symbol,
+                        conId,
+                        Ibsymbol,
+                        currency,
+                        lotSize,
+                        minTick,
+                        maturityDate,
+                        tradingClass,
+                        marketRule,
+                        false,
+                        ""
+                );
+            }, executor).exceptionally(e -> {
+                sendIbSettingsError(tradeData, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return null;
+            });
         } catch (Exception e) {
-            log.error("Error processing add_ib_settings: {}", e.getMessage(), e);
-            String errorMsg = e.getMessage() != null ? e.getMessage() : "Failed to process add_ib_settings";
-            sendIbSettingsToApi(
-                    (String) tradeData.get("random_id"),
-                    (String) tradeData.get("LocalSymbol"),
-                    (String) tradeData.get("SecurityType"),
-                    "LMT",
-                    (String) tradeData.get("Exchange"),
-                    (String) tradeData.get("Symbol"),
-                    "",
-                    "",
-                    (String) tradeData.get("Currency"),
-                    "",
-                    "",
-                    (String) tradeData.get("MaturityDate"),
-                    "",
-                    "",
-                    true,
-                    errorMsg
-            );
+            sendIbSettingsError(tradeData, e);
         }
     }
 
+    private void sendIbSettingsError(Map<String, Object> tradeData, Throwable e) {
+        log.error("Error processing add_ib_settings: {}", e.getMessage(), e);
+        String errorMsg = e.getMessage() != null ? e.getMessage() : "Failed to process add_ib_settings";
+        sendIbSettingsToApi(
+                (String) tradeData.get("random_id"),
+                (String) tradeData.get("LocalSymbol"),
+                (String) tradeData.get("SecurityType"),
+                "LMT",
+                (String) tradeData.get("Exchange"),
+                (String) tradeData.get("Symbol"),
+                "",
+                "",
+                (String) tradeData.get("Currency"),
+                "",
+                "",
+                (String) tradeData.get("MaturityDate"),
+                "",
+                "",
+                true,
+                errorMsg
+        );
+    }
+
     private void sendIbSettingsToApi(String randomId, String localSymbol, String instType, String orderType,
                                      String exchange, String symbol, String conId, String ibSymbol, String currency,
                                      String lotSize, String minTick, String maturityDate, String tradingClass,
@@ -2413,15 +2463,7 @@ public class MainApp extends Application {
 
     private void restartOrderStatusProcessor() {
         log.info("Restarting order status processor...");
-        TwsEngine.orderStatusProcessingStarted.set(false);
-        TwsEngine.orderStatusExecutor.shutdownNow();
-        try {
-            if (!TwsEngine.orderStatusExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                log.warn("Order status executor did not terminate gracefully");
-            }
-        } catch (InterruptedException e) {
-            log.error("Interrupted during order status executor shutdown", e);
-        }
+        sessionManager.restartOrderStatusProcessing();
         orderExecutor.shutdownNow();
         try {
             if (!orderExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -2431,10 +2473,6 @@ public class MainApp extends Application {
             log.error("Interrupted during order executor shutdown", e);
         }
 
-        // Optionally clear the queue if you want to discard pending items
-        // TwsEngine.orderStatusQueue.clear();
-        TwsEngine.orderStatusExecutor = Executors.newSingleThreadExecutor();
-        twsEngine.startOrderStatusProcessing();
         log.info("Order status processor restarted successfully");
 
 
@@ -2714,98 +2752,34 @@ public class MainApp extends Application {
         return new Scene(layout, 920, 620);   // Slightly wider for better button fit
     }
 
-    private void continuouslyCheckTwsConnection(Stage stage) {
-        log.info("Starting continuous TWS connection check");
+    // Connection state is driven by TWS callbacks in TwsConnectionManager; this only maps it onto the UI
+    private void startTwsConnection() {
+        log.info("Starting TWS connection manager");
         Platform.runLater(() -> consoleLog.clear());
-        boolean placetrade_new = false;
-        long lastConnectAttemptAt = System.currentTimeMillis();
-        twsEngine.twsConnect(tws_trade_port);
-
-        while (true) {
-            try {
-                Thread.sleep(2000);
-                if (twsEngine.isConnected()) {
-                    log.debug("TWS is connected");
+        TwsConnectionManager connectionManager = sessionManager.getPrimary().getConnectionManager();
+        connectionManager.addStateListener(state -> {
+            switch (state) {
+                case CONNECTING:
+                    updateTwsStatus("connecting");
+                    break;
+                case BACKOFF:
+                    updateTwsStatus("retry " + connectionManager.getAttempt());
+                    break;
+                case CONNECTED:
                     updateTwsStatus("connected");
-
-                    placeOrderService.setTwsEngine(twsEngine);
-                    if (!placetrade_new) {
-                        log.info("Starting place order service");
-                        placetrade_new = true;
-                        placeRemainingTpSlOrderWrapper(appStartTime);
-                    }
-                    retrycheck_count = 1;
-                } else {
-                    long sinceAttemptMs = System.currentTimeMillis() - lastConnectAttemptAt;
-                    if (sinceAttemptMs < 15_000) {
-                        updateTwsStatus("connecting");
-                        continue;
-                    }
-                    log.info("TWS disconnected or not yet connected. Attempting to connect...");
-                    updateTwsStatus("disconnected");
-                    placetrade_new = false;
-                    twsEngine.disconnect();
-                    TwsEngine.orderStatusProcessingStarted.set(false);
-                    twsEngine = new TwsEngine();
-                    lastConnectAttemptAt = System.currentTimeMillis();
-                    connectToTwsWithRetries(stage);
-                }
-
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                log.info("TWS connection check interrupted");
-                break;
-            } catch (Exception e) {
-                log.error("Error checking TWS connection: {}", e.getMessage());
-                updateTwsStatus("error");
-            }
-        }
-        log.info("TWS connection check loop stopped");
-    }
-
-    private void connectToTwsWithRetries(Stage stage) {
-        int maxRetries = Integer.MAX_VALUE;
-        int delaySeconds = 10;
-        int attempt = 1;
-
-        log.info("Attempting to connect to TWS with indefinite retries");
-        updateTwsStatus("connecting");
-
-        while (true) {
-            try {
-                log.info("Attempt {} to connect to TWS...", attempt);
-                twsEngine.twsConnect(tws_trade_port);
-                long connectDeadline = System.currentTimeMillis() + 15_000;
-                while (!twsEngine.isConnected() && System.currentTimeMillis() < connectDeadline) {
-                    Thread.sleep(500);
-                }
-                if (twsEngine.isConnected()) {
-                    log.info("TWS connected successfully on attempt {}", attempt);
+                    break;
+                case READY:
                     updateTwsStatus("connected");
                     placeOrderService.setTwsEngine(twsEngine);
-                    return;
-                } else {
-                    log.warn("TWS connection failed on attempt {}", attempt);
-                    updateTwsStatus("retry " + attempt);
-                    twsEngine.disconnect();
-                    TwsEngine.orderStatusProcessingStarted.set(false);
-                    twsEngine = new TwsEngine();
-                }
-            } catch (Exception e) {
-                log.error("Error during TWS connection attempt {}: {}", attempt, e.getMessage());
-                updateTwsStatus("retry " + attempt);
-            }
-
-            attempt++;
-            try {
-                log.debug("Waiting {} seconds before next retry", delaySeconds);
-                Thread.sleep(delaySeconds * 1000);
-            } catch (InterruptedException e) {
-                log.info("TWS connection retry sleep interrupted");
-                updateTwsStatus("disconnected");
-                return;
+                    log.info("Starting place order service");
+                    executor.submit(() -> placeRemainingTpSlOrderWrapper(appStartTime));
+                    break;
+                default:
+                    updateTwsStatus("disconnected");
             }
-        }
+        });
+        connectionManager.start();
+        sessionManager.startSecondarySessions(appStartTime);
     }
 
     private void updateTwsStatus(String status) {
@@ -2835,48 +2809,6 @@ public class MainApp extends Application {
         });
     }
 
-    private void sendOrdersToApiOnce() {
-        try {
-            Thread.sleep(2000);
-            List<OrderClient> orders = DatabaseConfig.getOrderClientsNotSentToServer();
-            Token tokenRecord = DatabaseConfig.getToken();
-            String authToken = tokenRecord != null ? tokenRecord.getToken() : "";
-            ConnectionEntity conn = DatabaseConfig.getConnectionEntity();
-            String connName = conn != null ? conn.getConnectionName() : "";
-
-            for (OrderClient order : orders) {
-                log.debug("Sending order from Main App: {}", order);
-                Map<String, Object> data = placeOrderService.orderToDict(order);
-
-                try (CloseableHttpClient client = HttpClients.createDefault()) {
-                    HttpPost post = new HttpPost("https://api.pickmytrade.io/v5/exe_save_orders");
-                    String payload = gson.toJson(data);
-                    log.info("payload to send to API: {}", payload);
-                    post.setEntity(new StringEntity(payload));
-                    post.setHeader("Authorization", authToken + "_" + connName);
-                    post.setHeader("Content-Type", "application/json");
-
-                    try (CloseableHttpResponse response = client.execute(post)) {
-                        String responseText = EntityUtils.toString(response.getEntity());
-                        log.info("Order API response: {}", responseText);
-
-                        Map<String, Object> updateFields = new HashMap<>();
-                        if (response.getStatusLine().getStatusCode() == 200) {
-                            updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Pushed.toString());
-                        } else {
-                            updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Failed.toString());
-                        }
-                        DatabaseConfig.updateOrderClient(order, updateFields);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.warn("Error sending orders to API: {}", e.getMessage());
-            log.error("Error sending orders: {}", e.getMessage());
-        }
-    }
-
-
     private void sendHeartbeatToApiOnce() {
 
 //        heartbeat_auth_token = (String) response.get("connection_name");
@@ -2984,13 +2916,17 @@ public class MainApp extends Application {
     }
 
     private void scheduleOrderSender() {
-        scheduler.scheduleWithFixedDelay(() -> {
-            try {
-                sendOrdersToApiOnce();
-            } catch (Exception e) {
-                log.error("Scheduled task error: {}", e.getMessage());
-            }
-        }, 0, 2, TimeUnit.SECONDS);
+        if (orderOutboxSender == null) {
+            orderOutboxSender = new OrderOutboxSender(placeOrderService::orderToDict);
+        }
+        orderOutboxSender.start();
+    }
+
+    private synchronized void startRetentionJob() {
+        if (retentionJob == null) {
+            retentionJob = RetentionJob.fromSystemProperties();
+            retentionJob.start();
+        }
     }
 
     private void monitorHeartbeatAck(Stage window) {
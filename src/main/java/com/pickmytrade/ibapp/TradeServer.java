@@ -2,7 +2,7 @@ package com.pickmytrade.ibapp;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
-import com.pickmytrade.ibapp.bussinesslogic.PlaceOrderService;
+import com.pickmytrade.ibapp.bussinesslogic.SessionManager;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import org.slf4j.Logger;
@@ -17,14 +17,14 @@ import java.util.concurrent.ThreadLocalRandom;
 
 public class TradeServer {
     private static final Logger log = LoggerFactory.getLogger(TradeServer.class);
-    private final PlaceOrderService placeOrderService;
+    private final SessionManager sessionManager;
     private final Gson gson = new Gson();
     private HttpServer server;
     private final int port;
 
-    public TradeServer(int port,PlaceOrderService placeOrderService) {
+    public TradeServer(int port, SessionManager sessionManager) {
         this.port = port;
-        this.placeOrderService = placeOrderService;
+        this.sessionManager = sessionManager;
     }
 
     public void start() throws IOException {
@@ -67,8 +67,8 @@ public class TradeServer {
                 }
 
                 long startTime = System.currentTimeMillis();
-                // Process trade asynchronously without blocking
-                placeOrderService.placeTrade(tradeData).whenComplete((result, exception) -> {
+                // Process trade asynchronously without blocking, on the session that manages the account
+                sessionManager.placeTrade(tradeData).whenComplete((result, exception) -> {
                     try {
                         long duration = System.currentTimeMillis() - startTime;
                         log.info("Trade placement completed in {} ms with result: {}", duration, result);
@@ -0,0 +1,136 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Latest account values for every managed account, fed by the account summary and per-account update subscriptions. Every update swaps in a new
+// immutable snapshot, so readers get a consistent view with a plain map lookup and never block the reader thread.
+public class AccountStateCache {
+    private final Map<String, AccountSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public AccountSnapshot get(String account) {
+        return account != null ? snapshots.get(account) : null;
+    }
+
+    public void onAccountValue(String account, String key, String value, String currency) {
+        if (account == null || key == null || value == null) {
+            return;
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        switch (key) {
+            case "NetLiquidation":
+                snapshots.compute(account, (acc, old) -> base(acc, old).withNetLiquidation(amount, currency));
+                break;
+            case "BuyingPower":
+                snapshots.compute(account, (acc, old) -> base(acc, old).withBuyingPower(amount));
+                break;
+            case "AvailableFunds":
+                snapshots.compute(account, (acc, old) -> base(acc, old).withAvailableFunds(amount));
+                break;
+            case "InitMarginReq":
+                snapshots.compute(account, (acc, old) -> base(acc, old).withInitMargin(amount));
+                break;
+            case "MaintMarginReq":
+                snapshots.compute(account, (acc, old) -> base(acc, old).withMaintMargin(amount));
+                break;
+            case "GrossPositionValue":
+                snapshots.compute(account, (acc, old) -> base(acc, old).withGrossPositionValue(amount));
+                break;
+            default:
+                // Other account keys are not used for sizing or risk
+        }
+    }
+
+    public void clear() {
+        snapshots.clear();
+        log.info("Account state cache cleared");
+    }
+
+    private static AccountSnapshot base(String account, AccountSnapshot old) {
+        return old != null ? old : new AccountSnapshot(account, null, Double.NaN, Double.NaN, Double.NaN,
+                Double.NaN, Double.NaN, Double.NaN, 0);
+    }
+
+    public static final class AccountSnapshot {
+        private final String account;
+        private final String currency;
+        private final double netLiquidation;
+        private final double buyingPower;
+        private final double availableFunds;
+        private final double initMargin;
+        private final double maintMargin;
+        // Sum of the absolute market values of every position in the account
+        private final double grossPositionValue;
+        private final long updatedAtMillis;
+
+        private AccountSnapshot(String account, String currency, double netLiquidation, double buyingPower,
+                                double availableFunds, double initMargin, double maintMargin,
+                                double grossPositionValue, long updatedAtMillis) {
+            this.account = account;
+            this.currency = currency;
+            this.netLiquidation = netLiquidation;
+            this.buyingPower = buyingPower;
+            this.availableFunds = availableFunds;
+            this.initMargin = initMargin;
+            this.maintMargin = maintMargin;
+            this.grossPositionValue = grossPositionValue;
+            this.updatedAtMillis = updatedAtMillis;
+        }
+
+        public String getAccount() { return account; }
+        public String getCurrency() { return currency; }
+        // Values not yet received from TWS are NaN
+        public double getNetLiquidation() { return netLiquidation; }
+        public double getBuyingPower() { return buyingPower; }
+        public double getAvailableFunds() { return availableFunds; }
+        public double getInitMargin() { return initMargin; }
+        public double getMaintMargin() { return maintMargin; }
+        public double getGrossPositionValue() { return grossPositionValue; }
+        public long getUpdatedAtMillis() { return updatedAtMillis; }
+
+        public long ageMillis() {
+            return System.currentTimeMillis() - updatedAtMillis;
+        }
+
+        public boolean isFresh(long maxAgeMillis) {
+            return ageMillis() <= maxAgeMillis;
+        }
+
+        private AccountSnapshot withNetLiquidation(double value, String valueCurrency) {
+            return new AccountSnapshot(account, valueCurrency, value, buyingPower, availableFunds, initMargin,
+                    maintMargin, grossPositionValue, System.currentTimeMillis());
+        }
+
+        private AccountSnapshot withBuyingPower(double value) {
+            return new AccountSnapshot(account, currency, netLiquidation, value, availableFunds, initMargin,
+                    maintMargin, grossPositionValue, System.currentTimeMillis());
+        }
+
+        private AccountSnapshot withAvailableFunds(double value) {
+            return new AccountSnapshot(account, currency, netLiquidation, buyingPower, value, initMargin,
+                    maintMargin, grossPositionValue, System.currentTimeMillis());
+        }
+
+        private AccountSnapshot withInitMargin(double value) {
+            return new AccountSnapshot(account, currency, netLiquidation, buyingPower, availableFunds, value,
+                    maintMargin, grossPositionValue, System.currentTimeMillis());
+        }
+
+        private AccountSnapshot withMaintMargin(double value) {
+            return new AccountSnapshot(account, currency, netLiquidation, buyingPower, availableFunds, initMargin,
+                    value, grossPositionValue, System.currentTimeMillis());
+        }
+
+        private AccountSnapshot withGrossPositionValue(double value) {
+            return new AccountSnapshot(account, currency, netLiquidation, buyingPower, availableFunds, initMargin,
+                    maintMargin, value, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.entities.OrderStatusEvent;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Order status updates waiting for the status loop of one session. Every update is written to
+// order_status_queue when it is offered and deleted only once the loop has applied it, so a processor restart
+// or a crash replays whatever was not applied. Up to MEMORY_CAPACITY updates are held in memory; past that,
+// new updates live only in the table and are read back in order as the loop catches up, so offering never
+// blocks and never drops.
+public class DurableStatusQueue {
+    private static final int MEMORY_CAPACITY = 1000;
+    private static final int REFILL_BATCH = 500;
+    // Spilled rows may still be waiting for their commit; the loop checks again after this
+    private static final long REFILL_RETRY_MS = 20;
+    private static final long REPLAY_WINDOW_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final String session;
+    private final Object lock = new Object();
+    private final ArrayDeque<OrderStatusEvent> memory = new ArrayDeque<>();
+    // Applied updates whose delete is not committed yet; a replay must not hand them out again
+    private final Set<Long> completing = ConcurrentHashMap.newKeySet();
+    private long lastSeq;
+    // Highest seq whose table write has finished; the writer applies them in order
+    private long persistedSeq;
+    private boolean spilling;
+    private long spillFromSeq;
+
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    public DurableStatusQueue(String session) {
+        this.session = session;
+        try {
+            int pruned = DatabaseConfig.pruneStatusEvents(session, System.currentTimeMillis() - REPLAY_WINDOW_MS);
+            lastSeq = DatabaseConfig.getMaxStatusEventSeq(session);
+            persistedSeq = lastSeq;
+            log.info("Order status queue for session {} opened at seq {}, {} stale updates pruned", session, lastSeq, pruned);
+        } catch (SQLException e) {
+            log.error("Could not read order status queue for session {}: {}", session, e.getMessage());
+        }
+        replayUnapplied();
+    }
+
+    // Never blocks the caller; the table write is handed to the persistence writer
+    public void offer(OrderStatusEvent event) {
+        synchronized (lock) {
+            event.setSession(session);
+            event.setSeq(++lastSeq);
+            event.setEnqueuedAt(System.currentTimeMillis());
+            long seq = event.getSeq();
+            DatabaseConfig.saveStatusEvent(event).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    log.error("Order status {} for order {} not persisted: {}", seq, event.getOrderId(), e.getMessage());
+                }
+                synchronized (lock) {
+                    persistedSeq = Math.max(persistedSeq, seq);
+                }
+            });
+            if (!spilling && memory.size() < MEMORY_CAPACITY) {
+                memory.add(event);
+            } else {
+                if (!spilling) {
+                    spilling = true;
+                    spillFromSeq = seq;
+                    log.warn("Order status queue for session {} full at {} updates, spilling to disk", session,
+                            memory.size());
+                }
+                spilled.increment();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    // The returned update stays in the table until complete() is called for it
+    public OrderStatusEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (needsRefill()) {
+                refill();
+            }
+            synchronized (lock) {
+                OrderStatusEvent event = memory.poll();
+                if (event != null) {
+                    return event;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                long wait = spilling ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(REFILL_RETRY_MS)) : remaining;
+                TimeUnit.NANOSECONDS.timedWait(lock, wait);
+            }
+        }
+    }
+
+    public void complete(OrderStatusEvent event) {
+        long seq = event.getSeq();
+        completing.add(seq);
+        DatabaseConfig.deleteStatusEvent(session, seq).whenComplete((ignored, e) -> {
+            completing.remove(seq);
+            if (e != null) {
+                log.error("Applied order status {} could not be removed from the queue: {}", seq, e.getMessage());
+            }
+        });
+    }
+
+    // Drops the in-memory copies and reads every update not yet applied back from the table, e.g. after the
+    // processor was interrupted part way through one
+    public void replayUnapplied() {
+        synchronized (lock) {
+            memory.clear();
+            spilling = true;
+            spillFromSeq = 0;
+            lock.notifyAll();
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return memory.size() + (spilling ? (int) Math.max(0, lastSeq - spillFromSeq + 1) : 0);
+        }
+    }
+
+    public long getSpilledCount() { return spilled.sum(); }
+    public long getReplayedCount() { return replayed.sum(); }
+
+    private boolean needsRefill() {
+        synchronized (lock) {
+            return spilling && memory.isEmpty();
+        }
+    }
+
+    // Only the status loop thread refills, so reading outside the lock cannot hand an update out twice
+    private void refill() {
+        long fromSeq;
+        long persistedUpTo;
+        synchronized (lock) {
+            fromSeq = spillFromSeq;
+            persistedUpTo = persistedSeq;
+        }
+        List<OrderStatusEvent> events;
+        try {
+            events = DatabaseConfig.getStatusEvents(session, fromSeq, REFILL_BATCH);
+        } catch (SQLException e) {
+            log.error("Could not read spilled order statuses for session {}: {}", session, e.getMessage());
+            return;
+        }
+        synchronized (lock) {
+            if (spillFromSeq != fromSeq) {
+                // replayUnapplied() moved the read position meanwhile
+                return;
+            }
+            for (OrderStatusEvent event : events) {
+                if (!completing.contains(event.getSeq())) {
+                    memory.add(event);
+                }
+                spillFromSeq = event.getSeq() + 1;
+            }
+            if (events.size() < REFILL_BATCH) {
+                // Everything written before the read was returned; gaps are applied or failed updates
+                spillFromSeq = Math.max(spillFromSeq, persistedUpTo + 1);
+            }
+            replayed.add(events.size());
+            if (spillFromSeq > lastSeq) {
+                spilling = false;
+                if (spilled.sum() > 0 || replayed.sum() > 0) {
+                    log.info("Order status queue for session {} caught up: {} spilled, {} read back from disk",
+                            session, spilled.sum(), replayed.sum());
+                }
+            }
+        }
+    }
+}
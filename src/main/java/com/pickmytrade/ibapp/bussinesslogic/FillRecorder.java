@@ -0,0 +1,218 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import com.ib.client.CommissionReport;
+import com.ib.client.Contract;
+import com.ib.client.Decimal;
+import com.ib.client.Execution;
+import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.entities.Fill;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Records every TWS execution and its commission into the append-only fills table. Callbacks only touch
+// memory; a single flusher writes them in batched transactions. A fill waits briefly for its commission
+// report so most rows are written once, late commissions are applied as a batched update.
+public class FillRecorder {
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final long COMMISSION_WAIT_MS = 5000;
+    private static final long PRELOAD_WINDOW_MS = TimeUnit.HOURS.toMillis(24);
+    private static final long PRUNE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Object lock = new Object();
+    private final Map<String, Fill> pendingFills = new HashMap<>();
+    private final Map<String, Fill> lateCommissions = new HashMap<>();
+    // execId -> recorded time; like the preload, only the last PRELOAD_WINDOW_MS is kept
+    private final Map<String, Long> knownExecIds = new ConcurrentHashMap<>();
+    // permId -> {filled quantity, filled notional, last recorded time}; permIds are unique across clients and
+    // sessions, order ids are not
+    private final Map<Integer, double[]> orderTotals = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+
+    public FillRecorder() {
+        flusher.execute(this::loadRecentFills);
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::pruneOld, PRUNE_INTERVAL_MS, PRUNE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Live executions and reqExecutions backfill both land here; anything already recorded is skipped
+    public void onExecution(Contract contract, Execution execution) {
+        long now = System.currentTimeMillis();
+        if (execution == null || execution.execId() == null || knownExecIds.putIfAbsent(execution.execId(), now) != null) {
+            return;
+        }
+        Fill fill = new Fill();
+        fill.setExecId(execution.execId());
+        fill.setOrderId(execution.orderId());
+        fill.setPermId(execution.permId());
+        fill.setAccount(execution.acctNumber());
+        fill.setSymbol(contract != null ? contract.symbol() : null);
+        fill.setSecType(contract != null && contract.secType() != null ? contract.secType().name() : null);
+        fill.setSide(execution.side());
+        fill.setShares(toDouble(execution.shares()));
+        fill.setPrice(execution.price());
+        fill.setCumQty(toDouble(execution.cumQty()));
+        fill.setAvgPrice(execution.avgPrice());
+        fill.setExecTime(execution.time());
+        fill.setRecordedAt(now);
+
+        addToTotals(fill);
+        synchronized (lock) {
+            pendingFills.put(fill.getExecId(), fill);
+        }
+        log.debug("Execution recorded: execId={}, orderId={}, shares={}, price={}",
+                fill.getExecId(), fill.getOrderId(), fill.getShares(), fill.getPrice());
+    }
+
+    public void onCommission(CommissionReport report) {
+        if (report == null || report.execId() == null) {
+            return;
+        }
+        synchronized (lock) {
+            Fill pending = pendingFills.get(report.execId());
+            if (pending != null) {
+                pending.setCommission(report.commission());
+                pending.setCommissionCurrency(report.currency());
+                return;
+            }
+            Fill update = new Fill();
+            update.setExecId(report.execId());
+            update.setCommission(report.commission());
+            update.setCommissionCurrency(report.currency());
+            lateCommissions.put(report.execId(), update);
+        }
+    }
+
+    // Volume-weighted average over every execution seen for the order, 0 when none is known
+    public double averagePrice(int permId) {
+        if (permId == 0) {
+            return 0;
+        }
+        double[] totals = orderTotals.get(permId);
+        if (totals == null) {
+            return 0;
+        }
+        synchronized (totals) {
+            return totals[0] > 0 ? totals[1] / totals[0] : 0;
+        }
+    }
+
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(5, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flusher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // Whatever is still pending is written without waiting for commissions
+        flush(true);
+    }
+
+    private void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean drainAll) {
+        long now = System.currentTimeMillis();
+        List<Fill> ready = new ArrayList<>();
+        List<Fill> commissions;
+        synchronized (lock) {
+            Iterator<Fill> it = pendingFills.values().iterator();
+            while (it.hasNext()) {
+                Fill fill = it.next();
+                if (drainAll || fill.getCommission() != null || now - fill.getRecordedAt() >= COMMISSION_WAIT_MS) {
+                    ready.add(fill);
+                    it.remove();
+                }
+            }
+            commissions = new ArrayList<>(lateCommissions.values());
+            lateCommissions.clear();
+        }
+        if (ready.isEmpty() && commissions.isEmpty()) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            DatabaseConfig.saveFills(ready);
+            DatabaseConfig.updateFillCommissions(commissions);
+            log.info("Flushed {} fills and {} commission updates in {} ms", ready.size(), commissions.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (SQLException e) {
+            log.error("Failed to write fills, retrying next flush: {}", e.getMessage());
+            synchronized (lock) {
+                for (Fill fill : ready) {
+                    pendingFills.putIfAbsent(fill.getExecId(), fill);
+                }
+                for (Fill update : commissions) {
+                    lateCommissions.putIfAbsent(update.getExecId(), update);
+                }
+            }
+        }
+    }
+
+    // Seeds dedupe and average prices from what was written before a restart
+    private void loadRecentFills() {
+        try {
+            List<Fill> fills = DatabaseConfig.getFillsSince(System.currentTimeMillis() - PRELOAD_WINDOW_MS);
+            int loaded = 0;
+            for (Fill fill : fills) {
+                long recordedAt = fill.getRecordedAt() != null ? fill.getRecordedAt() : System.currentTimeMillis();
+                if (knownExecIds.putIfAbsent(fill.getExecId(), recordedAt) == null) {
+                    addToTotals(fill);
+                    loaded++;
+                }
+            }
+            log.info("Loaded {} recorded fills from the last 24 hours", loaded);
+        } catch (SQLException e) {
+            log.error("Failed to load recorded fills: {}", e.getMessage());
+        }
+    }
+
+    // Executions older than the preload window cannot come back from reqExecutions, so their ids and order
+    // totals are dropped the same way a restart would drop them
+    private void pruneOld() {
+        long cutoff = System.currentTimeMillis() - PRELOAD_WINDOW_MS;
+        int execIdsBefore = knownExecIds.size();
+        int ordersBefore = orderTotals.size();
+        knownExecIds.values().removeIf(recordedAt -> recordedAt < cutoff);
+        orderTotals.values().removeIf(totals -> {
+            synchronized (totals) {
+                return totals[2] < cutoff;
+            }
+        });
+        log.debug("Pruned {} execution ids and {} order totals older than 24 hours",
+                execIdsBefore - knownExecIds.size(), ordersBefore - orderTotals.size());
+    }
+
+    private void addToTotals(Fill fill) {
+        if (fill.getPermId() == null || fill.getPermId() == 0 || fill.getShares() == null || fill.getPrice() == null) {
+            return;
+        }
+        double[] totals = orderTotals.computeIfAbsent(fill.getPermId(), id -> new double[3]);
+        synchronized (totals) {
+            totals[0] += fill.getShares();
+            totals[1] += fill.getShares() * fill.getPrice();
+            if (fill.getRecordedAt() != null) {
+                totals[2] = Math.max(totals[2], fill.getRecordedAt());
+            }
+        }
+    }
+
+    private static Double toDouble(Decimal value) {
+        return value != null && value.value() != null ? value.value().doubleValue() : null;
+    }
+}
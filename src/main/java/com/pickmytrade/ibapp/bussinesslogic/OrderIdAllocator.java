@@ -0,0 +1,45 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Hands out order ids locally so orders carry their id before they reach TWS. Seeded from nextValidId,
+// which TWS sends on connect and again after reqIds.
+public class OrderIdAllocator {
+    private final AtomicInteger nextId = new AtomicInteger(0);
+    // Sessions sharing one order store start from different floors so their ids never collide
+    private final int floor;
+
+    public OrderIdAllocator() {
+        this(0);
+    }
+
+    public OrderIdAllocator(int floor) {
+        this.floor = floor;
+    }
+
+    public void seed(int nextValidId) {
+        int current = nextId.accumulateAndGet(Math.max(nextValidId, floor), Math::max);
+        log.info("Order id allocator seeded with nextValidId={}, next id={}", nextValidId, current);
+    }
+
+    public boolean isSeeded() {
+        return nextId.get() > 0;
+    }
+
+    public int next() {
+        return reserve(1);
+    }
+
+    // Reserves a contiguous block and returns its first id
+    public int reserve(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Order id block size must be positive");
+        }
+        if (!isSeeded()) {
+            throw new IllegalStateException("No valid order id received from TWS yet");
+        }
+        return nextId.getAndAdd(count);
+    }
+}
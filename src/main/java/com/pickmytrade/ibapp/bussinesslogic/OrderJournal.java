@@ -0,0 +1,684 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Append-only journal of every order transition seen by one TWS session. The current state of each order is
+// kept in memory and derived only from these events; order_clients stays the view the UI and server sync read.
+// Appending assigns a sequence number, updates the in-memory state and queues the record, so callers on the
+// TWS reader thread never touch the disk. A writer thread frames each record with its length and CRC, and every
+// SNAPSHOT_EVERY_EVENTS events writes a snapshot of all states and seals the segment, so startup replays one
+// snapshot plus a short tail. Sealed segments are kept as the audit trail until they are older than the retention
+// horizon (pickmytrade.journal.retentionDays), then move to the archive directory beside the database; terminal
+// orders not touched within the horizon are dropped from memory and from the next snapshot.
+public class OrderJournal {
+    private static final int SNAPSHOT_EVERY_EVENTS = 5000;
+    private static final long RETENTION_MS = TimeUnit.DAYS.toMillis(Integer.getInteger("pickmytrade.journal.retentionDays", 7));
+    private static final long FORCE_INTERVAL_MS = 1000;
+    private static final long POLL_MS = 200;
+    private static final long STATS_LOG_INTERVAL_MS = 60_000;
+    private static final int SNAPSHOT_MAGIC = 0x4F4A534E;
+    private static final Set<String> TERMINAL_STATUSES = Set.of("Filled", "Cancelled", "ApiCancelled", "Inactive");
+
+    public enum EventType { PLACED, ACKED, PARTIAL, FILLED, CANCELLED, ERROR }
+
+    public static final class Event {
+        private final long seq;
+        private final long timeMillis;
+        private final int orderId;
+        private final EventType type;
+        private final String status;
+        private final double filled;
+        private final double remaining;
+        private final double avgFillPrice;
+        private final int permId;
+        private final int parentId;
+        private final String detail;
+
+        Event(long seq, long timeMillis, int orderId, EventType type, String status, double filled, double remaining,
+              double avgFillPrice, int permId, int parentId, String detail) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.orderId = orderId;
+            this.type = type;
+            this.status = status;
+            this.filled = filled;
+            this.remaining = remaining;
+            this.avgFillPrice = avgFillPrice;
+            this.permId = permId;
+            this.parentId = parentId;
+            this.detail = detail;
+        }
+
+        public long getSeq() { return seq; }
+        public long getTimeMillis() { return timeMillis; }
+        public int getOrderId() { return orderId; }
+        public EventType getType() { return type; }
+        public String getStatus() { return status; }
+        public double getFilled() { return filled; }
+        public double getRemaining() { return remaining; }
+        public double getAvgFillPrice() { return avgFillPrice; }
+        public int getPermId() { return permId; }
+        public int getParentId() { return parentId; }
+        public String getDetail() { return detail; }
+
+        @Override
+        public String toString() {
+            return seq + " " + type + " order=" + orderId + " status=" + status + " filled=" + filled
+                    + " remaining=" + remaining + " avg=" + avgFillPrice + (detail != null ? " " + detail : "");
+        }
+    }
+
+    public static final class OrderState {
+        private final int orderId;
+        private int parentId;
+        private int permId;
+        private String description;
+        private String status;
+        private double filled;
+        private double remaining;
+        private double avgFillPrice;
+        private String lastError;
+        private long updatedAtMillis;
+        private long lastSeq;
+
+        OrderState(int orderId) {
+            this.orderId = orderId;
+        }
+
+        public int getOrderId() { return orderId; }
+        public int getParentId() { return parentId; }
+        public int getPermId() { return permId; }
+        public String getDescription() { return description; }
+        public String getStatus() { return status; }
+        public double getFilled() { return filled; }
+        public double getRemaining() { return remaining; }
+        public double getAvgFillPrice() { return avgFillPrice; }
+        public String getLastError() { return lastError; }
+        public long getUpdatedAtMillis() { return updatedAtMillis; }
+        public long getLastSeq() { return lastSeq; }
+
+        public boolean isTerminal() {
+            return status != null && TERMINAL_STATUSES.contains(status);
+        }
+
+        void apply(Event event) {
+            switch (event.type) {
+                case PLACED:
+                    parentId = event.parentId;
+                    description = event.detail;
+                    status = event.status;
+                    remaining = event.remaining;
+                    break;
+                case ERROR:
+                    lastError = event.detail;
+                    break;
+                default:
+                    status = event.status;
+                    filled = event.filled;
+                    remaining = event.remaining;
+                    if (event.avgFillPrice != 0) {
+                        avgFillPrice = event.avgFillPrice;
+                    }
+                    if (event.permId != 0) {
+                        permId = event.permId;
+                    }
+                    break;
+            }
+            updatedAtMillis = event.timeMillis;
+            lastSeq = event.seq;
+        }
+
+        OrderState copy() {
+            OrderState copy = new OrderState(orderId);
+            copy.parentId = parentId;
+            copy.permId = permId;
+            copy.description = description;
+            copy.status = status;
+            copy.filled = filled;
+            copy.remaining = remaining;
+            copy.avgFillPrice = avgFillPrice;
+            copy.lastError = lastError;
+            copy.updatedAtMillis = updatedAtMillis;
+            copy.lastSeq = lastSeq;
+            return copy;
+        }
+    }
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final Path archiveDir;
+    private final Map<Integer, OrderState> states = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final Object appendLock = new Object();
+    private final BlockingQueue<Event> pending = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private final Object fileLock = new Object();
+    private FileOutputStream fileOut;
+    private OutputStream out;
+    private long eventsSinceSnapshot;
+    private long lastForceMillis = System.currentTimeMillis();
+    private long lastStatsLogMillis = System.currentTimeMillis();
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder appendNanos = new LongAdder();
+    private final AtomicLong maxAppendNanos = new AtomicLong();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    // The journal for sessionName sits in a journal directory beside the database file
+    public OrderJournal(File databaseFile, String sessionName) {
+        File dir = new File(databaseFile.getParentFile(), "journal");
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.warn("Could not create order journal directory {}", dir.getAbsolutePath());
+        }
+        String dbName = databaseFile.getName().replaceFirst("\\.db$", "");
+        String baseName = dbName + "_" + sessionName.replaceAll("[^A-Za-z0-9_-]", "_");
+        this.journalFile = new File(dir, baseName + ".journal").toPath();
+        this.snapshotFile = new File(dir, baseName + ".snapshot").toPath();
+        this.archiveDir = new File(databaseFile.getParentFile(), "archive").toPath();
+        recover();
+        writerThread = new Thread(this::run, "order-journal-" + sessionName);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void placed(int orderId, int parentId, double quantity, String description) {
+        append(orderId, EventType.PLACED, "PendingSubmit", 0, quantity, 0, 0, parentId, description);
+    }
+
+    // Maps a TWS status callback onto a journal event; repeats of the last known state are not journalled
+    public void statusChanged(int orderId, String status, double filled, double remaining, double avgFillPrice,
+                              int permId, int parentId) {
+        if (status == null) {
+            return;
+        }
+        OrderState current = states.get(orderId);
+        if (current != null && status.equals(current.status) && filled == current.filled
+                && remaining == current.remaining) {
+            return;
+        }
+        EventType type;
+        if ("Filled".equals(status)) {
+            type = EventType.FILLED;
+        } else if (TERMINAL_STATUSES.contains(status)) {
+            type = EventType.CANCELLED;
+        } else if (filled > 0) {
+            type = EventType.PARTIAL;
+        } else {
+            type = EventType.ACKED;
+        }
+        append(orderId, type, status, filled, remaining, avgFillPrice, permId, parentId, null);
+    }
+
+    // Only errors for orders this journal already knows; request ids of lookups are not orders
+    public void error(int orderId, int errorCode, String message) {
+        if (!states.containsKey(orderId)) {
+            return;
+        }
+        append(orderId, EventType.ERROR, null, 0, 0, 0, 0, 0, errorCode + ": " + message);
+    }
+
+    public OrderState getOrderState(int orderId) {
+        OrderState state = states.get(orderId);
+        if (state == null) {
+            return null;
+        }
+        synchronized (appendLock) {
+            return state.copy();
+        }
+    }
+
+    public List<OrderState> getOrderStates() {
+        List<OrderState> copies = new ArrayList<>(states.size());
+        synchronized (appendLock) {
+            for (OrderState state : states.values()) {
+                copies.add(state.copy());
+            }
+        }
+        return copies;
+    }
+
+    // Full lifecycle of one order from the sealed segments still in the journal directory and the live one, for audits
+    public List<Event> history(int orderId) {
+        List<Event> events = new ArrayList<>();
+        flushToDisk();
+        for (Path segment : segments()) {
+            readSegment(segment, event -> {
+                if (event.orderId == orderId) {
+                    events.add(event);
+                }
+            });
+        }
+        return events;
+    }
+
+    // No interrupt: an interrupted thread closes the FileChannel under the journal, so the writer notices the
+    // flag on its next poll
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(int orderId, EventType type, String status, double filled, double remaining,
+                        double avgFillPrice, int permId, int parentId, String detail) {
+        long startNanos = System.nanoTime();
+        synchronized (appendLock) {
+            // Sequence and state change together so the queue order always matches the in-memory state
+            Event event = new Event(seq.incrementAndGet(), System.currentTimeMillis(), orderId, type, status, filled,
+                    remaining, avgFillPrice, permId, parentId, detail);
+            states.computeIfAbsent(orderId, OrderState::new).apply(event);
+            pending.add(event);
+        }
+        long nanos = System.nanoTime() - startNanos;
+        appends.increment();
+        appendNanos.add(nanos);
+        maxAppendNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                Event first = running ? pending.poll(POLL_MS, TimeUnit.MILLISECONDS) : pending.poll();
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    eventsSinceSnapshot += batch.size();
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastForceMillis >= FORCE_INTERVAL_MS) {
+                    force();
+                }
+                if (eventsSinceSnapshot >= SNAPSHOT_EVERY_EVENTS) {
+                    snapshot();
+                }
+                if (now - lastStatsLogMillis >= STATS_LOG_INTERVAL_MS) {
+                    logStats();
+                }
+            } catch (IOException e) {
+                log.error("Order journal write to {} failed: {}", journalFile, e.getMessage(), e);
+                closeFile();
+            }
+        }
+        try {
+            force();
+        } catch (IOException e) {
+            log.error("Order journal final sync failed: {}", e.getMessage());
+        }
+        logStats();
+        closeFile();
+    }
+
+    private void write(List<Event> batch) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+        DataOutputStream data = new DataOutputStream(payload);
+        CRC32 crc = new CRC32();
+        synchronized (fileLock) {
+            DataOutputStream frame = new DataOutputStream(output());
+            for (Event event : batch) {
+                payload.reset();
+                writeEvent(data, event);
+                crc.reset();
+                crc.update(payload.toByteArray(), 0, payload.size());
+                frame.writeInt(payload.size());
+                frame.writeInt((int) crc.getValue());
+                payload.writeTo(frame);
+                bytesWritten.add(8 + payload.size());
+            }
+            frame.flush();
+        }
+    }
+
+    private void force() throws IOException {
+        synchronized (fileLock) {
+            if (fileOut != null) {
+                fileOut.getChannel().force(false);
+            }
+        }
+        lastForceMillis = System.currentTimeMillis();
+    }
+
+    // Snapshot first, then seal the segment: a crash in between only leaves events the snapshot already covers
+    private void snapshot() throws IOException {
+        long startNanos = System.nanoTime();
+        List<OrderState> copies;
+        long snapshotSeq;
+        // Events up to snapshotSeq may still be queued; taking them under the same lock keeps the sealed
+        // segment complete up to the snapshot
+        List<Event> tail = new ArrayList<>();
+        long evictBefore = System.currentTimeMillis() - RETENTION_MS;
+        int evicted = 0;
+        synchronized (appendLock) {
+            snapshotSeq = seq.get();
+            pending.drainTo(tail);
+            copies = new ArrayList<>(states.size());
+            for (Iterator<OrderState> it = states.values().iterator(); it.hasNext(); ) {
+                OrderState state = it.next();
+                if (state.isTerminal() && state.updatedAtMillis < evictBefore) {
+                    it.remove();
+                    evicted++;
+                } else {
+                    copies.add(state.copy());
+                }
+            }
+        }
+        if (!tail.isEmpty()) {
+            write(tail);
+        }
+
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeLong(snapshotSeq);
+            data.writeInt(copies.size());
+            for (OrderState state : copies) {
+                writeState(data, state);
+            }
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (fileLock) {
+            closeFile();
+            if (Files.exists(journalFile)) {
+                Path sealed = journalFile.resolveSibling(
+                        journalFile.getFileName().toString().replaceFirst("\\.journal$", "")
+                                + String.format(".%012d.journal", snapshotSeq));
+                Files.move(journalFile, sealed, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        eventsSinceSnapshot = 0;
+        int archived = archiveSealedSegments(evictBefore);
+        log.info("Order journal snapshot of {} orders at seq {} in {} ms ({} old closed orders evicted, {} segments archived)",
+                copies.size(), snapshotSeq, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), evicted, archived);
+    }
+
+    // Sealed segments last written before the horizon leave the journal directory; the snapshot already covers them
+    private int archiveSealedSegments(long archiveBefore) {
+        int archived = 0;
+        for (Path segment : segments()) {
+            if (segment.equals(journalFile)) {
+                continue;
+            }
+            try {
+                if (Files.getLastModifiedTime(segment).toMillis() >= archiveBefore) {
+                    continue;
+                }
+                Files.createDirectories(archiveDir);
+                Files.move(segment, archiveDir.resolve(segment.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                archived++;
+            } catch (IOException e) {
+                log.warn("Could not archive order journal segment {}: {}", segment, e.getMessage());
+            }
+        }
+        return archived;
+    }
+
+    // Loads the snapshot, replays the live segment after it and cuts off a torn record left by a crash
+    private void recover() {
+        long startNanos = System.nanoTime();
+        long snapshotSeq = 0;
+        if (Files.exists(snapshotFile)) {
+            try (DataInputStream data = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+                if (data.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("not an order journal snapshot");
+                }
+                snapshotSeq = data.readLong();
+                int count = data.readInt();
+                for (int i = 0; i < count; i++) {
+                    OrderState state = readState(data);
+                    states.put(state.orderId, state);
+                }
+            } catch (IOException e) {
+                log.error("Order journal snapshot {} unreadable, replaying sealed segments: {}", snapshotFile, e.getMessage());
+                states.clear();
+                snapshotSeq = 0;
+            }
+        }
+        long fromSeq = snapshotSeq;
+        long[] lastSeq = {snapshotSeq};
+        int[] replayed = {0};
+        List<Path> toReplay = snapshotSeq > 0 ? List.of(journalFile) : segments();
+        for (Path segment : toReplay) {
+            long validBytes = readSegment(segment, event -> {
+                if (event.seq > fromSeq) {
+                    states.computeIfAbsent(event.orderId, OrderState::new).apply(event);
+                    replayed[0]++;
+                }
+                lastSeq[0] = Math.max(lastSeq[0], event.seq);
+            });
+            if (segment.equals(journalFile)) {
+                truncate(validBytes);
+            }
+        }
+        seq.set(lastSeq[0]);
+        eventsSinceSnapshot = replayed[0];
+        log.info("Order journal {} recovered {} orders from snapshot seq {} plus {} events in {} ms", journalFile,
+                states.size(), snapshotSeq, replayed[0], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private void truncate(long validBytes) {
+        try {
+            if (Files.exists(journalFile) && Files.size(journalFile) > validBytes) {
+                log.warn("Order journal {} has a torn tail, truncating to {} bytes", journalFile, validBytes);
+                try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Could not truncate order journal {}: {}", journalFile, e.getMessage());
+        }
+    }
+
+    // Returns the number of bytes holding complete, checksummed records
+    private static long readSegment(Path segment, Consumer<Event> consumer) {
+        if (!Files.exists(segment)) {
+            return 0;
+        }
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment))) {
+            DataInputStream frame = new DataInputStream(in);
+            while (true) {
+                int length;
+                try {
+                    length = frame.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int checksum = frame.readInt();
+                if (length <= 0 || length > 1 << 20) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                frame.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                consumer.accept(readEvent(new DataInputStream(new ByteArrayInputStream(payload))));
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            // Torn final record; everything before it is valid
+        } catch (IOException e) {
+            log.error("Error reading order journal segment {}: {}", segment, e.getMessage());
+        }
+        return valid;
+    }
+
+    // Sealed segments in sequence order, then the live one
+    private List<Path> segments() {
+        List<Path> segments = new ArrayList<>();
+        String prefix = journalFile.getFileName().toString().replaceFirst("\\.journal$", "") + ".";
+        File[] sealed = journalFile.getParent().toFile().listFiles(
+                (dir, name) -> name.startsWith(prefix) && name.endsWith(".journal"));
+        if (sealed != null) {
+            for (File file : sealed) {
+                segments.add(file.toPath());
+            }
+        }
+        Collections.sort(segments);
+        segments.add(journalFile);
+        return segments;
+    }
+
+    private OutputStream output() throws IOException {
+        if (out == null) {
+            fileOut = new FileOutputStream(journalFile.toFile(), true);
+            out = new BufferedOutputStream(fileOut, 64 * 1024);
+        }
+        return out;
+    }
+
+    private void flushToDisk() {
+        synchronized (fileLock) {
+            try {
+                if (out != null) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                log.warn("Order journal flush failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void closeFile() {
+        synchronized (fileLock) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.warn("Error closing order journal {}: {}", journalFile, e.getMessage());
+                }
+                out = null;
+                fileOut = null;
+            }
+        }
+    }
+
+    private void logStats() {
+        lastStatsLogMillis = System.currentTimeMillis();
+        long count = appends.sum();
+        if (count == 0) {
+            return;
+        }
+        log.info("Order journal: {} events, {} bytes, avg append {} ns, max append {} us, {} orders in memory",
+                count, bytesWritten.sum(), appendNanos.sum() / count,
+                TimeUnit.NANOSECONDS.toMicros(maxAppendNanos.get()), states.size());
+    }
+
+    private static void writeEvent(DataOutputStream data, Event event) throws IOException {
+        data.writeLong(event.seq);
+        data.writeLong(event.timeMillis);
+        data.writeInt(event.orderId);
+        data.writeByte(event.type.ordinal());
+        writeNullable(data, event.status);
+        data.writeDouble(event.filled);
+        data.writeDouble(event.remaining);
+        data.writeDouble(event.avgFillPrice);
+        data.writeInt(event.permId);
+        data.writeInt(event.parentId);
+        writeNullable(data, event.detail);
+    }
+
+    private static Event readEvent(DataInputStream data) throws IOException {
+        long seq = data.readLong();
+        long timeMillis = data.readLong();
+        int orderId = data.readInt();
+        EventType type = EventType.values()[data.readByte()];
+        String status = readNullable(data);
+        double filled = data.readDouble();
+        double remaining = data.readDouble();
+        double avgFillPrice = data.readDouble();
+        int permId = data.readInt();
+        int parentId = data.readInt();
+        String detail = readNullable(data);
+        return new Event(seq, timeMillis, orderId, type, status, filled, remaining, avgFillPrice, permId, parentId, detail);
+    }
+
+    private static void writeState(DataOutputStream data, OrderState state) throws IOException {
+        data.writeInt(state.orderId);
+        data.writeInt(state.parentId);
+        data.writeInt(state.permId);
+        writeNullable(data, state.description);
+        writeNullable(data, state.status);
+        data.writeDouble(state.filled);
+        data.writeDouble(state.remaining);
+        data.writeDouble(state.avgFillPrice);
+        writeNullable(data, state.lastError);
+        data.writeLong(state.updatedAtMillis);
+        data.writeLong(state.lastSeq);
+    }
+
+    private static OrderState readState(DataInputStream data) throws IOException {
+        OrderState state = new OrderState(data.readInt());
+        state.parentId = data.readInt();
+        state.permId = data.readInt();
+        state.description = readNullable(data);
+        state.status = readNullable(data);
+        state.filled = data.readDouble();
+        state.remaining = data.readDouble();
+        state.avgFillPrice = data.readDouble();
+        state.lastError = readNullable(data);
+        state.updatedAtMillis = data.readLong();
+        state.lastSeq = data.readLong();
+        return state;
+    }
+
+    private static void writeNullable(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream data) throws IOException {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+}
@@ -0,0 +1,197 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.entities.ConnectionEntity;
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+import com.pickmytrade.ibapp.db.entities.OutboxEntry;
+import com.pickmytrade.ibapp.db.entities.Token;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Drains the order_outbox table to the PickMyTrade server. Order writes add outbox rows in the same transaction,
+// so nothing is lost across restarts; this single sender posts them, marks them delivered and retries failures
+// with jittered exponential backoff.
+public class OrderOutboxSender {
+    private static final String ORDERS_URL = "https://api.pickmytrade.io/v5/exe_save_orders";
+    private static final long POLL_INTERVAL_MS = 250;
+    private static final int BATCH_SIZE = 50;
+    private static final long BASE_RETRY_MS = 1000;
+    private static final long MAX_RETRY_MS = 60_000;
+    private static final long STATS_LOG_SECONDS = 60;
+    private static final long DELIVERED_RETENTION_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final Function<OrderClient, Map<String, Object>> orderToDict;
+    private final CloseableHttpClient httpClient = HttpClients.createDefault();
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder lagMillis = new LongAdder();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public OrderOutboxSender(Function<OrderClient, Map<String, Object>> orderToDict) {
+        this.orderToDict = orderToDict;
+    }
+
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        sender.execute(() -> {
+            try {
+                int enqueued = DatabaseConfig.enqueueUnsentOrders();
+                log.info("Order outbox started, {} unsent orders queued", enqueued);
+            } catch (Exception e) {
+                log.error("Failed to queue unsent orders: {}", e.getMessage());
+            }
+        });
+        sender.scheduleWithFixedDelay(this::drain, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        sender.scheduleWithFixedDelay(this::logStats, STATS_LOG_SECONDS, STATS_LOG_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(5, TimeUnit.SECONDS)) {
+                sender.shutdownNow();
+            }
+            httpClient.close();
+        } catch (InterruptedException e) {
+            sender.shutdownNow();
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Error closing order outbox HTTP client: {}", e.getMessage());
+        }
+    }
+
+    private void drain() {
+        try {
+            List<OutboxEntry> batch;
+            do {
+                batch = DatabaseConfig.getPendingOutbox(System.currentTimeMillis(), BATCH_SIZE);
+                if (!batch.isEmpty()) {
+                    sendBatch(batch);
+                }
+            } while (batch.size() == BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("Order outbox drain failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void sendBatch(List<OutboxEntry> batch) throws Exception {
+        long startNanos = System.nanoTime();
+        // Several changes to one order collapse into a single post of its current row
+        Map<Integer, List<OutboxEntry>> byOrder = new LinkedHashMap<>();
+        for (OutboxEntry entry : batch) {
+            byOrder.computeIfAbsent(entry.getOrderClientId(), id -> new ArrayList<>()).add(entry);
+        }
+        Map<Integer, OrderClient> orders = DatabaseConfig.getOrderClientsByIds(byOrder.keySet());
+
+        Token tokenRecord = DatabaseConfig.getToken();
+        String authToken = tokenRecord != null ? tokenRecord.getToken() : "";
+        ConnectionEntity conn = DatabaseConfig.getConnectionEntity();
+        String connName = conn != null ? conn.getConnectionName() : "";
+
+        List<OutboxEntry> sent = new ArrayList<>();
+        List<OutboxEntry> retry = new ArrayList<>();
+        String lastError = null;
+        for (Map.Entry<Integer, List<OutboxEntry>> entry : byOrder.entrySet()) {
+            OrderClient order = orders.get(entry.getKey());
+            if (order == null) {
+                // The order row was deleted outside the app (archiving skips rows with pending entries); nothing left to sync
+                sent.addAll(entry.getValue());
+                continue;
+            }
+            String error = post(order, authToken + "_" + connName);
+            if (error == null) {
+                sent.addAll(entry.getValue());
+            } else {
+                lastError = error;
+                for (OutboxEntry failedEntry : entry.getValue()) {
+                    failedEntry.setAttempts(failedEntry.getAttempts() + 1);
+                    failedEntry.setNextAttemptAt(System.currentTimeMillis() + retryDelayMs(failedEntry.getAttempts()));
+                    retry.add(failedEntry);
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        DatabaseConfig.markOutboxDelivered(sent, now);
+        DatabaseConfig.rescheduleOutbox(retry, lastError);
+
+        for (OutboxEntry entry : sent) {
+            long lag = now - entry.getEnqueuedAt();
+            lagMillis.add(lag);
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+        }
+        delivered.add(sent.size());
+        failed.add(retry.size());
+        log.info("Order outbox batch: {} orders, {} rows delivered, {} rows retrying, {} ms", byOrder.size(),
+                sent.size(), retry.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    // The endpoint takes one order per request; the batch shares one pooled connection
+    private String post(OrderClient order, String authorization) {
+        try {
+            HttpPost post = new HttpPost(ORDERS_URL);
+            String payload = gson.toJson(orderToDict.apply(order));
+            log.debug("Outbox payload for order {}: {}", order.getId(), payload);
+            post.setEntity(new StringEntity(payload));
+            post.setHeader("Authorization", authorization);
+            post.setHeader("Content-Type", "application/json");
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                String responseText = EntityUtils.toString(response.getEntity());
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 200) {
+                    return null;
+                }
+                log.warn("Order API rejected order {}: {} {}", order.getId(), statusCode, responseText);
+                return "HTTP " + statusCode;
+            }
+        } catch (Exception e) {
+            log.warn("Error sending order {} to API: {}", order.getId(), e.getMessage());
+            return e.getMessage();
+        }
+    }
+
+    // Doubles per attempt up to the cap, drawn from the upper half so retries of one batch spread out
+    private static long retryDelayMs(int attempts) {
+        long ceiling = Math.min(MAX_RETRY_MS, BASE_RETRY_MS << Math.min(attempts - 1, 16));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private void logStats() {
+        try {
+            long count = delivered.sum();
+            log.info("Order outbox: {} delivered, {} failed attempts, {} pending, avg lag {} ms, max lag {} ms",
+                    count, failed.sum(), DatabaseConfig.countPendingOutbox(),
+                    count > 0 ? lagMillis.sum() / count : 0, maxLagMillis.get());
+            DatabaseConfig.pruneDeliveredOutbox(System.currentTimeMillis() - DELIVERED_RETENTION_MS);
+        } catch (Exception e) {
+            log.error("Order outbox stats failed: {}", e.getMessage());
+        }
+    }
+}
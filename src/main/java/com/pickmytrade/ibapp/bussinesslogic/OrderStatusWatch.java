@@ -0,0 +1,84 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+// The statuses the status loop has applied to one order, each with the time its TWS callback arrived. A wait
+// completes once the order row holds a wanted status, so callers block on a future instead of polling the
+// store. Statuses recorded before the wait was taken still count, so a watch must exist before the order is
+// transmitted.
+public class OrderStatusWatch {
+    private final List<String> statuses = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private volatile long expiresAtMillis;
+
+    OrderStatusWatch(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    // Completes with the callback time of the first wanted status received at or after notBeforeMillis
+    public CompletableFuture<Long> first(Set<String> wanted, long notBeforeMillis) {
+        synchronized (this) {
+            for (int i = 0; i < statuses.size(); i++) {
+                if (wanted.contains(statuses.get(i)) && times.get(i) >= notBeforeMillis) {
+                    return CompletableFuture.completedFuture(times.get(i));
+                }
+            }
+            Waiter waiter = new Waiter(wanted, notBeforeMillis);
+            waiters.add(waiter);
+            return waiter.future;
+        }
+    }
+
+    void record(String status, long atMillis) {
+        List<CompletableFuture<Long>> due = new ArrayList<>();
+        synchronized (this) {
+            statuses.add(status);
+            times.add(atMillis);
+            for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                Waiter waiter = it.next();
+                if (waiter.future.isDone()) {
+                    it.remove();
+                } else if (waiter.wanted.contains(status) && atMillis >= waiter.notBeforeMillis) {
+                    due.add(waiter.future);
+                    it.remove();
+                }
+            }
+        }
+        // Dependent stages run in the completing thread, so they run outside the lock
+        due.forEach(future -> future.complete(atMillis));
+    }
+
+    void extendTo(long expiresAtMillis) {
+        this.expiresAtMillis = Math.max(this.expiresAtMillis, expiresAtMillis);
+    }
+
+    long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    void cancel() {
+        List<Waiter> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        pending.forEach(waiter -> waiter.future.completeExceptionally(new CancellationException("Order status watch expired")));
+    }
+
+    private static final class Waiter {
+        final Set<String> wanted;
+        final long notBeforeMillis;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        Waiter(Set<String> wanted, long notBeforeMillis) {
+            this.wanted = wanted;
+            this.notBeforeMillis = notBeforeMillis;
+        }
+    }
+}
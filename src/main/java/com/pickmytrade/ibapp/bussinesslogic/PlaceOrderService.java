@@ -3,9 +3,13 @@ package com.pickmytrade.ibapp.bussinesslogic;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.ib.client.*;
-import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.OrderClientColumn;
+import com.pickmytrade.ibapp.db.OrderStores;
 import com.pickmytrade.ibapp.db.entities.OrderClient;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -13,25 +17,57 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static com.pickmytrade.ibapp.config.Config.log;
 
 public class PlaceOrderService {
     private TwsEngine twsEngine;
-    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+    private final ExecutorService executor;
     private final Gson gson = new Gson();
     private static final long ORDER_FILL_WAIT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
-    private static final long PRICE_COMPUTE_WAIT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(15);
+    private static final long PROTECTION_LATENCY_TIMEOUT_SECONDS = 30;
+    private static final Set<String> FILLED_STATUS = Set.of("Filled");
+    private static final Set<String> ENTRY_DONE_STATUSES = Set.of("Filled", "Cancelled", "ApiCancelled", "Inactive");
+    private static final Set<String> STOP_DONE_STATUSES = Set.of("Filled", "Cancelled", "Rejected", "Inactive");
+    private static final Set<String> WORKING_STATUSES = Set.of("PreSubmitted", "Submitted");
     private static final long BREAKEVEN_MONITOR_MAX_MS = TimeUnit.HOURS.toMillis(6);
+    private static final int RECOVERY_PARALLELISM = 4;
+    private static final long RECOVERY_ORDER_DEADLINE_MS = TimeUnit.MINUTES.toMillis(3);
+    private final ExecutorService recoveryExecutor;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
     private final Map<Integer, Contract> orderToContractMap = new ConcurrentHashMap<>();
+    private final RiskEngine riskEngine = RiskEngine.fromSystemProperties();
+    // Recovery only touches stored orders whose account belongs to this service's session
+    private volatile Predicate<String> ownsAccount = account -> true;
 
     public PlaceOrderService(TwsEngine twsEngine) {
+        this(twsEngine, Executors.newFixedThreadPool(32), Executors.newFixedThreadPool(RECOVERY_PARALLELISM));
+    }
+
+    public PlaceOrderService(TwsEngine twsEngine, ExecutorService executor, ExecutorService recoveryExecutor) {
         this.twsEngine = twsEngine;
+        this.executor = executor;
+        this.recoveryExecutor = recoveryExecutor;
+    }
+
+    public void setAccountOwnership(Predicate<String> ownsAccount) {
+        this.ownsAccount = ownsAccount;
+    }
+
+    public TwsEngine getTwsEngine() {
+        return twsEngine;
     }
 
     public synchronized void setTwsEngine(TwsEngine twsEngine) {
@@ -57,685 +93,965 @@ public class PlaceOrderService {
 
     public CompletableFuture<Boolean> placeTrade(Map<String, Object> contracts) {
         log.info("Entering placeTrade with contracts: {}", contracts);
-        return CompletableFuture.supplyAsync(() -> {
+        if (contracts.get("account_allocations") instanceof List) {
+            return placeFanOutTrade(contracts);
+        }
+        return CompletableFuture.supplyAsync(() -> new TradeRequest(contracts), executor)
+                .thenCompose(request -> {
+                    CompletableFuture<Boolean> preTradeResult = runPreTradeChecks(request);
+                    if (preTradeResult != null) {
+                        return preTradeResult;
+                    }
+                    // Strike and contract resolution are chained on TWS callbacks instead of parking a worker
+                    return selectBestStrike(request)
+                            .thenCompose(ignored -> resolveOrderStrike(request))
+                            .thenComposeAsync(orderStrike -> orderStrike == null
+                                    ? CompletableFuture.completedFuture(false)
+                                    : submitTrade(request, orderStrike), executor)
+                            .exceptionally(e -> failTrade(request, null,
+                                    e instanceof CompletionException && e.getCause() != null ? e.getCause() : e))
+                            // Legs that were never placed (entry not filled, rejected, failed) give their slots back here
+                            .whenComplete((placed, e) -> releaseRiskSlots(request, Integer.MAX_VALUE));
+                });
+    }
+
+    // One alert placed for every entry in account_allocations; accounts run concurrently on the trade executor
+    private CompletableFuture<Boolean> placeFanOutTrade(Map<String, Object> contracts) {
+        List<Map<String, Object>> allocations = (List<Map<String, Object>>) contracts.get("account_allocations");
+        String alertKey = (String) contracts.get("random_alert_key");
+        long startNanos = System.nanoTime();
+        log.info("Fanning out alert {} to {} accounts", alertKey, allocations.size());
+
+        List<CompletableFuture<Boolean>> placements = new ArrayList<>();
+        for (Map<String, Object> allocation : allocations) {
+            Map<String, Object> accountContracts;
+            try {
+                accountContracts = allocationContracts(contracts, allocation);
+            } catch (Exception e) {
+                log.error("Skipping invalid account allocation {} for alert {}: {}", allocation, alertKey, e.getMessage());
+                placements.add(CompletableFuture.completedFuture(false));
+                continue;
+            }
+            String account = (String) accountContracts.get("account");
+            placements.add(placeTrade(accountContracts)
+                    .exceptionally(e -> {
+                        log.error("Fan-out placement failed for alert {} account {}: {}", alertKey, account, e.getMessage());
+                        return false;
+                    })
+                    .whenComplete((placed, e) -> log.info("Fan-out alert {} account {}: placed={} after {} ms", alertKey,
+                            account, placed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos))));
+        }
+
+        return CompletableFuture.allOf(placements.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            long placedCount = placements.stream().filter(CompletableFuture::join).count();
+            log.info("Fan-out alert {} completed: {}/{} accounts placed in {} ms", alertKey, placedCount,
+                    placements.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            return placedCount == placements.size();
+        });
+    }
+
+    private Map<String, Object> allocationContracts(Map<String, Object> contracts, Map<String, Object> allocation) {
+        String account = (String) allocation.get("account");
+        if (account == null || account.isEmpty()) {
+            throw new IllegalArgumentException("Allocation has no account");
+        }
+        Map<String, Object> accountContracts = new HashMap<>(contracts);
+        accountContracts.remove("account_allocations");
+        // Each account gets its own copy since the placement stages write into these maps
+        Type mapType = new TypeToken<Map<String, Object>>(){}.getType();
+        Map<String, Object> orderJson = gson.fromJson(gson.toJson(contracts.get("order_details")), mapType);
+        Map<String, Object> contractJson = gson.fromJson(gson.toJson(contracts.get("contract_details")), mapType);
+
+        Number baseQuantity = (Number) orderJson.get("quantity");
+        Number allocatedQuantity = (Number) allocation.get("quantity");
+        Number riskMultiplier = (Number) allocation.get("risk_multiplier");
+        Number maxStock = (Number) allocation.get("max_stock");
+        int quantity;
+        if (allocatedQuantity != null && allocatedQuantity.intValue() != 0) {
+            quantity = allocatedQuantity.intValue();
+        } else if (baseQuantity != null && riskMultiplier != null && riskMultiplier.doubleValue() > 0) {
+            quantity = (int) Math.max(1, Math.round(baseQuantity.doubleValue() * riskMultiplier.doubleValue()));
+        } else {
+            quantity = baseQuantity != null ? baseQuantity.intValue() : 0;
+        }
+        if (maxStock != null && maxStock.intValue() > 0) {
+            quantity = Math.min(quantity, maxStock.intValue());
+        }
+        orderJson.put("quantity", (double) quantity);
+
+        accountContracts.put("account", account);
+        accountContracts.put("random_alert_key", contracts.get("random_alert_key") + "_" + account);
+        accountContracts.put("order_details", orderJson);
+        accountContracts.put("contract_details", contractJson);
+        for (String key : Arrays.asList("client_name", "client_db_id", "risk_multiplier", "fund", "max_stock")) {
+            if (allocation.get(key) != null) {
+                accountContracts.put(key, allocation.get(key));
+            }
+        }
+        return accountContracts;
+    }
+
+    // Parsed view of an incoming alert, shared by every stage of placeTrade
+    private static class TradeRequest {
+        final Map<String, Object> contracts;
+        final String orderRandomId;
+        final Map<String, Object> orderJson;
+        final Map<String, Object> contractJson;
+        final String account;
+        final double minTick;
+        final double breakEven;
+        final boolean newBreakEvenOrder;
+        final int lmtToMarketWait;
+        final boolean reverseOrderClose;
+        final boolean duplicatePositionAllow;
+        final boolean nativeBracket;
+        final int conId;
+        final int quantity;
+        List<Map<String, Object>> positions = Collections.emptyList();
+        List<Map.Entry<Order, Contract>> openOrders = Collections.emptyList();
+        AccountStateCache.AccountSnapshot accountState;
+        // Price the risk engine values the order at; 0 for market orders
+        final double referencePrice;
+        // Entry plus the TP/SL children the alert asks for, and the risk slots still held for legs not yet acked
+        final int orderLegs;
+        final AtomicInteger riskSlots = new AtomicInteger();
+
+        TradeRequest(Map<String, Object> contracts) {
             log.info("Received data to place order: {}", contracts);
-            String orderRandomId = (String) contracts.get("random_alert_key");
-            Map<String, Object> orderJson = (Map<String, Object>) contracts.get("order_details");
-            Map<String, Object> contractJson = (Map<String, Object>) contracts.get("contract_details");
-            String account = (String) contracts.get("account");
-            Double entryOrderPrice = null;
-            String entryOrderId = null;
-            String entryOrderStatus = null;
-            Order stopLossOrder = null;
-
-            double minTick = contracts.get("min_tick") != null && ((Number) contracts.get("min_tick")).doubleValue() != 0
+            this.contracts = contracts;
+            this.orderRandomId = (String) contracts.get("random_alert_key");
+            this.orderJson = (Map<String, Object>) contracts.get("order_details");
+            this.contractJson = (Map<String, Object>) contracts.get("contract_details");
+            this.account = (String) contracts.get("account");
+
+            this.minTick = contracts.get("min_tick") != null && ((Number) contracts.get("min_tick")).doubleValue() != 0
                     ? ((Number) contracts.get("min_tick")).doubleValue() : 1;
-            double breakEven = contracts.get("break_even") != null && ((Number) contracts.get("break_even")).doubleValue() != 0
+            this.breakEven = contracts.get("break_even") != null && ((Number) contracts.get("break_even")).doubleValue() != 0
                     ? ((Number) contracts.get("break_even")).doubleValue() : 0;
-            boolean newBreakEvenOrder = contracts.get("new_break_even_order") != null
+            this.newBreakEvenOrder = contracts.get("new_break_even_order") != null
                     && (boolean) contracts.get("new_break_even_order");
-            int lmtToMarketWait = contracts.get("lmt_to_market_wait") != null
+            this.lmtToMarketWait = contracts.get("lmt_to_market_wait") != null
                     && ((Number) contracts.get("lmt_to_market_wait")).intValue() != 0
                     ? ((Number) contracts.get("lmt_to_market_wait")).intValue() : 0;
-            boolean reverseOrderClose = orderJson.get("reverse_order_close") != null
+            this.reverseOrderClose = orderJson.get("reverse_order_close") != null
                     && (boolean) orderJson.get("reverse_order_close");
-            boolean duplicatePositionAllow = orderJson.get("duplicate_position_allow") != null
+            this.duplicatePositionAllow = orderJson.get("duplicate_position_allow") != null
                     && (boolean) orderJson.get("duplicate_position_allow");
-            int con_id = orderJson.get("con_id") != null && ((Number) orderJson.get("con_id")).intValue() != 0
+            this.nativeBracket = contracts.get("native_bracket") != null
+                    && (boolean) contracts.get("native_bracket");
+            this.conId = orderJson.get("con_id") != null && ((Number) orderJson.get("con_id")).intValue() != 0
                     ? ((Number) orderJson.get("con_id")).intValue() : 0;
 
             Object quantityObj = orderJson.get("quantity");
-            int quantity;
             if (quantityObj instanceof Number && ((Number) quantityObj).intValue() != 0) {
-                quantity = ((Number) quantityObj).intValue();
+                this.quantity = ((Number) quantityObj).intValue();
             } else {
                 log.error("Invalid quantity: must be a non-zero number, got: {}", quantityObj);
                 throw new IllegalArgumentException("Quantity must be a non-zero number");
             }
+            Object limitPrice = orderJson.get("limit_price");
+            Object stopPrice = orderJson.get("stop_price");
+            this.referencePrice = limitPrice instanceof Number && ((Number) limitPrice).doubleValue() > 0
+                    ? ((Number) limitPrice).doubleValue()
+                    : stopPrice instanceof Number ? Math.max(0, ((Number) stopPrice).doubleValue()) : 0;
+            boolean hasTp = ProtectiveOrderSpec.nonZero(orderJson, "tp_price") != null
+                    || ProtectiveOrderSpec.nonZero(orderJson, "tp_dollar") != null
+                    || ProtectiveOrderSpec.nonZero(orderJson, "tp_percentage") != null;
+            boolean hasSl = ProtectiveOrderSpec.nonZero(orderJson, "sl_price") != null
+                    || ProtectiveOrderSpec.nonZero(orderJson, "trailing_amount") != null
+                    || ProtectiveOrderSpec.nonZero(orderJson, "sl_dollar") != null
+                    || ProtectiveOrderSpec.nonZero(orderJson, "sl_percentage") != null;
+            this.orderLegs = 1 + (hasTp ? 1 : 0) + (hasSl ? 1 : 0);
 
             if ("NULL".equals(contractJson.get("maturityDate"))) {
                 contractJson.put("maturityDate", "");
             }
+        }
+    }
 
-            try {
-                log.debug("Processing trade for orderRandomId: {}", orderRandomId);
-                if (!twsEngine.isConnected()) {
-                    log.error("TWS is not connected in PlaceOrderService");
-                    throw new IllegalStateException("TWS is not connected");
-                }
-                // CHANGED: Use getAllPositions() instead of getPositions(account).join()
-                List<Map<String, Object>> positions = twsEngine.getAllPositions();
-                List<Map.Entry<Order, Contract>> openOrders = twsEngine.getAllOpenOrders();
-                if ("CLOSE".equalsIgnoreCase((String) orderJson.get("action"))) {
-
-                    for (Map<String, Object> pos : positions) {
-                        if (!pos.get("account").equals(account)) {
-                            continue;
-                        }
-                        log.info("Closing all positions for {} with order_random_id: {}", contractJson.get("symbol"), orderRandomId);
-                        Contract contract = (Contract) pos.get("contract");
-                        Decimal position = (Decimal) pos.get("position");
-                        String contract_local_symbol = String.valueOf(contract.localSymbol());
+    // Protective leg settings read once from order_details; prices are derived in a single pass from the fill
+    private static class ProtectiveOrderSpec {
+        final String instType;
+        final String action;
+        final Double tpPrice;
+        final Double slPrice;
+        final Double slDollar;
+        final Double tpDollar;
+        final Double slPercentage;
+        final Double tpPercentage;
+        final double minTick;
+
+        ProtectiveOrderSpec(Map<String, Object> orderJson, Map<String, Object> contractJson, double minTick) {
+            this.instType = (String) contractJson.get("inst_type");
+            this.action = (String) orderJson.get("action");
+            this.tpPrice = nonZero(orderJson, "tp_price");
+            this.slPrice = nonZero(orderJson, "sl_price");
+            this.slDollar = nonZero(orderJson, "sl_dollar");
+            this.tpDollar = nonZero(orderJson, "tp_dollar");
+            this.slPercentage = nonZero(orderJson, "sl_percentage");
+            this.tpPercentage = nonZero(orderJson, "tp_percentage");
+            this.minTick = minTick;
+        }
 
-                        String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
-                        boolean pos_symbol_ck = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
-//                        boolean pos_symbol_ck = String.valueOf(contract.symbol()).equals(String.valueOf(contractJson.get("symbol")));
-                        boolean pos_sec_ck = Objects.equals(String.valueOf(contract.secType()), contractJson.get("inst_type").toString().toUpperCase());
-                        boolean pos_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
-                        if (pos_symbol_ck && pos_sec_ck && pos_last_date) {
-                            if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
-                                String contractRight = String.valueOf(contract.right());
-                                String jsonRight = (String) contractJson.get("right");
-                                if (contractRight == null || jsonRight == null ||
-                                        !contractRight.substring(0, 1).equalsIgnoreCase(jsonRight.substring(0, 1))) {
-                                    continue;
-                                }
-                            }
-                            if (position.longValue() != 0) {
-                                String buySell = position.longValue() < 0 ? "BUY" : "SELL";
-                                Double close_offset = orderJson.get("entry_lmt_price_offset") != null && ((Double) orderJson.get("entry_lmt_price_offset")) != 0
-                                        ? (Double) orderJson.get("entry_lmt_price_offset") : null;
-
-                                Double limit_price = orderJson.get("limit_price") != null && ((Double) orderJson.get("limit_price")) != 0
-                                        ? (Double) orderJson.get("limit_price") : null;
-                                if ("BUY".equals(buySell)) {   // safer null-safe comparison
-                                    if (limit_price != null && close_offset != null) {
-                                        limit_price = limit_price + close_offset;
-                                    }
-                                } else {
-                                    if (limit_price != null && close_offset != null) {
-                                        limit_price = limit_price - close_offset;
-                                    }
-                                }
+        private static Double nonZero(Map<String, Object> orderJson, String key) {
+            return orderJson.get(key) != null && ((Double) orderJson.get(key)) != 0 ? (Double) orderJson.get(key) : null;
+        }
 
+        boolean needsFillPrice() {
+            return slDollar != null || tpDollar != null || slPercentage != null || tpPercentage != null;
+        }
 
+        double[] pricesFor(double entryPrice) {
+            return getTpSlPrice(instType, entryPrice, action, tpPrice, slPrice, slDollar, tpDollar,
+                    slPercentage, tpPercentage, minTick);
+        }
+    }
 
-                                Object closeOrderObj = twsEngine.createOrder((String) orderJson.get("trade_type"), buySell, (int) Math.abs(position.longValue()),
-                                        null,limit_price , null, null, null, null, null, null, null, account, false, false, null, null, null );
-                                if (closeOrderObj instanceof Order) {
-                                    log.info("Closing position for contract: {}", contract);
-                                    Order closeOrder = (Order) closeOrderObj;
-                                    contract.exchange(contractJson.get("exchange").toString().toUpperCase());
-                                    closeOrder.outsideRth(true);
-                                    TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(contract, closeOrder);
-                                    Order executedOrder = waitForOrderAssignment(result, "order placement");
-                                    orderToContractMap.put(executedOrder.orderId(), contract);
-//                                    Thread.sleep(100);
-                                    if (DatabaseConfig.getErrorData(contract.toString()) != null) {
-                                        continue;
+    // Returns the final result when the alert is fully handled here (close, duplicate), null to continue placing
+    private CompletableFuture<Boolean> runPreTradeChecks(TradeRequest request) {
+        String orderRandomId = request.orderRandomId;
+        Map<String, Object> orderJson = request.orderJson;
+        Map<String, Object> contractJson = request.contractJson;
+        Map<String, Object> contracts = request.contracts;
+        String account = request.account;
+        try {
+            log.debug("Processing trade for orderRandomId: {}", orderRandomId);
+            if (!twsEngine.isConnected()) {
+                log.error("TWS is not connected in PlaceOrderService");
+                throw new IllegalStateException("TWS is not connected");
+            }
+            // CHANGED: Use getAllPositions() instead of getPositions(account).join()
+            List<Map<String, Object>> positions = request.positions = twsEngine.getAllPositions();
+            List<Map.Entry<Order, Contract>> openOrders = request.openOrders = twsEngine.getAllOpenOrders();
+            long accountLookupNanos = System.nanoTime();
+            AccountStateCache.AccountSnapshot accountState = request.accountState = twsEngine.getAccountStateCache().get(account);
+            if (accountState != null) {
+                log.info("Account state for {}: netLiq={}, buyingPower={}, maintMargin={}, age={} ms (lookup {} ns)",
+                        account, accountState.getNetLiquidation(), accountState.getBuyingPower(),
+                        accountState.getMaintMargin(), accountState.ageMillis(), System.nanoTime() - accountLookupNanos);
+            } else {
+                log.info("No cached account state for {} yet", account);
+            }
+            if ("CLOSE".equalsIgnoreCase((String) orderJson.get("action"))) {
 
+                long closeStartNanos = System.nanoTime();
+                List<CompletableFuture<Order>> closeAcks = new ArrayList<>();
+                for (Map<String, Object> pos : positions) {
+                    if (!pos.get("account").equals(account)) {
+                        continue;
+                    }
+                    log.info("Closing all positions for {} with order_random_id: {}", contractJson.get("symbol"), orderRandomId);
+                    Contract contract = (Contract) pos.get("contract");
+                    Decimal position = (Decimal) pos.get("position");
+                    String contract_local_symbol = String.valueOf(contract.localSymbol());
 
-                                    }
-                                }
+                    String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
+                    boolean pos_symbol_ck = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
+//                        boolean pos_symbol_ck = String.valueOf(contract.symbol()).equals(String.valueOf(contractJson.get("symbol")));
+                    boolean pos_sec_ck = Objects.equals(String.valueOf(contract.secType()), contractJson.get("inst_type").toString().toUpperCase());
+                    boolean pos_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
+                    if (pos_symbol_ck && pos_sec_ck && pos_last_date) {
+                        if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
+                            String contractRight = String.valueOf(contract.right());
+                            String jsonRight = (String) contractJson.get("right");
+                            if (contractRight == null || jsonRight == null ||
+                                    !contractRight.substring(0, 1).equalsIgnoreCase(jsonRight.substring(0, 1))) {
+                                continue;
                             }
                         }
-                    }
+                        if (position.longValue() != 0) {
+                            String buySell = position.longValue() < 0 ? "BUY" : "SELL";
+                            Double close_offset = orderJson.get("entry_lmt_price_offset") != null && ((Double) orderJson.get("entry_lmt_price_offset")) != 0
+                                    ? (Double) orderJson.get("entry_lmt_price_offset") : null;
+
+                            Double limit_price = orderJson.get("limit_price") != null && ((Double) orderJson.get("limit_price")) != 0
+                                    ? (Double) orderJson.get("limit_price") : null;
+                            if ("BUY".equals(buySell)) {   // safer null-safe comparison
+                                if (limit_price != null && close_offset != null) {
+                                    limit_price = limit_price + close_offset;
+                                }
+                            } else {
+                                if (limit_price != null && close_offset != null) {
+                                    limit_price = limit_price - close_offset;
+                                }
+                            }
 
-                    for (Map.Entry<Order, Contract> order_contract : openOrders) {
 
-                        Order order = order_contract.getKey();
-                        Contract contract = order_contract.getValue();
-                        if (!String.valueOf(order.account()).equals(account)) continue;
-                        if (contract == null) continue;
-                        OrderClient orderClient = DatabaseConfig.getOrderClientByParentId(String.valueOf(order.orderId()));
-                        String orderStatus = orderClient != null ? orderClient.getEntryStatus() : "Unknown";
-                        String contract_local_symbol = String.valueOf(contract.localSymbol());
 
-                        String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
-                        boolean pos_symbol_ck_od = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
-//
-                        if (pos_symbol_ck_od &&
-                                String.valueOf(contract.secType()).equals(contractJson.get("inst_type").toString().toUpperCase()) &&
-                                String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"))) {
-                            if (Arrays.asList("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted", "Unknown").contains(orderStatus)) {
-                                if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
-                                    String contractRight = String.valueOf(contract.right());
-                                    String jsonRight = (String) contractJson.get("right");
-                                    if (contractRight == null || jsonRight == null ||
-                                            !contractRight.substring(0, 1).equalsIgnoreCase(jsonRight.substring(0, 1))) {
-                                        continue;
-                                    }
-                                }
-                                log.info("cancelling order: {} for contract: {}", order.orderId(), contract);
-                                twsEngine.cancelTrade(order);
+                            Object closeOrderObj = twsEngine.createOrder((String) orderJson.get("trade_type"), buySell, (int) Math.abs(position.longValue()),
+                                    null,limit_price , null, null, null, null, null, null, null, account, false, false, null, null, null );
+                            if (closeOrderObj instanceof Order) {
+                                log.info("Closing position for contract: {}", contract);
+                                Order closeOrder = (Order) closeOrderObj;
+                                contract.exchange(contractJson.get("exchange").toString().toUpperCase());
+                                closeOrder.outsideRth(true);
+                                closeAcks.add(twsEngine.submitOrderAsync(contract, closeOrder));
+                                orderToContractMap.put(closeOrder.orderId(), contract);
                             }
                         }
                     }
-                    saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Position closed successfully.", 0);
-                    return true;
                 }
+                return acknowledged(closeAcks, closeStartNanos, "Close-all", orderRandomId)
+                        .thenApplyAsync(stage(ignored -> cancelAfterCloseAll(request)), executor)
+                        .exceptionally(e -> failTrade(request, null,
+                                e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+            }
 
-                if (!duplicatePositionAllow) {
-                    for (Map<String, Object> pos : positions) {
-                        if (!pos.get("account").equals(account)) {
-                            continue;
-                        }
-                        Contract contract = (Contract) pos.get("contract");
-                        Decimal position = (Decimal) pos.get("position");
-                        String contract_local_symbol = String.valueOf(contract.localSymbol());
+            if (!request.duplicatePositionAllow) {
+                for (Map<String, Object> pos : positions) {
+                    if (!pos.get("account").equals(account)) {
+                        continue;
+                    }
+                    Contract contract = (Contract) pos.get("contract");
+                    Decimal position = (Decimal) pos.get("position");
+                    String contract_local_symbol = String.valueOf(contract.localSymbol());
 
-                        String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
-                        boolean pos_symbol_ck = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
+                    String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
+                    boolean pos_symbol_ck = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
 //
 //                        boolean pos_symbol_ck = String.valueOf(contract.symbol()).equals(String.valueOf(contractJson.get("symbol")));
-                        boolean pos_sec_ck = Objects.equals(String.valueOf(contract.secType()), contractJson.get("inst_type").toString().toUpperCase());
-                        boolean pos_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
-                        boolean pos_action_data = ("BUY".equals(orderJson.get("action")) && position.longValue() > 0);
-                        boolean pos_action_ck = ("SELL".equals(orderJson.get("action")) && position.longValue() < 0);
-                        if (pos_symbol_ck && pos_sec_ck && pos_last_date) {
-                            if (pos_action_data || pos_action_ck) {
-                                if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
-                                    String contractRight = String.valueOf(contract.right());
-                                    String jsonRight = (String) contractJson.get("right");
-                                    if (contractRight == null || jsonRight == null ||
-                                            !contractRight.substring(0, 1).equalsIgnoreCase(jsonRight.substring(0, 1))) {
-                                        continue;
-                                    }
+                    boolean pos_sec_ck = Objects.equals(String.valueOf(contract.secType()), contractJson.get("inst_type").toString().toUpperCase());
+                    boolean pos_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
+                    boolean pos_action_data = ("BUY".equals(orderJson.get("action")) && position.longValue() > 0);
+                    boolean pos_action_ck = ("SELL".equals(orderJson.get("action")) && position.longValue() < 0);
+                    if (pos_symbol_ck && pos_sec_ck && pos_last_date) {
+                        if (pos_action_data || pos_action_ck) {
+                            if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
+                                String contractRight = String.valueOf(contract.right());
+                                String jsonRight = (String) contractJson.get("right");
+                                if (contractRight == null || jsonRight == null ||
+                                        !contractRight.substring(0, 1).equalsIgnoreCase(jsonRight.substring(0, 1))) {
+                                    continue;
                                 }
-                                saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Can not Send, Duplicate Position Found.",0);
-                                return false;
                             }
+                            saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Can not Send, Duplicate Position Found.",0);
+                            return CompletableFuture.completedFuture(false);
                         }
                     }
                 }
+            }
 
-                if (contracts.get("strike_start") != null &&
-                        ((Number) contracts.get("strike_start")).doubleValue() != 0) {
-                    double strike = getBestStrikeForOption(contractJson,
-                            ((Number) contracts.get("strike_start")).doubleValue(),
-                            ((Number) contracts.get("strike_end")).doubleValue(),
-                            ((Number) contracts.get("strike_interval")).doubleValue(),
-                            ((Number) contracts.get("premium_start")).doubleValue(),
-                            ((Number) contracts.get("premium_end")).doubleValue());
-                    if (strike != 0) contractJson.put("strike", strike);
-                }
-
-
-                Double strike = null;
-                Object strikeObj = contractJson.get("strike");
-                String instType = (String) contractJson.get("inst_type");
+            String riskRejection = riskEngine.check(account, (String) contractJson.get("symbol"), (String) orderJson.get("action"),
+                    request.quantity, request.referencePrice, request.orderLegs, positions, openOrders, accountState);
+            if (riskRejection != null) {
+                saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Risk check failed: " + riskRejection, 0);
+                return CompletableFuture.completedFuture(false);
+            }
+            request.riskSlots.set(request.orderLegs);
+            return null;
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(failTrade(request, null, e));
+        }
+    }
 
-// Validate strike only for OPT or FOP
-                if ("OPT".equalsIgnoreCase(instType) || "FOP".equalsIgnoreCase(instType)) {
-                    if (strikeObj instanceof Number) {
-                        double value = ((Number) strikeObj).doubleValue();
-                        if (value != 0) {
-                            strike = value;
-                        } else {
-                            saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Please pass valid Strike", 0);
-                            return false;
+    // Runs once every close has been accepted, so working orders are only cancelled after the positions are
+    // on their way out
+    private boolean cancelAfterCloseAll(TradeRequest request) throws SQLException {
+        String orderRandomId = request.orderRandomId;
+        Map<String, Object> orderJson = request.orderJson;
+        Map<String, Object> contractJson = request.contractJson;
+        Map<String, Object> contracts = request.contracts;
+        String account = request.account;
+        List<Map.Entry<Order, Contract>> openOrders = request.openOrders;
+
+        for (Map.Entry<Order, Contract> order_contract : openOrders) {
+
+            Order order = order_contract.getKey();
+            Contract contract = order_contract.getValue();
+            if (!String.valueOf(order.account()).equals(account)) continue;
+            if (contract == null) continue;
+            OrderClient orderClient = OrderStores.get().findByParentId(String.valueOf(order.orderId()));
+            String orderStatus = orderClient != null ? orderClient.getEntryStatus() : "Unknown";
+            String contract_local_symbol = String.valueOf(contract.localSymbol());
+
+            String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
+            boolean pos_symbol_ck_od = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
+//
+            if (pos_symbol_ck_od &&
+                    String.valueOf(contract.secType()).equals(contractJson.get("inst_type").toString().toUpperCase()) &&
+                    String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"))) {
+                if (Arrays.asList("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted", "Unknown").contains(orderStatus)) {
+                    if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
+                        String contractRight = String.valueOf(contract.right());
+                        String jsonRight = (String) contractJson.get("right");
+                        if (contractRight == null || jsonRight == null ||
+                                !contractRight.substring(0, 1).equalsIgnoreCase(jsonRight.substring(0, 1))) {
+                            continue;
                         }
-                    } else {
-                        saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Strike must be a number", 0);
-                        return false;
                     }
+                    log.info("cancelling order: {} for contract: {}", order.orderId(), contract);
+                    twsEngine.cancelTrade(order);
                 }
+            }
+        }
+        saveOrderToDatabase(orderJson, contracts, orderRandomId, null, null, "", "", contractJson, "Position closed successfully.", 0);
+        return true;
+    }
 
-                double order_strike = 0;
-
+    private CompletableFuture<Void> selectBestStrike(TradeRequest request) {
+        Map<String, Object> contracts = request.contracts;
+        if (contracts.get("strike_start") == null ||
+                ((Number) contracts.get("strike_start")).doubleValue() == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return getBestStrikeForOption(request.contractJson,
+                ((Number) contracts.get("strike_start")).doubleValue(),
+                ((Number) contracts.get("strike_end")).doubleValue(),
+                ((Number) contracts.get("strike_interval")).doubleValue(),
+                ((Number) contracts.get("premium_start")).doubleValue(),
+                ((Number) contracts.get("premium_end")).doubleValue())
+                .thenAccept(strike -> {
+                    if (strike != 0) request.contractJson.put("strike", strike);
+                });
+    }
 
-                if (("OPT".equalsIgnoreCase(instType) || "FOP".equalsIgnoreCase(instType)) && strike != null) {
-                    order_strike = twsEngine.getClosestStrike(con_id, strike);
-                } else if (strike != null) {
-                    order_strike = strike;
+    // Completes with the strike to trade, or with null when the alert was rejected and already recorded
+    private CompletableFuture<Double> resolveOrderStrike(TradeRequest request) {
+        Map<String, Object> contractJson = request.contractJson;
+        Double strike = null;
+        Object strikeObj = contractJson.get("strike");
+        String instType = (String) contractJson.get("inst_type");
+
+        // Validate strike only for OPT or FOP
+        if ("OPT".equalsIgnoreCase(instType) || "FOP".equalsIgnoreCase(instType)) {
+            if (strikeObj instanceof Number) {
+                double value = ((Number) strikeObj).doubleValue();
+                if (value != 0) {
+                    strike = value;
+                } else {
+                    saveOrderToDatabase(request.orderJson, request.contracts, request.orderRandomId, null, null, "", "", contractJson, "Please pass valid Strike", 0);
+                    return CompletableFuture.completedFuture(null);
                 }
+            } else {
+                saveOrderToDatabase(request.orderJson, request.contracts, request.orderRandomId, null, null, "", "", contractJson, "Strike must be a number", 0);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
 
+        Double inputStrike = strike;
+        CompletableFuture<Double> lookup;
+        if (("OPT".equalsIgnoreCase(instType) || "FOP".equalsIgnoreCase(instType)) && strike != null) {
+            lookup = twsEngine.getClosestStrikeAsync(request.conId, strike);
+        } else {
+            lookup = CompletableFuture.completedFuture(strike != null ? strike : 0);
+        }
 
-                if (order_strike == 0 || Double.isNaN(order_strike)) {
-                    order_strike = strike != null ? strike : 0;
-                }
+        return lookup.thenApply(orderStrike -> {
+            if (orderStrike == null || orderStrike == 0 || Double.isNaN(orderStrike)) {
+                return inputStrike != null ? inputStrike : 0;
+            }
+            return orderStrike;
+        });
+    }
 
+    // The trade runs as a chain of stages on the trade executor. Waits for acks and fills are status-watch futures
+    // completed by the status loop, so no worker sits idle while TWS works the order.
+    private CompletableFuture<Boolean> submitTrade(TradeRequest request, double order_strike) {
+        Map<String, Object> contractJson = request.contractJson;
+        TradeProgress progress = new TradeProgress();
+        long cpuStartNanos = currentThreadCpuNanos();
+        CompletableFuture<Boolean> placed;
+        try {
+            Contract ibContract = twsEngine.createContract(
+                    (String) contractJson.get("inst_type"),
+                    (String) contractJson.get("symbol"),
+                    (String) contractJson.get("exchange"),
+                    (String) contractJson.get("currency"),
+                    order_strike,
+                    (String) contractJson.get("right"),
+                    null,
+                    (String) contractJson.get("maturityDate"),
+                    (String) contractJson.get("trading_class"));
 
-                Contract ibContract = twsEngine.createContract(
-                        (String) contractJson.get("inst_type"),
-                        (String) contractJson.get("symbol"),
-                        (String) contractJson.get("exchange"),
-                        (String) contractJson.get("currency"),
-                        order_strike,
-                        (String) contractJson.get("right"),
-                        null,
-                        (String) contractJson.get("maturityDate"),
-                        (String) contractJson.get("trading_class"));
+            // The new entry only goes out once every reversing close has been accepted
+            long reverseStartNanos = System.nanoTime();
+            CompletableFuture<Void> reversed = request.reverseOrderClose
+                    ? acknowledged(submitReverseCloses(request), reverseStartNanos, "Reverse-close", request.orderRandomId)
+                            .thenRunAsync(() -> cancelReversedOrders(request), executor)
+                    : CompletableFuture.completedFuture(null);
+            placed = reversed.thenComposeAsync(stage(ignored -> placeOrders(request, ibContract, progress)), executor);
+        } catch (Exception e) {
+            placed = CompletableFuture.failedFuture(e);
+        } finally {
+            progress.cpuNanos.add(currentThreadCpuNanos() - cpuStartNanos);
+        }
+        return placed.exceptionally(e -> failTrade(request, progress.entryPrice,
+                        e instanceof CompletionException && e.getCause() != null ? e.getCause() : e))
+                .whenComplete((result, e) -> log.info("placeTrade completed for orderRandomId: {} (CPU time {} ms)",
+                        request.orderRandomId, TimeUnit.NANOSECONDS.toMillis(progress.cpuNanos.sum())));
+    }
 
-                if (reverseOrderClose) {
-                    String oppositeAction = "BUY".equals(orderJson.get("action")) ? "SELL" : "BUY";
-                    for (Map<String, Object> pos : positions) {
-                        if (!pos.get("account").equals(account)) {
-                            continue;
-                        }
-                        log.info("Closing positions for {} with order_random_id: {}", contractJson.get("symbol"), orderRandomId);
-                        Contract contract = (Contract) pos.get("contract");
-                        Decimal position = (Decimal) pos.get("position");
+    private List<CompletableFuture<Order>> submitReverseCloses(TradeRequest request) {
+        String orderRandomId = request.orderRandomId;
+        Map<String, Object> orderJson = request.orderJson;
+        Map<String, Object> contractJson = request.contractJson;
+        String account = request.account;
+        List<Map<String, Object>> positions = request.positions;
+        List<CompletableFuture<Order>> reverseAcks = new ArrayList<>();
+        String oppositeAction = "BUY".equals(orderJson.get("action")) ? "SELL" : "BUY";
+        for (Map<String, Object> pos : positions) {
+            if (!pos.get("account").equals(account)) {
+                continue;
+            }
+            log.info("Closing positions for {} with order_random_id: {}", contractJson.get("symbol"), orderRandomId);
+            Contract contract = (Contract) pos.get("contract");
+            Decimal position = (Decimal) pos.get("position");
 
-                        String contract_local_symbol = String.valueOf(contract.localSymbol());
+            String contract_local_symbol = String.valueOf(contract.localSymbol());
 
-                        String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
-                        boolean pos_symbol_ck = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
+            String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
+            boolean pos_symbol_ck = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
 //
-                        boolean pos_sec_ck = Objects.equals(String.valueOf(contract.secType()), contractJson.get("inst_type").toString().toUpperCase());
-                        boolean pos_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
+            boolean pos_sec_ck = Objects.equals(String.valueOf(contract.secType()), contractJson.get("inst_type").toString().toUpperCase());
+            boolean pos_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
+
+            boolean shouldClosePosition = false;
+
+            if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
+                String contractRight = String.valueOf(contract.right());
+                String jsonRight = (String) contractJson.get("right");
+                if (contractRight != null && jsonRight != null) {
+                    boolean isOppositeRight = ("C".equalsIgnoreCase(jsonRight.substring(0, 1)) && "P".equalsIgnoreCase(contractRight.substring(0, 1))) ||
+                            ("P".equalsIgnoreCase(jsonRight.substring(0, 1)) && "C".equalsIgnoreCase(contractRight.substring(0, 1)));
+                    boolean isSameRightOppositeAction = jsonRight.substring(0, 1).equalsIgnoreCase(contractRight.substring(0, 1)) &&
+                            (("BUY".equals(orderJson.get("action")) && position.longValue() < 0) ||
+                                    ("SELL".equals(orderJson.get("action")) && position.longValue() > 0));
+
+                    shouldClosePosition = pos_symbol_ck && pos_sec_ck  && (isOppositeRight || (isSameRightOppositeAction && pos_last_date));
+                }
+            } else {
+                // FUT and STK: Original logic
+                boolean pos_action_data = ("BUY".equals(orderJson.get("action")) && position.longValue() < 0);
+                boolean pos_action_ck = ("SELL".equals(orderJson.get("action")) && position.longValue() > 0);
+                boolean pos_action_reverse = ("BUY".equals(oppositeAction) && position.longValue() > 0) ||
+                        ("SELL".equals(oppositeAction) && position.longValue() < 0);
+                shouldClosePosition = pos_symbol_ck && pos_sec_ck && pos_last_date && (pos_action_data || pos_action_ck) && pos_action_reverse;
+            }
 
-                        boolean shouldClosePosition = false;
+            if (shouldClosePosition) {
+                String close_action = position.longValue() > 0 ? "SELL" : "BUY"; // Using the fixed close_action logic
+                Object closeOrderObj = twsEngine.createOrder("MKT", close_action,
+                        (int) Math.abs(position.longValue()), null, null, null, null, null, null, null, null, null,
+                        account, false, false, null, null, null);
+                if (closeOrderObj instanceof Order) {
+                    Order closeOrder = (Order) closeOrderObj;
+                    closeOrder.outsideRth(true);
+                    contract.exchange(contractJson.get("exchange").toString().toUpperCase());
+                    reverseAcks.add(twsEngine.submitOrderAsync(contract, closeOrder));
+                    orderToContractMap.put(closeOrder.orderId(), contract);
+                    log.info("Closing position for contract: {}", contract);
+                }
+            }
+        }
+        return reverseAcks;
+    }
 
-                        if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
-                            String contractRight = String.valueOf(contract.right());
-                            String jsonRight = (String) contractJson.get("right");
-                            if (contractRight != null && jsonRight != null) {
-                                boolean isOppositeRight = ("C".equalsIgnoreCase(jsonRight.substring(0, 1)) && "P".equalsIgnoreCase(contractRight.substring(0, 1))) ||
-                                        ("P".equalsIgnoreCase(jsonRight.substring(0, 1)) && "C".equalsIgnoreCase(contractRight.substring(0, 1)));
-                                boolean isSameRightOppositeAction = jsonRight.substring(0, 1).equalsIgnoreCase(contractRight.substring(0, 1)) &&
-                                        (("BUY".equals(orderJson.get("action")) && position.longValue() < 0) ||
-                                                ("SELL".equals(orderJson.get("action")) && position.longValue() > 0));
-
-                                shouldClosePosition = pos_symbol_ck && pos_sec_ck  && (isOppositeRight || (isSameRightOppositeAction && pos_last_date));
-                            }
-                        } else {
-                            // FUT and STK: Original logic
-                            boolean pos_action_data = ("BUY".equals(orderJson.get("action")) && position.longValue() < 0);
-                            boolean pos_action_ck = ("SELL".equals(orderJson.get("action")) && position.longValue() > 0);
-                            boolean pos_action_reverse = ("BUY".equals(oppositeAction) && position.longValue() > 0) ||
-                                    ("SELL".equals(oppositeAction) && position.longValue() < 0);
-                            shouldClosePosition = pos_symbol_ck && pos_sec_ck && pos_last_date && (pos_action_data || pos_action_ck) && pos_action_reverse;
+    private void cancelReversedOrders(TradeRequest request) {
+        Map<String, Object> orderJson = request.orderJson;
+        Map<String, Object> contractJson = request.contractJson;
+        String account = request.account;
+        List<Map.Entry<Order, Contract>> openOrders = request.openOrders;
+        try {
+            for (Map.Entry<Order, Contract> order_contract : openOrders) {
+                Order order = order_contract.getKey();
+                Contract contract = order_contract.getValue();
+                if (!String.valueOf(order.account()).equals(account)) continue;
+                String tag = order.orderRef();
+                OrderClient orderClient = OrderStores.get().findByParentId(String.valueOf(order.orderId()));
+                String orderStatus = orderClient != null ? orderClient.getEntryStatus() : "Unknown";
+                String contract_local_symbol = String.valueOf(contract.localSymbol());
+
+                String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
+//                        boolean x = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
+                boolean shouldCancelOrder = false;
+                if (contract != null && (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol"))) &&
+                        String.valueOf(contract.secType()).equals(contractJson.get("inst_type").toString().toUpperCase())) {
+                    if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
+                        String contractRight = String.valueOf(contract.right());
+                        String jsonRight = (String) contractJson.get("right");
+                        if (contractRight != null && jsonRight != null) {
+                            boolean isOppositeRight = ("C".equalsIgnoreCase(jsonRight.substring(0, 1)) && "P".equalsIgnoreCase(contractRight.substring(0, 1))) ||
+                                    ("P".equalsIgnoreCase(jsonRight.substring(0, 1)) && "C".equalsIgnoreCase(contractRight.substring(0, 1)));
+                            boolean isSameRightOppositeAction = jsonRight.substring(0, 1).equalsIgnoreCase(contractRight.substring(0, 1)) &&
+                                    ((String.valueOf(order.action()).equals(orderJson.get("action")) && Arrays.asList("TP", "SL").contains(tag)) ||
+                                            (!String.valueOf(order.action()).equals(orderJson.get("action")) && "ENTRY".equals(tag)));
+                            boolean or_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
+                            shouldCancelOrder = (isOppositeRight || (isSameRightOppositeAction && or_last_date)) &&
+                                    Arrays.asList("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted", "Unknown").contains(orderStatus);
                         }
-
-                        if (shouldClosePosition) {
-                            String close_action = position.longValue() > 0 ? "SELL" : "BUY"; // Using the fixed close_action logic
-                            Object closeOrderObj = twsEngine.createOrder("MKT", close_action,
-                                    (int) Math.abs(position.longValue()), null, null, null, null, null, null, null, null, null,
-                                    account, false, false, null, null, null);
-                            if (closeOrderObj instanceof Order) {
-                                Order closeOrder = (Order) closeOrderObj;
-                                closeOrder.outsideRth(true);
-                                contract.exchange(contractJson.get("exchange").toString().toUpperCase());
-                                TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(contract, closeOrder);
-                                log.info("Closing position for contract: {}", contract);
-                                // Thread.sleep(100); // Commented out as in original code
-                            }
+                    } else {
+                        if
+                        (String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"))) {
+                            // FUT and STK: Original logic
+                            shouldCancelOrder = ((String.valueOf(order.action()).equals(orderJson.get("action")) && Arrays.asList("TP", "SL").contains(tag)) ||
+                                    (!String.valueOf(order.action()).equals(orderJson.get("action")) && "ENTRY".equals(tag))) &&
+                                    Arrays.asList("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted", "Unknown").contains(orderStatus);
                         }
                     }
+                }
 
-                    for (Map.Entry<Order, Contract> order_contract : openOrders) {
-                        Order order = order_contract.getKey();
-                        Contract contract = order_contract.getValue();
-                        if (!String.valueOf(order.account()).equals(account)) continue;
-                        String tag = order.orderRef();
-                        OrderClient orderClient = DatabaseConfig.getOrderClientByParentId(String.valueOf(order.orderId()));
-                        String orderStatus = orderClient != null ? orderClient.getEntryStatus() : "Unknown";
-                        String contract_local_symbol = String.valueOf(contract.localSymbol());
+                if (shouldCancelOrder) {
+                    log.info("Cancelling order: {} for contract: {}", order.orderId(), contract);
+                    twsEngine.cancelTrade(order);
+                }
+            }
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
 
-                        String contract_local_symbol_result = contract_local_symbol.split(" ")[0];
-//                        boolean x = (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol")));
-                        boolean shouldCancelOrder = false;
-                        if (contract != null && (String.valueOf(contract.symbol()).equals(contractJson.get("symbol")) || contract_local_symbol_result.equals(contractJson.get("symbol"))) &&
-                                String.valueOf(contract.secType()).equals(contractJson.get("inst_type").toString().toUpperCase())) {
-                            if (String.valueOf(contract.secType()).equals("OPT") || String.valueOf(contract.secType()).equals("FOP")) {
-                                String contractRight = String.valueOf(contract.right());
-                                String jsonRight = (String) contractJson.get("right");
-                                if (contractRight != null && jsonRight != null) {
-                                    boolean isOppositeRight = ("C".equalsIgnoreCase(jsonRight.substring(0, 1)) && "P".equalsIgnoreCase(contractRight.substring(0, 1))) ||
-                                            ("P".equalsIgnoreCase(jsonRight.substring(0, 1)) && "C".equalsIgnoreCase(contractRight.substring(0, 1)));
-                                    boolean isSameRightOppositeAction = jsonRight.substring(0, 1).equalsIgnoreCase(contractRight.substring(0, 1)) &&
-                                            ((String.valueOf(order.action()).equals(orderJson.get("action")) && Arrays.asList("TP", "SL").contains(tag)) ||
-                                                    (!String.valueOf(order.action()).equals(orderJson.get("action")) && "ENTRY".equals(tag)));
-                                    boolean or_last_date = String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"));
-                                    shouldCancelOrder = (isOppositeRight || (isSameRightOppositeAction && or_last_date)) &&
-                                            Arrays.asList("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted", "Unknown").contains(orderStatus);
-                                }
-                            } else {
-                                if
-                                (String.valueOf(contract.lastTradeDateOrContractMonth()).equals(contractJson.get("maturityDate"))) {
-                                    // FUT and STK: Original logic
-                                    shouldCancelOrder = ((String.valueOf(order.action()).equals(orderJson.get("action")) && Arrays.asList("TP", "SL").contains(tag)) ||
-                                            (!String.valueOf(order.action()).equals(orderJson.get("action")) && "ENTRY".equals(tag))) &&
-                                            Arrays.asList("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted", "Unknown").contains(orderStatus);
-                                }
-                            }
-                        }
+    private CompletableFuture<Boolean> placeOrders(TradeRequest request, Contract ibContract, TradeProgress progress)
+            throws Exception {
+        Map<String, Object> orderJson = request.orderJson;
+        Map<String, Object> contractJson = request.contractJson;
+        String account = request.account;
+        boolean reverseOrderClose = request.reverseOrderClose;
+        boolean duplicatePositionAllow = request.duplicatePositionAllow;
+        int quantity = request.quantity;
+        long cpuStartNanos = currentThreadCpuNanos();
+        try {
+            log.info("creating order for contract: {}", ibContract);
+            Object tradeOrderObj = twsEngine.createOrder(
+                    (String) orderJson.get("trade_type"),
+                    (String) orderJson.get("action"),
+                    quantity,
+                    orderJson.get("stop_price") != null && ((Double) orderJson.get("stop_price")) != 0
+                            ? (Double) orderJson.get("stop_price") : null,
+                    orderJson.get("limit_price") != null && ((Double) orderJson.get("limit_price")) != 0
+                            ? (Double) orderJson.get("limit_price") : null,
+                    orderJson.get("tp_price") != null && ((Double) orderJson.get("tp_price")) != 0
+                            ? (Double) orderJson.get("tp_price") : null,
+                    orderJson.get("sl_price") != null && ((Double) orderJson.get("sl_price")) != 0
+                            ? (Double) orderJson.get("sl_price") : null,
+                    orderJson.get("sl_dollar") != null && ((Double) orderJson.get("sl_dollar")) != 0
+                            ? (Double) orderJson.get("sl_dollar") : null,
+                    orderJson.get("tp_dollar") != null && ((Double) orderJson.get("tp_dollar")) != 0
+                            ? (Double) orderJson.get("tp_dollar") : null,
+                    orderJson.get("sl_percentage") != null && ((Double) orderJson.get("sl_percentage")) != 0
+                            ? (Double) orderJson.get("sl_percentage") : null,
+                    orderJson.get("tp_percentage") != null && ((Double) orderJson.get("tp_percentage")) != 0
+                            ? (Double) orderJson.get("tp_percentage") : null,
+                    orderJson.get("trailing_amount") != null && ((Double) orderJson.get("trailing_amount")) != 0
+                            ? (Double) orderJson.get("trailing_amount") : null,
+                    account,
+                    reverseOrderClose,
+                    duplicatePositionAllow,
+                    orderJson.get("entry_lmt_price_offset") != null && ((Double) orderJson.get("entry_lmt_price_offset")) != 0
+                            ? (Double) orderJson.get("entry_lmt_price_offset") : null,
+                    orderJson.get("entry_trailing_amount") != null && ((Double) orderJson.get("entry_trailing_amount")) != 0
+                            ? (Double) orderJson.get("entry_trailing_amount") : null,
+                    orderJson.get("sl_lmt_price_offset") != null && ((Double) orderJson.get("sl_lmt_price_offset")) != 0
+                            ? (Double) orderJson.get("sl_lmt_price_offset") : null
+            );
+            log.info("Trade order object created: {}", tradeOrderObj);
 
-                        if (shouldCancelOrder) {
-                            log.info("Cancelling order: {} for contract: {}", order.orderId(), contract);
-                            twsEngine.cancelTrade(order);
-                        }
-                    }
+            String ocaGroupId = generateRandomKey(7) + generateRandomKey(8);
+            if (!(tradeOrderObj instanceof List)) {
+                return placeSingleOrder(request, ibContract, (Order) tradeOrderObj, progress);
+            }
+            List<Order> tradeOrders = new ArrayList<>((List<Order>) tradeOrderObj);
+            ProtectiveOrderSpec protectiveSpec = new ProtectiveOrderSpec(orderJson, contractJson, request.minTick);
+            if (request.nativeBracket && isNativeBracketEligible(protectiveSpec, request.lmtToMarketWait)) {
+                return placeNativeBracket(request, ibContract, tradeOrders, protectiveSpec, ocaGroupId, progress);
+            }
+            return placeSequentialBracket(request, ibContract, tradeOrders, protectiveSpec, ocaGroupId, progress);
+        } finally {
+            progress.cpuNanos.add(currentThreadCpuNanos() - cpuStartNanos);
+        }
+    }
 
+    private CompletableFuture<Boolean> placeNativeBracket(TradeRequest request, Contract ibContract, List<Order> tradeOrders,
+                                                          ProtectiveOrderSpec protectiveSpec, String ocaGroupId,
+                                                          TradeProgress progress) throws SQLException {
+        Map<String, Object> orderJson = request.orderJson;
+        Map<String, Object> contractJson = request.contractJson;
+        String account = request.account;
+        // Protective prices are absolute here, so the whole bracket can go out before the entry fills
+        double[] tpSl = protectiveSpec.pricesFor(0);
+        double tp = tpSl[0];
+        double sl = tpSl[1];
+
+        Order entryOrder = tradeOrders.get(0);
+        Order tpOrder = tradeOrders.get(1);
+        Order slOrder = tradeOrders.get(2);
+        entryOrder.outsideRth(true);
+        entryOrder.account(account);
+        entryOrder.orderRef("ENTRY");
+        if (tpOrder != null) {
+            tpOrder.outsideRth(true);
+            tpOrder.account(account);
+            tpOrder.lmtPrice(tp);
+            tpOrder.ocaGroup(ocaGroupId);
+            tpOrder.ocaType(1);
+            tpOrder.orderRef("TP");
+        }
+        if (slOrder != null) {
+            slOrder.outsideRth(true);
+            slOrder.account(account);
+            if ("STP".equals(slOrder.orderType().name())) {
+                slOrder.auxPrice(sl);
+            } else if (OrderType.TRAIL_LIMIT == slOrder.orderType()) {
+                slOrder.trailStopPrice(sl);
+            }
+            slOrder.ocaGroup(ocaGroupId);
+            slOrder.ocaType(1);
+            slOrder.tif("GTC");
+            slOrder.orderRef("SL");
+        }
+
+        // Ids are allocated locally, so the row and every leg id are saved before the bracket is
+        // transmitted and the first status callback already finds its row
+        twsEngine.assignBracketIds(entryOrder, tpOrder, slOrder);
+        progress.orderId = String.valueOf(entryOrder.orderId());
+        progress.entryPrice = 0.0;
+        String tpTempId = null;
+        String slTempId = null;
+        if (tpOrder != null) {
+            tpTempId = String.valueOf(tpOrder.orderId());
+        }
+        if (slOrder != null) {
+            progress.stopLossOrder = slOrder;
+            slTempId = String.valueOf(slOrder.orderId());
+        }
+        saveOrderToDatabase(orderJson, request.contracts, request.orderRandomId, progress.entryPrice, progress.orderId,
+                String.valueOf(entryOrder.permId()), "PendingSubmit", contractJson, null, request.quantity, tpTempId, slTempId);
+        progress.nativeBracket = true;
+        progress.entryWatch = twsEngine.watchOrderStatus(entryOrder.orderId());
+        if (tpOrder != null) {
+            progress.protectiveWatches.add(twsEngine.watchOrderStatus(tpOrder.orderId()));
+        }
+        if (slOrder != null) {
+            progress.protectiveWatches.add(twsEngine.watchOrderStatus(slOrder.orderId()));
+        }
+
+        // Acks arrive through the status loop like every other transition; nothing waits for them here
+        List<TwsEngine.OrderExecutionResult> results = twsEngine.executeBracketOrder(ibContract, entryOrder, tpOrder, slOrder);
+        for (TwsEngine.OrderExecutionResult result : results) {
+            orderToContractMap.put(result.getOrder().orderId(), ibContract);
+            releaseRiskSlotOnAck(request, result);
+        }
+
+        return entryFill(progress.orderId).thenApplyAsync(filledEntry -> {
+            progress.recordEntry(filledEntry);
+            afterEntry(request, ibContract, progress);
+            return true;
+        }, executor);
+    }
+
+    private CompletableFuture<Boolean> placeSequentialBracket(TradeRequest request, Contract ibContract, List<Order> tradeOrders,
+                                                              ProtectiveOrderSpec protectiveSpec, String ocaGroupId,
+                                                              TradeProgress progress) throws Exception {
+        Order order = tradeOrders.get(0);
+        log.info("Processing order 1 of {}: {}", tradeOrders.size(), order);
+        CompletableFuture<OrderClient> entryDone;
+        if (order == null) {
+            entryDone = CompletableFuture.completedFuture(null);
+        } else {
+            transmitEntry(request, ibContract, order, progress);
+            entryDone = isLimitToMarket(request)
+                    ? limitToMarket(request, ibContract, order, progress).thenComposeAsync(limitEntry ->
+                            "Filled".equals(progress.entryStatus) ? CompletableFuture.completedFuture(limitEntry)
+                                    : entryFill(progress.orderId), executor)
+                    : entryFill(progress.orderId);
+        }
+        return entryDone.thenApplyAsync(stage(filledEntry -> {
+            long cpuStartNanos = currentThreadCpuNanos();
+            try {
+                progress.recordEntry(filledEntry);
+                if ("Filled".equals(progress.entryStatus)) {
+                    placeProtectiveLegs(request, ibContract, tradeOrders, protectiveSpec, ocaGroupId, progress);
                 }
-                log.info("creating order for contract: {}", ibContract);
-                Object tradeOrderObj = twsEngine.createOrder(
-                        (String) orderJson.get("trade_type"),
-                        (String) orderJson.get("action"),
-                        quantity,
-                        orderJson.get("stop_price") != null && ((Double) orderJson.get("stop_price")) != 0
-                                ? (Double) orderJson.get("stop_price") : null,
-                        orderJson.get("limit_price") != null && ((Double) orderJson.get("limit_price")) != 0
-                                ? (Double) orderJson.get("limit_price") : null,
-                        orderJson.get("tp_price") != null && ((Double) orderJson.get("tp_price")) != 0
-                                ? (Double) orderJson.get("tp_price") : null,
-                        orderJson.get("sl_price") != null && ((Double) orderJson.get("sl_price")) != 0
-                                ? (Double) orderJson.get("sl_price") : null,
-                        orderJson.get("sl_dollar") != null && ((Double) orderJson.get("sl_dollar")) != 0
-                                ? (Double) orderJson.get("sl_dollar") : null,
-                        orderJson.get("tp_dollar") != null && ((Double) orderJson.get("tp_dollar")) != 0
-                                ? (Double) orderJson.get("tp_dollar") : null,
-                        orderJson.get("sl_percentage") != null && ((Double) orderJson.get("sl_percentage")) != 0
-                                ? (Double) orderJson.get("sl_percentage") : null,
-                        orderJson.get("tp_percentage") != null && ((Double) orderJson.get("tp_percentage")) != 0
-                                ? (Double) orderJson.get("tp_percentage") : null,
-                        orderJson.get("trailing_amount") != null && ((Double) orderJson.get("trailing_amount")) != 0
-                                ? (Double) orderJson.get("trailing_amount") : null,
-                        account,
-                        reverseOrderClose,
-                        duplicatePositionAllow,
-                        orderJson.get("entry_lmt_price_offset") != null && ((Double) orderJson.get("entry_lmt_price_offset")) != 0
-                                ? (Double) orderJson.get("entry_lmt_price_offset") : null,
-                        orderJson.get("entry_trailing_amount") != null && ((Double) orderJson.get("entry_trailing_amount")) != 0
-                                ? (Double) orderJson.get("entry_trailing_amount") : null,
-                        orderJson.get("sl_lmt_price_offset") != null && ((Double) orderJson.get("sl_lmt_price_offset")) != 0
-                                ? (Double) orderJson.get("sl_lmt_price_offset") : null
-                );
-                log.info("Trade order object created: {}", tradeOrderObj);
-
-                String ocaGroupId = generateRandomKey(7) + generateRandomKey(8);
-                if (tradeOrderObj instanceof List) {
-                    List<Order> tradeOrders = new ArrayList<>((List<Order>) tradeOrderObj);
-
-                    String orderId = null;
-                    String tpTempId = null;
-                    String slTempId = null;
-                    double tp = 0;
-                    double sl = 0;
-                    String entryOrderFilled = "";
-
-                    for (int i = 0; i < tradeOrders.size(); i++) {
-                        log.info("Processing order {} of {}: {}", i + 1, tradeOrders.size(), tradeOrders.get(i));
-                        Order order = tradeOrders.get(i);
-                        if (order == null) continue;
-                        order.outsideRth(true);
-                        order.account(account);
-                        if (i == 0) {
-                            order.orderRef("ENTRY");
-                            TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
-                            log.info("order result: {}", result);
-                            Order executedOrder = waitForOrderAssignment(result, "order placement");
-                            log.info("executed order: {}", executedOrder);
-                            orderToContractMap.put(executedOrder.orderId(), ibContract);
-                            long startTime = System.currentTimeMillis();
-
-                            if (executedOrder != null) {
-                                log.info("executed order id: {}", executedOrder.orderId());
-                                orderId = String.valueOf(executedOrder.orderId());
-                                log.info("executed order id: {}", executedOrder.orderId());
-                                entryOrderId = String.valueOf(executedOrder.permId());
-                                log.info("executed order id: {}", executedOrder.permId());
-                                OrderClient orderClient = DatabaseConfig.getOrderClientByParentId(orderId);
-                                entryOrderStatus = orderClient != null ? orderClient.getEntryStatus() : "Unknown";
-                                entryOrderPrice = orderClient != null && orderClient.getEntryFilledPrice() != null
-                                        ? (double) orderClient.getEntryFilledPrice() : 0.0;
-                                saveOrderToDatabase(orderJson, contracts, orderRandomId, entryOrderPrice, orderId,
-                                        entryOrderId, entryOrderStatus, contractJson, null, quantity);
-
-                                if (("LMT".equals(orderJson.get("trade_type")) || "TRAIL LIMIT".equals(orderJson.get("trade_type"))) && lmtToMarketWait > 0) {
-                                    int maxWait = Math.max(lmtToMarketWait * 1000, 1000);
-                                    while (System.currentTimeMillis() - startTime < maxWait) {
-                                        log.info("Waiting for {} ms before placing Market order", maxWait);
-                                        OrderClient entryOrderDbData = DatabaseConfig.getOrderClientByParentId(orderId);
-                                        entryOrderFilled = entryOrderDbData != null ? entryOrderDbData.getEntryStatus() : "Unknown";
-                                        if ("Filled".equals(entryOrderFilled)) {
-                                            entryOrderPrice = entryOrderDbData.getEntryFilledPrice() != null
-                                                    ? (double) entryOrderDbData.getEntryFilledPrice() : 0.0;
-                                            log.info("Limit order filled!");
-                                            break;
-                                        }
-                                        Thread.sleep(50);
-                                    }
-                                    if (!"Filled".equals(entryOrderFilled)) {
-                                        log.info("Limit order not filled in time, placing market order.");
-                                        twsEngine.cancelTrade(executedOrder);
-//                                        Thread.sleep(100);
-                                        OrderClient entryOrderDbData = DatabaseConfig.getOrderClientByParentId(orderId);
-                                        int remaining = entryOrderDbData != null ? entryOrderDbData.getRemaining().intValue() : quantity;
-                                        log.info("Placing market order for remaining quantity: {}", remaining);
-                                        Order marketOrder = new Order();
-                                        marketOrder.action((String) orderJson.get("action"));
-                                        marketOrder.orderType("MKT");
-                                        marketOrder.totalQuantity(Decimal.get(remaining));
-                                        marketOrder.account(account);
-                                        marketOrder.orderRef("ENTRY");
-                                        marketOrder.tif("GTC");
-                                        TwsEngine.OrderExecutionResult marketResult = twsEngine.executeOrder(ibContract, marketOrder);
-                                        executedOrder = waitForOrderAssignment(marketResult, "market fallback order");
-                                        orderToContractMap.put(executedOrder.orderId(), ibContract);
-                                        if (executedOrder != null) {
-
-                                            OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                                            orderId = String.valueOf(executedOrder.orderId());
-                                            entryOrderId = String.valueOf(executedOrder.permId());
-                                            OrderClient updatedClient = DatabaseConfig.getOrderClientByParentId(orderId);
-                                            entryOrderStatus = updatedClient != null ? updatedClient.getEntryStatus() : "Unknown";
-                                            entryOrderPrice = updatedClient != null && updatedClient.getEntryFilledPrice() != null
-                                                    ? (double) updatedClient.getEntryFilledPrice() : 0.0;
-                                            if (clients != null) {
-                                                Map<String, Object> updateFields = new HashMap<>();
-                                                updateFields.put("parent_id", orderId);
-                                                updateFields.put("entry_id", entryOrderId);
-                                                updateFields.put("entry_status", entryOrderStatus);
-                                                updateFields.put("order_type", "MKT");
-                                                updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                                DatabaseConfig.updateOrderClient(clients, updateFields);
-                                            }
-                                        }
-                                    }
-                                }
+                afterEntry(request, ibContract, progress);
+                return true;
+            } finally {
+                progress.cpuNanos.add(currentThreadCpuNanos() - cpuStartNanos);
+            }
+        }), executor);
+    }
 
-                                long fillDeadline = System.currentTimeMillis() + ORDER_FILL_WAIT_TIMEOUT_MS;
-                                while (!"Filled".equals(entryOrderFilled) && System.currentTimeMillis() < fillDeadline) {
-                                    Thread.sleep(50);
-                                    OrderClient entryOrderDbData = DatabaseConfig.getOrderClientByParentId(orderId);
-                                    if (entryOrderDbData == null) {
-                                        log.error("Order not found in DB while waiting for fill. orderId={}", orderId);
-                                        break;
-                                    }
-                                    entryOrderFilled = entryOrderDbData.getEntryStatus();
-                                    entryOrderPrice = entryOrderDbData.getEntryFilledPrice() != null
-                                            ? (double) entryOrderDbData.getEntryFilledPrice() : 0.0;
-                                    if ("Cancelled".equals(entryOrderFilled)) break;
-                                }
-                                if (!"Filled".equals(entryOrderFilled) && !"Cancelled".equals(entryOrderFilled)) {
-                                    log.error("Timed out waiting for entry order fill for orderId={}", orderId);
-                                }
-                            }
-                        } else if (i == 1 && order != null && "Filled".equals(entryOrderFilled)) {
-                            long tpDeadline = System.currentTimeMillis() + PRICE_COMPUTE_WAIT_TIMEOUT_MS;
-                            while (tp == 0 && System.currentTimeMillis() < tpDeadline) {
-
-                                double[] tpSl = getTpSlPrice((String) contractJson.get("inst_type"), entryOrderPrice,
-                                        (String) orderJson.get("action"),
-                                        orderJson.get("tp_price") != null && ((Double) orderJson.get("tp_price")) != 0
-                                                ? (Double) orderJson.get("tp_price") : null,
-                                        orderJson.get("sl_price") != null && ((Double) orderJson.get("sl_price")) != 0
-                                                ? (Double) orderJson.get("sl_price") : null,
-                                        orderJson.get("sl_dollar") != null && ((Double) orderJson.get("sl_dollar")) != 0
-                                                ? (Double) orderJson.get("sl_dollar") : null,
-                                        orderJson.get("tp_dollar") != null && ((Double) orderJson.get("tp_dollar")) != 0
-                                                ? (Double) orderJson.get("tp_dollar") : null,
-                                        orderJson.get("sl_percentage") != null && ((Double) orderJson.get("sl_percentage")) != 0
-                                                ? (Double) orderJson.get("sl_percentage") : null,
-                                        orderJson.get("tp_percentage") != null && ((Double) orderJson.get("tp_percentage")) != 0
-                                                ? (Double) orderJson.get("tp_percentage") : null,
-                                        minTick);
-                                tp = tpSl[0];
-                                sl = tpSl[1];
-                            }
-                            order.lmtPrice(tp);
-                            order.ocaGroup(ocaGroupId);
-                            order.ocaType(1);
-                            order.orderRef("TP");
-                            TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
-                            Order executedOrder = waitForOrderAssignment(result, "order placement");
-                            log.info("order result: {}", result);
-                            orderToContractMap.put(executedOrder.orderId(), ibContract);
-                            if (executedOrder != null) {
-//                                Thread.sleep(100);
-                                tpTempId = String.valueOf(executedOrder.orderId());
-                                OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                                if (clients != null) {
-                                    Map<String, Object> updateFields = new HashMap<>();
-                                    updateFields.put("tp_temp_id", tpTempId);
-                                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                    DatabaseConfig.updateOrderClient(clients, updateFields);
-                                }
-                            }
-                        } else if (i == 2 && order != null && "Filled".equals(entryOrderFilled)) {
-                            OrderType ordertype = order.orderType();
-                            double[] tpSl = getTpSlPrice((String) contractJson.get("inst_type"), entryOrderPrice,
-                                    (String) orderJson.get("action"),
-                                    orderJson.get("tp_price") != null && ((Double) orderJson.get("tp_price")) != 0
-                                            ? (Double) orderJson.get("tp_price") : null,
-                                    orderJson.get("sl_price") != null && ((Double) orderJson.get("sl_price")) != 0
-                                            ? (Double) orderJson.get("sl_price") : null,
-                                    orderJson.get("sl_dollar") != null && ((Double) orderJson.get("sl_dollar")) != 0
-                                            ? (Double) orderJson.get("sl_dollar") : null,
-                                    orderJson.get("tp_dollar") != null && ((Double) orderJson.get("tp_dollar")) != 0
-                                            ? (Double) orderJson.get("tp_dollar") : null,
-                                    orderJson.get("sl_percentage") != null && ((Double) orderJson.get("sl_percentage")) != 0
-                                            ? (Double) orderJson.get("sl_percentage") : null,
-                                    orderJson.get("tp_percentage") != null && ((Double) orderJson.get("tp_percentage")) != 0
-                                            ? (Double) orderJson.get("tp_percentage") : null,
-                                    minTick);
-                            tp = tpSl[0];
-                            sl = tpSl[1];
-
-                            if ("STP".equals(ordertype.name())) {
-
-                                order.auxPrice(sl);
-                            } else if ("TRAIL LIMIT".equals(order.orderType())) {
-                                order.trailStopPrice(sl);
-                            }
-                            order.ocaGroup(ocaGroupId);
-                            order.ocaType(1);
-                            order.tif("GTC");
-                            order.orderRef("SL");
-                            TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
-                            Order executedOrder = waitForOrderAssignment(result, "order placement");
-                            log.info("order result: {}", result);
-                            orderToContractMap.put(executedOrder.orderId(), ibContract);
-                            if (executedOrder != null) {
-                                stopLossOrder = executedOrder;
-//                                Thread.sleep(100);
-                                slTempId = String.valueOf(executedOrder.orderId());
-                                OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                                if (clients != null) {
-                                    Map<String, Object> updateFields = new HashMap<>();
-                                    updateFields.put("sl_temp_id", slTempId);
-                                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                    DatabaseConfig.updateOrderClient(clients, updateFields);
-                                }
-                            }
-                        }
-                    }
+    // TP and SL go out once the entry has filled, priced from the fill
+    private void placeProtectiveLegs(TradeRequest request, Contract ibContract, List<Order> tradeOrders,
+                                     ProtectiveOrderSpec protectiveSpec, String ocaGroupId, TradeProgress progress)
+            throws Exception {
+        String orderId = progress.orderId;
+        double[] tpSl = protectiveSpec.pricesFor(progress.entryPrice);
+        double tp = tpSl[0];
+        double sl = tpSl[1];
+        for (int i = 1; i < tradeOrders.size(); i++) {
+            log.info("Processing order {} of {}: {}", i + 1, tradeOrders.size(), tradeOrders.get(i));
+            Order order = tradeOrders.get(i);
+            if (order == null) continue;
+            order.outsideRth(true);
+            order.account(request.account);
+            if (i == 1) {
+                if (tp == 0) {
+                    log.warn("Take-profit price resolved to 0 for order {}, skipping TP leg", orderId);
+                    continue;
+                }
+                order.lmtPrice(tp);
+                order.ocaGroup(ocaGroupId);
+                order.ocaType(1);
+                order.orderRef("TP");
+                recordProtectiveLeg(orderId, order, OrderClientColumn.TP_TEMP_ID);
+                progress.protectiveWatches.add(twsEngine.watchOrderStatus(order.orderId()));
+                TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
+                releaseRiskSlotOnAck(request, result);
+                Order executedOrder = waitForOrderAssignment(result, "order placement");
+                log.info("order result: {}", result);
+                orderToContractMap.put(executedOrder.orderId(), ibContract);
+            } else if (i == 2) {
+                OrderType ordertype = order.orderType();
+                if ("STP".equals(ordertype.name()) && sl == 0) {
+                    log.warn("Stop-loss price resolved to 0 for order {}, skipping SL leg", orderId);
+                    continue;
+                }
 
-                    if (breakEven != 0 && "Filled".equals(entryOrderFilled)) {
-                        monitorAndUpdateStopLoss(entryOrderPrice, stopLossOrder, ibContract, orderJson, breakEven, orderId, newBreakEvenOrder, contracts);
-                    }
-                } else {
-                    log.info("Processing single order for contract: {}", ibContract);
-                    Order tradeOrder = (Order) tradeOrderObj;
-                    tradeOrder.outsideRth(true);
-                    tradeOrder.account(account);
-                    tradeOrder.orderRef("ENTRY");
-                    TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, tradeOrder);
-                    Order executedOrder = waitForOrderAssignment(result, "order placement");
-                    log.info("Order execution result: {}", result);
-                    System.out.println(executedOrder.orderId());
-                    orderToContractMap.put(executedOrder.orderId(), ibContract);
-                    long startTime = System.currentTimeMillis();
-                    String orderId = String.valueOf(executedOrder.orderId());
-                    entryOrderId = String.valueOf(executedOrder.permId());
-                    OrderClient orderClient = DatabaseConfig.getOrderClientByParentId(orderId);
-                    entryOrderStatus = orderClient != null ? orderClient.getEntryStatus() : "Unknown";
-                    entryOrderPrice = orderClient != null && orderClient.getEntryFilledPrice() != null
-                            ? (double) orderClient.getEntryFilledPrice() : 0.0;
-                    saveOrderToDatabase(orderJson, contracts, orderRandomId, entryOrderPrice, orderId,
-                            entryOrderId, entryOrderStatus, contractJson, null, quantity);
-
-                    if (("LMT".equals(orderJson.get("trade_type")) || "TRAIL LIMIT".equals(orderJson.get("trade_type")))&& lmtToMarketWait > 0) {
-                        String entryOrderFilled = "";
-                        int maxWait = Math.max(lmtToMarketWait * 1000, 1000);
-                        while (System.currentTimeMillis() - startTime < maxWait) {
-                            log.info("Waiting for {} ms before placing Market order", maxWait);
-                            OrderClient entryOrderDbData = DatabaseConfig.getOrderClientByParentId(orderId);
-                            entryOrderFilled = entryOrderDbData != null ? entryOrderDbData.getEntryStatus() : "Unknown";
-                            if ("Filled".equals(entryOrderFilled)) {
-                                entryOrderPrice = entryOrderDbData.getEntryFilledPrice() != null
-                                        ? (double) entryOrderDbData.getEntryFilledPrice() : 0.0;
-                                log.info("Limit order filled!");
-                                break;
-                            }
-                            Thread.sleep(50);
-                        }
-                        if (!"Filled".equals(entryOrderFilled)) {
-                            log.info("Limit order not filled in time, placing market order.");
-                            twsEngine.cancelTrade(executedOrder);
-//                            Thread.sleep(100);
-                            OrderClient entryOrderDbData = DatabaseConfig.getOrderClientByParentId(orderId);
-                            int remaining = entryOrderDbData != null ? entryOrderDbData.getRemaining().intValue() : quantity;
-                            Order marketOrder = new Order();
-                            marketOrder.action((String) orderJson.get("action"));
-                            marketOrder.orderType("MKT");
-                            marketOrder.totalQuantity(Decimal.get(remaining));
-                            marketOrder.account(account);
-                            marketOrder.orderRef("ENTRY");
-                            marketOrder.tif("GTC");
-                            TwsEngine.OrderExecutionResult marketResult = twsEngine.executeOrder(ibContract, marketOrder);
-                            executedOrder = waitForOrderAssignment(marketResult, "market fallback order");
-                            orderToContractMap.put(executedOrder.orderId(), ibContract);
-                            if (executedOrder != null) {
-//                                Thread.sleep(100);
-                                OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                                orderId = String.valueOf(executedOrder.orderId());
-                                entryOrderId = String.valueOf(executedOrder.permId());
-                                OrderClient updatedClient = DatabaseConfig.getOrderClientByParentId(orderId);
-                                entryOrderStatus = updatedClient != null ? updatedClient.getEntryStatus() : "Unknown";
-                                entryOrderPrice = updatedClient != null && updatedClient.getEntryFilledPrice() != null
-                                        ? (double) updatedClient.getEntryFilledPrice() : 0.0;
-                                if (clients != null) {
-                                    Map<String, Object> updateFields = new HashMap<>();
-                                    updateFields.put("parent_id", orderId);
-                                    updateFields.put("entry_id", entryOrderId);
-                                    updateFields.put("entry_status", entryOrderStatus);
-                                    updateFields.put("order_type", "MKT");
-                                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                    DatabaseConfig.updateOrderClient(clients, updateFields);
-                                }
-                            }
-                        }
-                    }
+                if ("STP".equals(ordertype.name())) {
+
+                    order.auxPrice(sl);
+                } else if ("TRAIL LIMIT".equals(order.orderType())) {
+                    order.trailStopPrice(sl);
                 }
-            } catch (Exception e) {
-                String error = e.getMessage() != null ? e.getMessage().replace("'", "") : "Unknown error";
-                log.error("Error placing trade: {}", error, e);
-                saveOrderToDatabase(orderJson, contracts, orderRandomId, entryOrderPrice, null, "", "", contractJson, error, 0);
-                return false;
+                order.ocaGroup(ocaGroupId);
+                order.ocaType(1);
+                order.tif("GTC");
+                order.orderRef("SL");
+                recordProtectiveLeg(orderId, order, OrderClientColumn.SL_TEMP_ID);
+                progress.protectiveWatches.add(twsEngine.watchOrderStatus(order.orderId()));
+                TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
+                releaseRiskSlotOnAck(request, result);
+                Order executedOrder = waitForOrderAssignment(result, "order placement");
+                log.info("order result: {}", result);
+                orderToContractMap.put(executedOrder.orderId(), ibContract);
+                progress.stopLossOrder = executedOrder;
             }
-            log.info("placeTrade completed for orderRandomId: {}", orderRandomId);
-            return true;
-        }, executor);
+        }
     }
 
-    public void handleOrderRecovery(String orderRandomId, String account, Map<String, Object> contractJson, Map<String, Object> orderJson, double minTick) {
+    private CompletableFuture<Boolean> placeSingleOrder(TradeRequest request, Contract ibContract, Order tradeOrder,
+                                                        TradeProgress progress) throws Exception {
+        log.info("Processing single order for contract: {}", ibContract);
+        transmitEntry(request, ibContract, tradeOrder, progress);
+        if (!isLimitToMarket(request)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return limitToMarket(request, ibContract, tradeOrder, progress).thenApply(ignored -> true);
+    }
 
-        log.info("Recovering order with order_random_id: {}", orderRandomId);
-        OrderClient entryOrderDbData = null;
-        try {
-            entryOrderDbData = DatabaseConfig.getOrderClientByOrderRandomId(orderRandomId);
-        } catch (SQLException e) {
-            log.error("Error retrieving order: {}", e.getMessage());
+    // Saved before transmitting so the first status callback finds the row
+    private void transmitEntry(TradeRequest request, Contract ibContract, Order order, TradeProgress progress)
+            throws Exception {
+        order.outsideRth(true);
+        order.account(request.account);
+        order.orderRef("ENTRY");
+        progress.orderId = String.valueOf(twsEngine.assignOrderId(order));
+        progress.entryPrice = 0.0;
+        progress.entryWatch = twsEngine.watchOrderStatus(order.orderId());
+        saveOrderToDatabase(request.orderJson, request.contracts, request.orderRandomId, progress.entryPrice,
+                progress.orderId, String.valueOf(order.permId()), "PendingSubmit", request.contractJson, null,
+                request.quantity);
+        TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
+        releaseRiskSlotOnAck(request, result);
+        Order executedOrder = waitForOrderAssignment(result, "order placement");
+        log.info("Order execution result: {}", result);
+        orderToContractMap.put(executedOrder.orderId(), ibContract);
+    }
+
+    private static boolean isLimitToMarket(TradeRequest request) {
+        Object tradeType = request.orderJson.get("trade_type");
+        return ("LMT".equals(tradeType) || "TRAIL LIMIT".equals(tradeType)) && request.lmtToMarketWait > 0;
+    }
+
+    // Gives the limit entry lmtToMarketWait seconds; if it has not filled by then it is cancelled and the rest
+    // goes out as a market order. Completes with the limit entry's row.
+    private CompletableFuture<OrderClient> limitToMarket(TradeRequest request, Contract ibContract, Order limitOrder,
+                                                         TradeProgress progress) {
+        int maxWait = Math.max(request.lmtToMarketWait * 1000, 1000);
+        log.info("Waiting up to {} ms for the limit fill before placing Market order", maxWait);
+        return entryDone(progress.orderId, maxWait).thenApplyAsync(stage(limitEntry -> {
+            long cpuStartNanos = currentThreadCpuNanos();
+            try {
+                progress.entryStatus = limitEntry != null ? limitEntry.getEntryStatus() : "Unknown";
+                if ("Filled".equals(progress.entryStatus)) {
+                    progress.entryPrice = limitEntry.getEntryFilledPrice() != null
+                            ? (double) limitEntry.getEntryFilledPrice() : 0.0;
+                    log.info("Limit order filled!");
+                    return limitEntry;
+                }
+                log.info("Limit order not filled in time, placing market order.");
+                twsEngine.cancelTrade(limitOrder);
+                OrderClient entryOrderDbData = OrderStores.get().findByParentId(progress.orderId);
+                int remaining = entryOrderDbData != null ? entryOrderDbData.getRemaining().intValue() : request.quantity;
+                log.info("Placing market order for remaining quantity: {}", remaining);
+                Order marketOrder = new Order();
+                marketOrder.action((String) request.orderJson.get("action"));
+                marketOrder.orderType("MKT");
+                marketOrder.totalQuantity(Decimal.get(remaining));
+                marketOrder.account(request.account);
+                marketOrder.orderRef("ENTRY");
+                marketOrder.tif("GTC");
+                progress.orderId = moveEntryToMarketOrder(progress.orderId, marketOrder);
+                progress.entryPrice = 0.0;
+                progress.entryWatch = twsEngine.watchOrderStatus(marketOrder.orderId());
+                TwsEngine.OrderExecutionResult marketResult = twsEngine.executeOrder(ibContract, marketOrder);
+                Order executedOrder = waitForOrderAssignment(marketResult, "market fallback order");
+                orderToContractMap.put(executedOrder.orderId(), ibContract);
+                return limitEntry;
+            } finally {
+                progress.cpuNanos.add(currentThreadCpuNanos() - cpuStartNanos);
+            }
+        }), executor);
+    }
+
+    private void afterEntry(TradeRequest request, Contract ibContract, TradeProgress progress) {
+        if (!"Filled".equals(progress.entryStatus)) {
             return;
         }
-        if (entryOrderDbData == null) {
-            log.error("No order data found for order_random_id: {}", orderRandomId);
-            return;
+        if (progress.entryWatch != null && !progress.protectiveWatches.isEmpty()) {
+            logProtectionLatency(progress.orderId, progress.nativeBracket ? "native bracket" : "sequential",
+                    progress.entryWatch, progress.protectiveWatches);
+        }
+        if (request.breakEven != 0) {
+            monitorAndUpdateStopLoss(progress.entryPrice, progress.stopLossOrder, ibContract, request.orderJson,
+                    request.breakEven, progress.orderId, request.newBreakEvenOrder, request.contracts);
         }
+    }
+
 
+    // Once TWS acks a leg it is in the open order list, so the risk engine stops counting it as in flight
+    private void releaseRiskSlotOnAck(TradeRequest request, TwsEngine.OrderExecutionResult result) {
+        result.getFuture().whenComplete((acked, e) -> releaseRiskSlots(request, 1));
+    }
+
+    private void releaseRiskSlots(TradeRequest request, int legs) {
+        int held = request.riskSlots.getAndUpdate(slots -> Math.max(0, slots - legs));
+        riskEngine.release(request.account, Math.min(held, legs));
+    }
+
+    private boolean failTrade(TradeRequest request, Double entryOrderPrice, Throwable e) {
+        String error = e.getMessage() != null ? e.getMessage().replace("'", "") : "Unknown error";
+        log.error("Error placing trade: {}", error, e);
+        saveOrderToDatabase(request.orderJson, request.contracts, request.orderRandomId, entryOrderPrice, null, "", "", request.contractJson, error, 0);
+        return false;
+    }
+
+    public void handleOrderRecovery(OrderClient entryOrderDbData, Map<String, Object> contractJson, Map<String, Object> orderJson,
+                                    double minTick, long deadline) throws Exception {
+        String orderRandomId = entryOrderDbData.getOrdersRandomId();
+        log.info("Recovering order with order_random_id: {}", orderRandomId);
+        long cpuStartNanos = currentThreadCpuNanos();
+        try {
+            recoverOrder(entryOrderDbData, contractJson, orderJson, minTick, deadline);
+        } finally {
+            log.info("CPU time for recovery of order_random_id {}: {} ms", orderRandomId,
+                    TimeUnit.NANOSECONDS.toMillis(currentThreadCpuNanos() - cpuStartNanos));
+        }
+    }
+
+    private void recoverOrder(OrderClient entryOrderDbData, Map<String, Object> contractJson, Map<String, Object> orderJson,
+                              double minTick, long deadline) throws Exception {
+        String orderRandomId = entryOrderDbData.getOrdersRandomId();
+        String account = entryOrderDbData.getAccountId();
         String entryOrderFilled = entryOrderDbData.getEntryStatus();
         double entryOrderPrice = entryOrderDbData.getEntryFilledPrice() != null ? entryOrderDbData.getEntryFilledPrice() : 0;
         double tp = 0;
@@ -798,6 +1114,8 @@ public class PlaceOrderService {
             if (tradeOrderObj instanceof List) {
                 List<Order> tradeOrders = new ArrayList<>((List<Order>) tradeOrderObj);
                 String ocaGroupId = generateRandomKey(15);
+                ProtectiveOrderSpec protectiveSpec = new ProtectiveOrderSpec(orderJson, contractJson, minTick);
+                boolean pricesResolved = false;
 
                 if ("Filled".equals(entryOrderFilled)) {
                     // CHANGED: Use getAllPositions() instead of getPositions(account).join()
@@ -823,77 +1141,57 @@ public class PlaceOrderService {
                     order.account(account);
                     if (i == 0) continue;
 
-                    long recoveryDeadline = System.currentTimeMillis() + ORDER_FILL_WAIT_TIMEOUT_MS;
-                    while (!"Filled".equals(entryOrderFilled) && System.currentTimeMillis() < recoveryDeadline) {
-
+                    if (!"Filled".equals(entryOrderFilled) && System.currentTimeMillis() < deadline) {
                         try {
-
-                            entryOrderDbData = DatabaseConfig.getOrderClientByParentId(orderId);
-                            if (entryOrderDbData == null) {
+                            OrderClient latest = entryDone(orderId, Math.max(0, deadline - System.currentTimeMillis())).join();
+                            if (latest == null) {
                                 log.error("Order not found in DB during recovery. orderId={}", orderId);
-                                break;
+                            } else {
+                                entryOrderDbData = latest;
+                                entryOrderFilled = entryOrderDbData.getEntryStatus();
+                                entryOrderPrice = entryOrderDbData.getEntryFilledPrice() != null
+                                        ? entryOrderDbData.getEntryFilledPrice() : 0;
                             }
-                            entryOrderFilled = entryOrderDbData.getEntryStatus();
-                            entryOrderPrice = entryOrderDbData.getEntryFilledPrice() != null
-                                    ? entryOrderDbData.getEntryFilledPrice() : 0;
-                            if ("Cancelled".equals(entryOrderFilled)) break;
-                        } catch (SQLException e) {
-                            log.error("Error retrieving order: {}", e.getMessage());
+                        } catch (CompletionException e) {
+                            log.error("Error retrieving order: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
                         }
                     }
-                    if (!"Filled".equals(entryOrderFilled) && !"Cancelled".equals(entryOrderFilled)) {
+                    if (!isEntryDone(entryOrderFilled)) {
                         log.error("Timed out waiting for recovered entry order fill. orderId={}", orderId);
                     }
 
                     if ("Filled".equals(entryOrderFilled)) positionOpened = true;
 
+                    if ("Filled".equals(entryOrderFilled) && !pricesResolved) {
+                        double[] tpSl = protectiveSpec.pricesFor(entryOrderPrice);
+                        tp = tpSl[0];
+                        sl = tpSl[1];
+                        pricesResolved = true;
+                    }
+
                     if (i == 1 && order != null && "Filled".equals(entryOrderFilled) ) {
                         if (temp_tp_id != null && !temp_tp_id.isEmpty()) {
                             log.info("Take-profit order already exists for order_random_id: {}, tp_temp_id: {}. Skipping TP order placement.", orderRandomId, temp_tp_id);
                             continue;
                         }
-                        long tpDeadline = System.currentTimeMillis() + PRICE_COMPUTE_WAIT_TIMEOUT_MS;
-                        while (tp == 0 && System.currentTimeMillis() < tpDeadline) {
-
-                            double[] tpSl = getTpSlPrice((String) contractJson.get("inst_type"), entryOrderPrice,
-                                    (String) orderJson.get("action"),
-                                    orderJson.get("tp_price") != null && ((Double) orderJson.get("tp_price")) != 0
-                                            ? (Double) orderJson.get("tp_price") : null,
-                                    orderJson.get("sl_price") != null && ((Double) orderJson.get("sl_price")) != 0
-                                            ? (Double) orderJson.get("sl_price") : null,
-                                    orderJson.get("sl_dollar") != null && ((Double) orderJson.get("sl_dollar")) != 0
-                                            ? (Double) orderJson.get("sl_dollar") : null,
-                                    orderJson.get("tp_dollar") != null && ((Double) orderJson.get("tp_dollar")) != 0
-                                            ? (Double) orderJson.get("tp_dollar") : null,
-                                    orderJson.get("sl_percentage") != null && ((Double) orderJson.get("sl_percentage")) != 0
-                                            ? (Double) orderJson.get("sl_percentage") : null,
-                                    orderJson.get("tp_percentage") != null && ((Double) orderJson.get("tp_percentage")) != 0
-                                            ? (Double) orderJson.get("tp_percentage") : null,
-                                    minTick);
-                            tp = tpSl[0];
-                            sl = tpSl[1];
+                        if (tp == 0) {
+                            log.warn("Take-profit price resolved to 0 for order_random_id: {}, skipping TP leg", orderRandomId);
+                            continue;
                         }
                         order.lmtPrice(tp);
                         order.ocaGroup(ocaGroupId);
                         order.ocaType(1);
                         order.orderRef("TP");
+                        // Recorded before transmitting so the first status callback finds the leg's row
+                        try {
+                            recordProtectiveLeg(orderId, order, OrderClientColumn.TP_TEMP_ID);
+                        } catch (SQLException e) {
+                            // The position still needs its protection, so the leg goes out untracked
+                            log.error("Error recording TP order {} before placing it: {}", order.orderId(), e.getMessage());
+                        }
                         TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
                         Order executedOrder = waitForOrderAssignment(result, "order placement");
                         orderToContractMap.put(executedOrder.orderId(), ibContract);
-                        if (executedOrder != null) {
-                            try {
-//                                Thread.sleep(1000);
-                                OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                                if (clients != null) {
-                                    Map<String, Object> updateFields = new HashMap<>();
-                                    updateFields.put("tp_temp_id", String.valueOf(executedOrder.orderId()));
-                                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                    DatabaseConfig.updateOrderClient(clients, updateFields);
-                                }
-                            } catch (SQLException e) {
-                                log.error("Error updating TP order: {}", e.getMessage());
-                            }
-                        }
                     } else if (i == 2 && order != null && positionOpened && "Filled".equals(entryOrderFilled)) {
                         if (temp_sl_id != null && !temp_sl_id.isEmpty()) {
                             log.info("Stop-loss order already exists for order_random_id: {}, sl_temp_id: {}. Skipping SL order placement.", orderRandomId, temp_sl_id);
@@ -901,26 +1199,9 @@ public class PlaceOrderService {
                         }
                         OrderType ordertype = order.orderType();
                         if ("STP".equals(ordertype.name())) {
-                            long slDeadline = System.currentTimeMillis() + PRICE_COMPUTE_WAIT_TIMEOUT_MS;
-                            while (sl == 0 && System.currentTimeMillis() < slDeadline) {
-
-                                double[] tpSl = getTpSlPrice((String) contractJson.get("inst_type"), entryOrderPrice,
-                                        (String) orderJson.get("action"),
-                                        orderJson.get("tp_price") != null && ((Double) orderJson.get("tp_price")) != 0
-                                                ? (Double) orderJson.get("tp_price") : null,
-                                        orderJson.get("sl_price") != null && ((Double) orderJson.get("sl_price")) != 0
-                                                ? (Double) orderJson.get("sl_price") : null,
-                                        orderJson.get("sl_dollar") != null && ((Double) orderJson.get("sl_dollar")) != 0
-                                                ? (Double) orderJson.get("sl_dollar") : null,
-                                        orderJson.get("tp_dollar") != null && ((Double) orderJson.get("tp_dollar")) != 0
-                                                ? (Double) orderJson.get("tp_dollar") : null,
-                                        orderJson.get("sl_percentage") != null && ((Double) orderJson.get("sl_percentage")) != 0
-                                                ? (Double) orderJson.get("sl_percentage") : null,
-                                        orderJson.get("tp_percentage") != null && ((Double) orderJson.get("tp_percentage")) != 0
-                                                ? (Double) orderJson.get("tp_percentage") : null,
-                                        minTick);
-                                tp = tpSl[0];
-                                sl = tpSl[1];
+                            if (sl == 0) {
+                                log.warn("Stop-loss price resolved to 0 for order_random_id: {}, skipping SL leg", orderRandomId);
+                                continue;
                             }
                             order.auxPrice(sl);
                         } else if ("TRAIL".equals(String.valueOf(order.orderType()))) {
@@ -931,71 +1212,168 @@ public class PlaceOrderService {
                         order.ocaGroup(ocaGroupId);
                         order.ocaType(1);
                         order.orderRef("SL");
+                        // Recorded before transmitting so the first status callback finds the leg's row
+                        try {
+                            recordProtectiveLeg(orderId, order, OrderClientColumn.SL_TEMP_ID);
+                        } catch (SQLException e) {
+                            // The position still needs its protection, so the leg goes out untracked
+                            log.error("Error recording SL order {} before placing it: {}", order.orderId(), e.getMessage());
+                        }
                         TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, order);
                         Order executedOrder = waitForOrderAssignment(result, "order placement");
                         orderToContractMap.put(executedOrder.orderId(), ibContract);
-                        if (executedOrder != null) {
-                            try {
-//                                Thread.sleep(1000);
-                                OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                                if (clients != null) {
-                                    Map<String, Object> updateFields = new HashMap<>();
-                                    updateFields.put("sl_temp_id", String.valueOf(executedOrder.orderId()));
-                                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                    DatabaseConfig.updateOrderClient(clients, updateFields);
-                                }
-                            } catch (SQLException e) {
-                                log.error("Error updating SL order: {}", e.getMessage());
-                            }
-                        }
                     }
                 }
             }
         }
     }
 
-    // Remaining methods (placeRemainingTpSlOrder, saveOrderToDatabase, getTradeData, orderToDict, generateRandomKey, getBestStrikeForOption, getTpSlPrice, closeLoop, monitorAndUpdateStopLoss) remain unchanged
-    // For brevity, they are not repeated here, but they are assumed to be included as in the original code
-
     public void placeRemainingTpSlOrder(long time_var) {
         log.info("Starting placeRemainingTpSlOrder");
         List<OrderClient> allOrders;
         try {
-            allOrders = new ArrayList<>(DatabaseConfig.getAllOrderClients(time_var));
+            allOrders = new ArrayList<>(OrderStores.get().findActiveSince(time_var));
         } catch (SQLException e) {
             log.error("Error retrieving all orders: {}", e.getMessage());
             return;
         }
-        for (OrderClient order : allOrders) {
-
 
+        // Orders recover side by side so one order stuck waiting for its fill does not hold back the rest
+        long startNanos = System.nanoTime();
+        Type mapType = new TypeToken<Map<String, Object>>(){}.getType();
+        ExecutorCompletionService<Boolean> recoveries = new ExecutorCompletionService<>(recoveryExecutor);
+        int submitted = 0;
+        int failed = 0;
+        for (OrderClient order : allOrders) {
+            if (!ownsAccount.test(order.getAccountId())) {
+                continue;
+            }
+            Map<String, Object> contractJson;
+            Map<String, Object> orderJson;
             try {
-                String account = order.getAccountId();
-                Map<String, Object> contractJson = gson.fromJson(order.getContractJson(), new TypeToken<Map<String, Object>>(){}.getType());
-                Map<String, Object> orderJson = gson.fromJson(order.getOrderJson(), new TypeToken<Map<String, Object>>(){}.getType());
-                String orderRandomId = order.getOrdersRandomId();
-                handleOrderRecovery(orderRandomId, account, contractJson, orderJson, 1);
+                contractJson = gson.fromJson(order.getContractJson(), mapType);
+                orderJson = gson.fromJson(order.getOrderJson(), mapType);
             } catch (Exception e) {
-                log.error("Error placing TP/SL order for {}: {}", order.getContractJson(), e.getMessage());
+                log.error("Skipping recovery for order_random_id {}: unreadable stored JSON: {}", order.getOrdersRandomId(), e.getMessage());
+                failed++;
+                continue;
+            }
+            recoveries.submit(() -> recoverWithDeadline(order, contractJson, orderJson));
+            submitted++;
+        }
+
+        int recovered = 0;
+        for (int done = 1; done <= submitted; done++) {
+            try {
+                if (recoveries.take().get()) {
+                    recovered++;
+                } else {
+                    failed++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("placeRemainingTpSlOrder interrupted after {}/{} orders", done - 1, submitted);
+                return;
+            } catch (ExecutionException e) {
+                failed++;
+                log.error("Recovery task failed: {}", e.getMessage());
+            }
+            log.info("Recovery progress: {}/{} orders done ({} recovered, {} failed) after {} ms", done, submitted,
+                    recovered, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+        log.info("placeRemainingTpSlOrder completed: {} recovered, {} failed in {} ms", recovered, failed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private boolean recoverWithDeadline(OrderClient order, Map<String, Object> contractJson, Map<String, Object> orderJson) {
+        long deadline = System.currentTimeMillis() + RECOVERY_ORDER_DEADLINE_MS;
+        try {
+            handleOrderRecovery(order, contractJson, orderJson, 1, deadline);
+            return true;
+        } catch (Exception e) {
+            log.error("Error placing TP/SL order for {}: {}", order.getOrdersRandomId(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Measured on the status callbacks: from the entry's Filled to the first PreSubmitted/Submitted of every
+    // protective leg after it. Logged once the last leg reports, without holding the worker.
+    private void logProtectionLatency(String orderId, String mode, OrderStatusWatch entryWatch,
+                                      List<OrderStatusWatch> protectiveWatches) {
+        entryWatch.first(FILLED_STATUS, 0).thenCompose(filledAt -> {
+            List<CompletableFuture<Long>> working = protectiveWatches.stream()
+                    .map(watch -> watch.first(WORKING_STATUSES, filledAt))
+                    .collect(Collectors.toList());
+            return CompletableFuture.allOf(working.toArray(new CompletableFuture[0]))
+                    .thenApply(ignored -> working.stream().mapToLong(CompletableFuture::join).max().orElse(filledAt) - filledAt);
+        }).orTimeout(PROTECTION_LATENCY_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((latencyMs, e) -> {
+            if (e != null) {
+                log.warn("Fill-to-protection latency for order {} ({}) not measured: protective legs did not report "
+                        + "working within {} s", orderId, mode, PROTECTION_LATENCY_TIMEOUT_SECONDS);
+            } else {
+                log.info("Fill-to-protection latency for order {} ({}): {} ms", orderId, mode, latencyMs);
             }
+        });
+    }
+
+    // Records a take-profit or stop-loss leg's id on the entry row before the leg is transmitted
+    private String recordProtectiveLeg(String entryOrderId, Order leg, OrderClientColumn tempIdColumn) throws SQLException {
+        String legId = String.valueOf(twsEngine.assignOrderId(leg));
+        OrderClient clients = OrderStores.get().findByParentId(entryOrderId);
+        if (clients != null) {
+            Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+            updateFields.put(tempIdColumn, legId);
+            updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
+            OrderStores.get().update(clients, updateFields);
+        }
+        return legId;
+    }
+
+    // Points the entry row at the market order replacing an unfilled limit entry, before that order is transmitted
+    private String moveEntryToMarketOrder(String limitOrderId, Order marketOrder) throws SQLException {
+        String marketOrderId = String.valueOf(twsEngine.assignOrderId(marketOrder));
+        OrderClient clients = OrderStores.get().findByParentId(limitOrderId);
+        if (clients != null) {
+            Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+            updateFields.put(OrderClientColumn.PARENT_ID, marketOrderId);
+            updateFields.put(OrderClientColumn.ENTRY_ID, String.valueOf(marketOrder.permId()));
+            updateFields.put(OrderClientColumn.ENTRY_STATUS, "PendingSubmit");
+            updateFields.put(OrderClientColumn.ORDER_TYPE, "MKT");
+            updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
+            OrderStores.get().update(clients, updateFields);
         }
-        log.info("placeRemainingTpSlOrder completed");
+        return marketOrderId;
     }
 
     private void saveOrderToDatabase(Map<String, Object> orderJson, Map<String, Object> contracts, String orderRandomId,
                                      Double entryOrderPrice, String orderId, String entryOrderId, String entryOrderStatus,
                                      Map<String, Object> contractJson, String errorMessage, Integer remaining) {
+        saveOrderToDatabase(orderJson, contracts, orderRandomId, entryOrderPrice, orderId, entryOrderId, entryOrderStatus,
+                contractJson, errorMessage, remaining, null, null);
+    }
+
+    private void saveOrderToDatabase(Map<String, Object> orderJson, Map<String, Object> contracts, String orderRandomId,
+                                     Double entryOrderPrice, String orderId, String entryOrderId, String entryOrderStatus,
+                                     Map<String, Object> contractJson, String errorMessage, Integer remaining,
+                                     String tpTempId, String slTempId) {
         log.debug("Saving order to database for orderRandomId , orderId: {}, {}", orderRandomId, orderId);
         OrderClient oc = new OrderClient();
         oc.setContractJson(gson.toJson(contractJson));
         oc.setOrderJson(gson.toJson(orderJson));
         oc.setAccountId((String) contracts.get("account"));
+        oc.setClientName((String) contracts.get("client_name"));
+        oc.setClientDbId(contracts.get("client_db_id") != null ? ((Number) contracts.get("client_db_id")).intValue() : null);
+        oc.setRiskMultiplier(contracts.get("risk_multiplier") != null ? String.valueOf(contracts.get("risk_multiplier")) : null);
+        oc.setFund(contracts.get("fund") != null ? ((Number) contracts.get("fund")).floatValue() : null);
+        oc.setMaxStock(contracts.get("max_stock") != null ? ((Number) contracts.get("max_stock")).intValue() : null);
         oc.setQuantity(((Number) orderJson.get("quantity")).intValue());
         oc.setOrdersRandomId(orderRandomId);
         oc.setEntryPrice(entryOrderPrice != null ? entryOrderPrice.floatValue() : null);
         oc.setParentId(orderId);
         oc.setEntryId(entryOrderId);
         oc.setEntryStatus(entryOrderStatus);
+        oc.setTpTempId(tpTempId);
+        oc.setSlTempId(slTempId);
         oc.setActive(true);
         Instant nowUtc = Instant.now();
         LocalDateTime utcDateTime = LocalDateTime.ofInstant(nowUtc, ZoneOffset.UTC);
@@ -1017,7 +1395,7 @@ public class PlaceOrderService {
         oc.setErrorMessage(errorMessage);
         oc.setRemaining(remaining != null ? remaining.floatValue() : 0.0f);
         try {
-            DatabaseConfig.saveOrderClient(oc);
+            OrderStores.get().save(oc);
             log.debug("Order saved to database: {}", orderRandomId);
         } catch (SQLException e) {
             log.error("Error saving order to database: {}", e.getMessage(), e);
@@ -1028,7 +1406,7 @@ public class PlaceOrderService {
         log.info("Fetching trade data not sent to server");
         List<OrderClient> allOrderData;
         try {
-            allOrderData = new ArrayList<>(DatabaseConfig.getOrderClientsNotSentToServer());
+            allOrderData = new ArrayList<>(OrderStores.get().findNotSentToServer());
         } catch (SQLException e) {
             log.error("Error retrieving trade data: {}", e.getMessage());
             return new ArrayList<>();
@@ -1099,9 +1477,9 @@ public class PlaceOrderService {
     }
 
 
-    private double getBestStrikeForOption(Map<String, Object> contractDetails, double strikeStart, double strikeEnd,
-                                          double strikeInterval, double premiumStart, double premiumEnd) {
-        Map<Double, double[]> optionData = new HashMap<>();
+    private CompletableFuture<Double> getBestStrikeForOption(Map<String, Object> contractDetails, double strikeStart, double strikeEnd,
+                                                             double strikeInterval, double premiumStart, double premiumEnd) {
+        Map<Double, CompletableFuture<Map<String, Double>>> requests = new LinkedHashMap<>();
         for (double m = strikeStart * 10; m <= strikeEnd * 10; m += strikeInterval * 10) {
             double i = m / 10;
             Map<String, Object> contracss = new HashMap<>(contractDetails);
@@ -1116,26 +1494,146 @@ public class PlaceOrderService {
                     (String) contracss.get("symbol"),
                     (String) contracss.get("maturityDate"),
                     (String) contracss.get("trading_class"));
-            Map<String, Double> data = twsEngine.getOptionDetails(ibContract).join();
-            if (data != null && !Double.isNaN(data.get("bid"))) {
-                optionData.put(i, new double[]{data.get("bid"), data.get("volume")});
+            requests.put(i, twsEngine.getOptionDetails(ibContract));
+        }
+
+        // All strikes are quoted concurrently; the scan costs one market data round trip instead of one per strike
+        return CompletableFuture.allOf(requests.values().toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Map<Double, double[]> optionData = new HashMap<>();
+            requests.forEach((i, request) -> {
+                Map<String, Double> data = request.join();
+                if (data != null && !Double.isNaN(data.get("bid"))) {
+                    optionData.put(i, new double[]{data.get("bid"), data.get("volume")});
+                }
+            });
+
+            Map<Double, double[]> filteredStrikes = optionData.entrySet().stream()
+                    .filter(e -> !Double.isNaN(e.getValue()[0]) && !Double.isNaN(e.getValue()[1]))
+                    .filter(e -> e.getValue()[0] >= premiumStart && e.getValue()[0] <= premiumEnd)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            if (filteredStrikes.isEmpty()) return strikeEnd;
+
+            return filteredStrikes.entrySet().stream()
+                    .max(Comparator.comparingDouble(e -> e.getValue()[1]))
+                    .map(Map.Entry::getKey)
+                    .orElse(strikeEnd);
+        });
+    }
+
+    // Completes once every ack is in (or has failed); the flow carries on either way, as TWS reports rejections
+    // through the status loop
+    private CompletableFuture<Void> acknowledged(List<CompletableFuture<Order>> acks, long startNanos, String flow,
+                                                 String orderRandomId) {
+        if (acks.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long submittedNanos = System.nanoTime();
+        return CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).handle((ignored, e) -> {
+            if (e != null) {
+                log.warn("{} orders for orderRandomId {} not all acknowledged: {}", flow, orderRandomId, e.getMessage());
             }
+            log.info("{} for orderRandomId {}: {} orders submitted in {} ms, acknowledged after {} ms", flow, orderRandomId,
+                    acks.size(), TimeUnit.NANOSECONDS.toMillis(submittedNanos - startNanos),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            return null;
+        });
+    }
+
+    private static long currentThreadCpuNanos() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+
+    private boolean isNativeBracketEligible(ProtectiveOrderSpec protectiveSpec, int lmtToMarketWait) {
+        if (lmtToMarketWait > 0) {
+            log.info("Native bracket skipped: limit-to-market fallback replaces the entry order");
+            return false;
+        }
+        if (protectiveSpec.needsFillPrice()) {
+            log.info("Native bracket skipped: protective prices depend on the entry fill price");
+            return false;
         }
+        return true;
+    }
+
+    private CompletableFuture<OrderClient> entryFill(String orderId) {
+        return entryDone(orderId, ORDER_FILL_WAIT_TIMEOUT_MS).thenApply(entryOrderDbData -> {
+            if (entryOrderDbData == null) {
+                log.error("Order not found in DB while waiting for fill. orderId={}", orderId);
+            } else if (!isEntryDone(entryOrderDbData.getEntryStatus())) {
+                log.error("Timed out waiting for entry order fill for orderId={}", orderId);
+            }
+            return entryOrderDbData;
+        });
+    }
 
-        Map<Double, double[]> filteredStrikes = optionData.entrySet().stream()
-                .filter(e -> !Double.isNaN(e.getValue()[0]) && !Double.isNaN(e.getValue()[1]))
-                .filter(e -> e.getValue()[0] >= premiumStart && e.getValue()[0] <= premiumEnd)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    // Completes with the entry row once it is Filled or done, or as it stands after timeoutMillis
+    private CompletableFuture<OrderClient> entryDone(String orderId, long timeoutMillis) {
+        return rowOnceDone(orderId, orderId, ENTRY_DONE_STATUSES, OrderClient::getEntryStatus, timeoutMillis);
+    }
+
+    // The status loop completes the watch, so nothing is parked while TWS works the order. The row is read on the
+    // trade executor once the leg reaches one of the wanted statuses or the timeout passes.
+    private CompletableFuture<OrderClient> rowOnceDone(String entryOrderId, String watchOrderId, Set<String> wanted,
+                                                       Function<OrderClient, String> statusOf, long timeoutMillis) {
+        Function<Object, OrderClient> findRow = stage(ignored -> OrderStores.get().findByParentId(entryOrderId));
+        CompletableFuture<Long> done;
+        try {
+            done = twsEngine.watchOrderStatus(Integer.parseInt(watchOrderId)).first(wanted, 0);
+        } catch (NumberFormatException e) {
+            return CompletableFuture.supplyAsync(() -> findRow.apply(null), executor);
+        }
+        // Statuses applied before the watch existed are already in the row
+        return CompletableFuture.supplyAsync(() -> findRow.apply(null), executor).thenComposeAsync(row -> {
+            if (row == null || (statusOf.apply(row) != null && wanted.contains(statusOf.apply(row)))) {
+                return CompletableFuture.completedFuture(row);
+            }
+            return done.completeOnTimeout(0L, timeoutMillis, TimeUnit.MILLISECONDS)
+                    .exceptionally(e -> 0L)
+                    .thenApplyAsync(findRow, executor);
+        }, executor);
+    }
+
+    private static boolean isEntryDone(String entryStatus) {
+        return entryStatus != null && ENTRY_DONE_STATUSES.contains(entryStatus);
+    }
+
+    private static final class TradeProgress {
+        String orderId;
+        String entryStatus = "";
+        Double entryPrice;
+        Order stopLossOrder;
+        OrderStatusWatch entryWatch;
+        final List<OrderStatusWatch> protectiveWatches = new ArrayList<>();
+        boolean nativeBracket;
+        final LongAdder cpuNanos = new LongAdder();
+
+        void recordEntry(OrderClient row) {
+            if (row != null) {
+                entryStatus = row.getEntryStatus();
+                entryPrice = row.getEntryFilledPrice() != null ? (double) row.getEntryFilledPrice() : 0.0;
+            }
+        }
+    }
 
-        if (filteredStrikes.isEmpty()) return strikeEnd;
+    @FunctionalInterface
+    private interface TradeStage<T, R> {
+        R apply(T value) throws Exception;
+    }
 
-        return filteredStrikes.entrySet().stream()
-                .max(Comparator.comparingDouble(e -> e.getValue()[1]))
-                .map(Map.Entry::getKey)
-                .orElse(strikeEnd);
+    private static <T, R> Function<T, R> stage(TradeStage<T, R> body) {
+        return value -> {
+            try {
+                return body.apply(value);
+            } catch (CompletionException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
     }
 
-    private double[] getTpSlPrice(String instType, double entryPrice, String entryOrder, Double takeProfitPrice,
+    private static double[] getTpSlPrice(String instType, double entryPrice, String entryOrder, Double takeProfitPrice,
                                   Double stopLossPrice, Double slDollar, Double tpDollar, Double slPercentage,
                                   Double tpPercentage, double minTick) {
         double tp = 0;
@@ -1164,62 +1662,67 @@ public class PlaceOrderService {
 
 
 
+    // Polls the last candle every 500 ms until the break-even level is hit. Each poll is a fresh task on the trade
+    // executor, so the monitor holds no worker between candles.
     private void monitorAndUpdateStopLoss(double entryOrderPrice, Order stopOrder, Contract ibContract,
                                           Map<String, Object> orderJson, double breakEven, String orderId,
                                           boolean newBreakEvenOrder, Map<String, Object> contracts) {
-        executor.submit(() -> {
-            long monitorDeadline = System.currentTimeMillis() + BREAKEVEN_MONITOR_MAX_MS;
-            while (twsEngine.isConnected() && !Thread.currentThread().isInterrupted() && System.currentTimeMillis() < monitorDeadline) {
-                try {
-
-
-                    double[] candle = twsEngine.reqLastCandle(ibContract, "1 D", "1 min").join();
-                    double high = candle[0];
-                    double low = candle[1];
-                    boolean breakoutCondition;
-                    double currentReference;
-                    if ("BUY".equalsIgnoreCase((String) orderJson.get("action"))) {
-                        breakoutCondition = high >= entryOrderPrice + breakEven;
-                        currentReference = high;
-                    } else {
-                        breakoutCondition = low <= entryOrderPrice - breakEven;
-                        currentReference = low;
-                    }
-
-                    log.info("Current reference price from last candle: {}", currentReference);
+        long monitorDeadline = System.currentTimeMillis() + BREAKEVEN_MONITOR_MAX_MS;
+        executor.execute(() -> pollBreakEven(entryOrderPrice, stopOrder, ibContract, orderJson, breakEven, orderId,
+                newBreakEvenOrder, contracts, monitorDeadline));
+    }
 
-                    if (breakoutCondition && stopOrder != null) {
-                        log.info("Breakout condition met. Updating stop-loss to break-even.");
-                        stopOrder.auxPrice(entryOrderPrice);
-                        stopOrder.transmit(true);
-                        TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, stopOrder);
-                        Order executedOrder = waitForOrderAssignment(result, "order placement");
-                        orderToContractMap.put(executedOrder.orderId(), ibContract);
-                        if (executedOrder != null) {
-//                            Thread.sleep(1000);
-                            log.info("Stop-loss order successfully updated.");
-                            OrderClient clients = DatabaseConfig.getOrderClientByParentId(orderId);
-                            if (clients != null) {
-                                Map<String, Object> updateFields = new HashMap<>();
-                                updateFields.put("sl_temp_id", String.valueOf(executedOrder.orderId()));
-                                updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                                DatabaseConfig.updateOrderClient(clients, updateFields);
-                            }
-                        }
-                    }
+    private void pollBreakEven(double entryOrderPrice, Order stopOrder, Contract ibContract,
+                               Map<String, Object> orderJson, double breakEven, String orderId,
+                               boolean newBreakEvenOrder, Map<String, Object> contracts, long monitorDeadline) {
+        if (!twsEngine.isConnected() || System.currentTimeMillis() >= monitorDeadline) {
+            return;
+        }
+        Runnable next = () -> CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS, executor)
+                .execute(() -> pollBreakEven(entryOrderPrice, stopOrder, ibContract, orderJson, breakEven, orderId,
+                        newBreakEvenOrder, contracts, monitorDeadline));
+        twsEngine.reqLastCandle(ibContract, "1 D", "1 min").thenComposeAsync(stage(candle -> {
+            double high = candle[0];
+            double low = candle[1];
+            boolean breakoutCondition;
+            double currentReference;
+            if ("BUY".equalsIgnoreCase((String) orderJson.get("action"))) {
+                breakoutCondition = high >= entryOrderPrice + breakEven;
+                currentReference = high;
+            } else {
+                breakoutCondition = low <= entryOrderPrice - breakEven;
+                currentReference = low;
+            }
 
-                    if (breakoutCondition && newBreakEvenOrder) {
-                        long stopStatusDeadline = System.currentTimeMillis() + ORDER_FILL_WAIT_TIMEOUT_MS;
-                        while (System.currentTimeMillis() < stopStatusDeadline) {
+            log.info("Current reference price from last candle: {}", currentReference);
+
+            if (breakoutCondition && stopOrder != null) {
+                log.info("Breakout condition met. Updating stop-loss to break-even.");
+                stopOrder.auxPrice(entryOrderPrice);
+                stopOrder.transmit(true);
+                TwsEngine.OrderExecutionResult result = twsEngine.executeOrder(ibContract, stopOrder);
+                Order executedOrder = waitForOrderAssignment(result, "order placement");
+                orderToContractMap.put(executedOrder.orderId(), ibContract);
+                log.info("Stop-loss order successfully updated.");
+                OrderClient clients = OrderStores.get().findByParentId(orderId);
+                if (clients != null) {
+                    Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+                    updateFields.put(OrderClientColumn.SL_TEMP_ID, String.valueOf(executedOrder.orderId()));
+                    updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
+                    OrderStores.get().update(clients, updateFields);
+                }
+            }
 
-                            OrderClient stopOrderData = DatabaseConfig.getOrderClientByParentId(orderId);
-                            String stopOrderStatus = stopOrderData != null ? stopOrderData.getSlStatus() : "Unknown";
-                            if ("Filled".equals(stopOrderStatus)) break;
-                            if (Arrays.asList("Cancelled", "Rejected", "Inactive").contains(stopOrderStatus)) {
-                                log.error("Stop-loss order {}, cannot proceed.", stopOrderStatus.toLowerCase());
-                                throw new IllegalStateException("Break-even order " + stopOrderStatus.toLowerCase() + ", cannot proceed.");
-                            }
-                            Thread.sleep(100);
+            if (!(breakoutCondition && newBreakEvenOrder)) {
+                return CompletableFuture.completedFuture(false);
+            }
+            String stopOrderId = stopOrder != null ? String.valueOf(stopOrder.orderId()) : null;
+            return rowOnceDone(orderId, stopOrderId, STOP_DONE_STATUSES, OrderClient::getSlStatus, ORDER_FILL_WAIT_TIMEOUT_MS)
+                    .thenApplyAsync(stopOrderData -> {
+                        String stopOrderStatus = stopOrderData != null ? stopOrderData.getSlStatus() : "Unknown";
+                        if (stopOrderStatus != null && !"Filled".equals(stopOrderStatus) && STOP_DONE_STATUSES.contains(stopOrderStatus)) {
+                            log.error("Stop-loss order {}, cannot proceed.", stopOrderStatus.toLowerCase());
+                            throw new IllegalStateException("Break-even order " + stopOrderStatus.toLowerCase() + ", cannot proceed.");
                         }
 
                         String newAction = "BUY".equalsIgnoreCase((String) orderJson.get("action")) ? "SELL" : "BUY";
@@ -1230,15 +1733,16 @@ public class PlaceOrderService {
                         newContracts.put("break_even", 0);
                         newContracts.put("new_break_even_order", false);
 
-//                        Thread.sleep(5000);
-                        placeTrade(newContracts).join();
-                        return;
-                    }
-
-                    Thread.sleep(500);
-                } catch (Exception e) {
-                    log.error("Error in monitor_and_update_stop_loss: {}", e.getMessage());
-                }
+                        placeTrade(newContracts);
+                        return true;
+                    }, executor);
+        }), executor).whenComplete((placed, e) -> {
+            if (e != null) {
+                log.error("Error in monitor_and_update_stop_loss: {}", e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause().getMessage() : e.getMessage());
+            }
+            if (!Boolean.TRUE.equals(placed)) {
+                next.run();
             }
         });
     }
@@ -0,0 +1,142 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import com.ib.client.Contract;
+import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.entities.ErrorLog;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Recent TWS errors kept in memory by connection and request id and by contract, so "did this request just fail?" is a map
+// lookup instead of a query against error_log_data. Entries expire after the retention window. Every error
+// is still written to error_log_data for audit, in batches from a single flusher.
+public class RecentErrorIndex {
+    // The window the old error_log_data lookups used
+    public static final long DEFAULT_RECENT_MS = 2000;
+    private static final long RETENTION_MS = 60_000;
+    private static final long FLUSH_INTERVAL_MS = 500;
+
+    // Keyed by clientId and reqId: each connection numbers its requests from its own sequence
+    private final Map<Long, Entry> byReqId = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byContract = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ErrorLog> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+
+    private static final class Entry {
+        final ErrorLog error;
+        final long recordedAtMillis;
+
+        Entry(ErrorLog error, long recordedAtMillis) {
+            this.error = error;
+            this.recordedAtMillis = recordedAtMillis;
+        }
+    }
+
+    public RecentErrorIndex() {
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::evictExpired, RETENTION_MS, RETENTION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Cheap enough for the reader thread: two map puts and a queue offer
+    public ErrorLog record(int clientId, int reqId, int errorCode, String errorString, Contract contract) {
+        ErrorLog error = new ErrorLog();
+        error.setReqId(String.valueOf(reqId));
+        error.setErrorCode(String.valueOf(errorCode));
+        error.setErrorString(errorString);
+        error.setContract(contract != null ? contract.toString() : "");
+
+        Entry entry = new Entry(error, System.currentTimeMillis());
+        if (reqId >= 0) {
+            byReqId.put(requestKey(clientId, reqId), entry);
+        }
+        if (contract != null) {
+            byContract.put(contractKey(contract), entry);
+        }
+        pendingWrites.offer(error);
+        return error;
+    }
+
+    public ErrorLog recentForRequest(int clientId, int reqId) {
+        return recentForRequest(clientId, reqId, DEFAULT_RECENT_MS);
+    }
+
+    public ErrorLog recentForRequest(int clientId, int reqId, long maxAgeMillis) {
+        return fresh(byReqId.get(requestKey(clientId, reqId)), maxAgeMillis);
+    }
+
+    public ErrorLog recentForContract(Contract contract) {
+        return recentForContract(contract, DEFAULT_RECENT_MS);
+    }
+
+    public ErrorLog recentForContract(Contract contract, long maxAgeMillis) {
+        return contract != null ? fresh(byContract.get(contractKey(contract)), maxAgeMillis) : null;
+    }
+
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(5, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flusher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static long requestKey(int clientId, int reqId) {
+        return ((long) clientId << 32) | (reqId & 0xffffffffL);
+    }
+
+    // conId identifies a resolved contract; unresolved ones fall back to the fields that describe them
+    static String contractKey(Contract contract) {
+        if (contract.conid() > 0) {
+            return String.valueOf(contract.conid());
+        }
+        return contract.secType() + "|" + contract.symbol() + "|" + contract.lastTradeDateOrContractMonth() + "|"
+                + contract.strike() + "|" + contract.right() + "|" + contract.exchange() + "|" + contract.currency();
+    }
+
+    private static ErrorLog fresh(Entry entry, long maxAgeMillis) {
+        if (entry == null || System.currentTimeMillis() - entry.recordedAtMillis > maxAgeMillis) {
+            return null;
+        }
+        return entry.error;
+    }
+
+    private void flush() {
+        List<ErrorLog> batch = new ArrayList<>();
+        ErrorLog error;
+        while ((error = pendingWrites.poll()) != null) {
+            batch.add(error);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            DatabaseConfig.saveErrorLogs(batch);
+            log.debug("Flushed {} error log rows in {} ms", batch.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (SQLException e) {
+            log.error("Failed to write {} error log rows, retrying next flush: {}", batch.size(), e.getMessage());
+            pendingWrites.addAll(batch);
+        }
+    }
+
+    private void evictExpired() {
+        long cutoff = System.currentTimeMillis() - RETENTION_MS;
+        byReqId.values().removeIf(entry -> entry.recordedAtMillis < cutoff);
+        byContract.values().removeIf(entry -> entry.recordedAtMillis < cutoff);
+    }
+}
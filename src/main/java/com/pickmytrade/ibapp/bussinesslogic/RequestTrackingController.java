@@ -0,0 +1,144 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import com.ib.client.Contract;
+import com.ib.client.ExecutionFilter;
+import com.ib.client.Types;
+import com.ib.controller.AccountSummaryTag;
+import com.ib.controller.ApiController;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ApiController numbers every market data and lookup request itself, counting up from nextValidId + 10,000,000,
+// and reports failures only by that number. This mirrors the sequence so an error can be matched to the
+// contract and handler of the request it belongs to. Every request method that takes an id goes through here.
+public class RequestTrackingController extends ApiController {
+    // ApiController keeps request ids clear of order ids by this offset
+    private static final int REQUEST_ID_OFFSET = 10_000_000;
+    // Ids are sequential, so anything this far behind the newest request is long finished
+    private static final int MAX_TRACKED_REQUESTS = 10_000;
+
+    private final int clientId;
+    private final Map<Integer, Contract> requestContracts = new ConcurrentHashMap<>();
+    private final Map<Object, Integer> handlerRequests = new ConcurrentHashMap<>();
+    private int nextRequestId;
+
+    public RequestTrackingController(IConnectionHandler handler, int clientId) {
+        super(handler, System.out::println, System.err::println);
+        this.clientId = clientId;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public Contract contractFor(int reqId) {
+        return requestContracts.get(reqId);
+    }
+
+    // The id a handler's request went out under, or -1 if it was never sent
+    public int requestIdFor(Object handler) {
+        Integer reqId = handler != null ? handlerRequests.get(handler) : null;
+        return reqId != null ? reqId : -1;
+    }
+
+    public void forget(Object handler) {
+        if (handler != null) {
+            handlerRequests.remove(handler);
+        }
+    }
+
+    @Override
+    public synchronized void nextValidId(int orderId) {
+        nextRequestId = orderId + REQUEST_ID_OFFSET;
+        requestContracts.clear();
+        handlerRequests.clear();
+        super.nextValidId(orderId);
+    }
+
+    @Override
+    public synchronized void reqTopMktData(Contract contract, String genericTickList, boolean snapshot,
+                                           boolean regulatorySnapshot, ITopMktDataHandler handler) {
+        track(contract, handler);
+        super.reqTopMktData(contract, genericTickList, snapshot, regulatorySnapshot, handler);
+    }
+
+    @Override
+    public void cancelTopMktData(ITopMktDataHandler handler) {
+        forget(handler);
+        super.cancelTopMktData(handler);
+    }
+
+    @Override
+    public synchronized void reqContractDetails(Contract contract, IContractDetailsHandler processor) {
+        track(contract, processor);
+        super.reqContractDetails(contract, processor);
+    }
+
+    @Override
+    public synchronized void reqSecDefOptParams(String underlyingSymbol, String futFopExchange, String underlyingSecType,
+                                                int underlyingConId, ISecDefOptParamsReqHandler handler) {
+        Contract underlying = new Contract();
+        underlying.symbol(underlyingSymbol);
+        underlying.secType(underlyingSecType);
+        underlying.conid(underlyingConId);
+        track(underlying, handler);
+        super.reqSecDefOptParams(underlyingSymbol, futFopExchange, underlyingSecType, underlyingConId, handler);
+    }
+
+    @Override
+    public synchronized void reqHistoricalData(Contract contract, String endDateTime, int duration,
+                                               Types.DurationUnit durationUnit, Types.BarSize barSize,
+                                               Types.WhatToShow whatToShow, boolean rthOnly, boolean keepUpToDate,
+                                               IHistoricalDataHandler handler) {
+        track(contract, null);
+        super.reqHistoricalData(contract, endDateTime, duration, durationUnit, barSize, whatToShow, rthOnly,
+                keepUpToDate, handler);
+    }
+
+    @Override
+    public synchronized void reqExecutions(ExecutionFilter filter, ITradeReportHandler handler) {
+        track(null, null);
+        super.reqExecutions(filter, handler);
+    }
+
+    @Override
+    public synchronized void reqAccountSummary(String group, AccountSummaryTag[] tags, IAccountSummaryHandler handler) {
+        track(null, handler);
+        super.reqAccountSummary(group, tags, handler);
+    }
+
+    @Override
+    public void cancelAccountSummary(IAccountSummaryHandler handler) {
+        forget(handler);
+        super.cancelAccountSummary(handler);
+    }
+
+    @Override
+    public synchronized void reqAccountUpdatesMulti(String account, String modelCode, boolean ledgerAndNLV,
+                                                    IAccountUpdateMultiHandler handler) {
+        track(null, handler);
+        super.reqAccountUpdatesMulti(account, modelCode, ledgerAndNLV, handler);
+    }
+
+    @Override
+    public void cancelAccountUpdatesMulti(IAccountUpdateMultiHandler handler) {
+        forget(handler);
+        super.cancelAccountUpdatesMulti(handler);
+    }
+
+    // ApiController drops a request without taking an id while the socket is down
+    private void track(Contract contract, Object handler) {
+        if (!client().isConnected()) {
+            return;
+        }
+        int reqId = nextRequestId++;
+        if (contract != null) {
+            requestContracts.put(reqId, contract);
+        }
+        if (handler != null) {
+            handlerRequests.put(handler, reqId);
+        }
+        requestContracts.remove(reqId - MAX_TRACKED_REQUESTS);
+    }
+}
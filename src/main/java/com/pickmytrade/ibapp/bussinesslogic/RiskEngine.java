@@ -0,0 +1,216 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import com.ib.client.Contract;
+import com.ib.client.Decimal;
+import com.ib.client.Order;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// In-memory pre-trade limits, checked against the live position and open order lists before anything is
+// submitted or written. Limits come from system properties (pickmytrade.risk.*); 0 disables a limit.
+public class RiskEngine {
+    private static final int RATE_WINDOW_SECONDS = 60;
+    private static final long STATS_LOG_EVERY = 1000;
+    // Account updates from TWS arrive at least every three minutes while subscribed
+    private static final long ACCOUNT_STATE_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final long maxPositionPerSymbol;
+    private final double maxNotionalPerAccount;
+    private final int maxOpenOrders;
+    private final int maxOrdersPerMinute;
+
+    // Order legs approved but not yet acknowledged by TWS, i.e. not yet visible in the open order list
+    private final Map<String, AtomicInteger> inFlightOrders = new ConcurrentHashMap<>();
+    private final Map<String, OrderRateWindow> orderRates = new ConcurrentHashMap<>();
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder checkNanos = new LongAdder();
+    private final AtomicLong maxCheckNanos = new AtomicLong();
+
+    public RiskEngine(long maxPositionPerSymbol, double maxNotionalPerAccount, int maxOpenOrders, int maxOrdersPerMinute) {
+        this.maxPositionPerSymbol = maxPositionPerSymbol;
+        this.maxNotionalPerAccount = maxNotionalPerAccount;
+        this.maxOpenOrders = maxOpenOrders;
+        this.maxOrdersPerMinute = maxOrdersPerMinute;
+        log.info("Risk limits: maxPositionPerSymbol={}, maxNotionalPerAccount={}, maxOpenOrders={}, maxOrdersPerMinute={}",
+                maxPositionPerSymbol, maxNotionalPerAccount, maxOpenOrders, maxOrdersPerMinute);
+    }
+
+    public static RiskEngine fromSystemProperties() {
+        return new RiskEngine(
+                Long.getLong("pickmytrade.risk.maxPositionPerSymbol", 0),
+                Double.parseDouble(System.getProperty("pickmytrade.risk.maxNotionalPerAccount", "0")),
+                Integer.getInteger("pickmytrade.risk.maxOpenOrders", 0),
+                Integer.getInteger("pickmytrade.risk.maxOrdersPerMinute", 0));
+    }
+
+    // Returns null when the order may go out, otherwise the rejection reason. Positions and open orders are
+    // the snapshot copies from TwsEngine; legs is the entry plus any TP/SL children the alert will place. An
+    // approved order holds one in-flight slot per leg until release() is called for it.
+    public String check(String account, String symbol, String action, int quantity, double referencePrice, int legs,
+                        List<Map<String, Object>> positions, List<Map.Entry<Order, Contract>> openOrders,
+                        AccountStateCache.AccountSnapshot accountState) {
+        long startNanos = System.nanoTime();
+        account = account != null ? account : "";
+        // The slots are taken before evaluating so concurrent alerts for one account cannot both squeeze under the limit
+        AtomicInteger inFlight = inFlightOrders.computeIfAbsent(account, a -> new AtomicInteger());
+        int otherInFlight = inFlight.getAndAdd(legs);
+        // Rate is reserved the same way: every leg is counted up front and handed back if the order is rejected
+        OrderRateWindow window = null;
+        long epochSecond = System.currentTimeMillis() / 1000;
+        String rejection = null;
+        if (maxOrdersPerMinute > 0) {
+            window = orderRates.computeIfAbsent(account, a -> new OrderRateWindow());
+            int recent = window.reserve(epochSecond, legs);
+            if (recent > maxOrdersPerMinute) {
+                rejection = "Order rate limit reached (" + (recent - legs) + " orders in the last minute, order needs "
+                        + legs + ", max " + maxOrdersPerMinute + ")";
+            }
+        }
+        if (rejection == null) {
+            rejection = evaluate(account, symbol, action, quantity, referencePrice, legs, otherInFlight, positions,
+                    openOrders, accountState);
+        }
+        if (rejection != null) {
+            if (window != null) {
+                window.unreserve(epochSecond, legs);
+            }
+            inFlight.addAndGet(-legs);
+            rejections.increment();
+            log.warn("Risk check rejected {} {} {} for account {}: {}", action, quantity, symbol, account, rejection);
+        }
+        recordLatency(System.nanoTime() - startNanos);
+        return rejection;
+    }
+
+    // Called once TWS acknowledges a leg (it then shows in the open order list) or when a leg is never placed
+    public void release(String account, int legs) {
+        AtomicInteger inFlight = inFlightOrders.get(account != null ? account : "");
+        if (inFlight != null && legs > 0) {
+            inFlight.updateAndGet(count -> Math.max(0, count - legs));
+        }
+    }
+
+    private String evaluate(String account, String symbol, String action, int quantity, double referencePrice, int legs,
+                            int otherInFlight, List<Map<String, Object>> positions, List<Map.Entry<Order, Contract>> openOrders,
+                            AccountStateCache.AccountSnapshot accountState) {
+        if (maxOpenOrders > 0) {
+            int open = 0;
+            for (Map.Entry<Order, Contract> entry : openOrders) {
+                if (account.equals(entry.getKey().account())) {
+                    open++;
+                }
+            }
+            open += otherInFlight;
+            if (open + legs > maxOpenOrders) {
+                return "Open order limit reached (" + open + " open, order needs " + legs + ", max " + maxOpenOrders + ")";
+            }
+        }
+
+        if (maxPositionPerSymbol > 0 || maxNotionalPerAccount > 0) {
+            long symbolPosition = 0;
+            double accountNotional = 0;
+            // Gross position value from the account subscription is at market; avgCost from the position list is the fallback
+            boolean useAccountState = accountState != null && accountState.isFresh(ACCOUNT_STATE_MAX_AGE_MS)
+                    && !Double.isNaN(accountState.getGrossPositionValue());
+            if (useAccountState) {
+                accountNotional = accountState.getGrossPositionValue();
+            }
+            for (Map<String, Object> pos : positions) {
+                if (!account.equals(pos.get("account"))) {
+                    continue;
+                }
+                Contract contract = (Contract) pos.get("contract");
+                long position = ((Decimal) pos.get("position")).longValue();
+                Object avgCost = pos.get("avgCost");
+                if (!useAccountState && avgCost instanceof Number) {
+                    // avgCost already includes the contract multiplier
+                    accountNotional += Math.abs(position * ((Number) avgCost).doubleValue());
+                }
+                if (matchesSymbol(contract, symbol)) {
+                    symbolPosition += position;
+                }
+            }
+            long signedQuantity = "SELL".equalsIgnoreCase(action) ? -quantity : quantity;
+
+            if (maxPositionPerSymbol > 0 && Math.abs(symbolPosition + signedQuantity) > maxPositionPerSymbol) {
+                return "Position limit for " + symbol + " exceeded (" + symbolPosition + " held, order " + signedQuantity
+                        + ", max " + maxPositionPerSymbol + ")";
+            }
+            // Notional is only checked when the order carries a price to value it at
+            if (maxNotionalPerAccount > 0 && referencePrice > 0
+                    && accountNotional + quantity * referencePrice > maxNotionalPerAccount) {
+                return "Account notional limit exceeded (" + Math.round(accountNotional) + " held, order "
+                        + Math.round(quantity * referencePrice) + ", max " + maxNotionalPerAccount + ")";
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesSymbol(Contract contract, String symbol) {
+        if (contract == null || symbol == null) {
+            return false;
+        }
+        return symbol.equals(contract.symbol()) || String.valueOf(contract.localSymbol()).split(" ")[0].equals(symbol);
+    }
+
+    private void recordLatency(long nanos) {
+        checks.increment();
+        checkNanos.add(nanos);
+        maxCheckNanos.accumulateAndGet(nanos, Math::max);
+        long total = checks.sum();
+        if (total % STATS_LOG_EVERY == 0) {
+            log.info("Risk checks: {} run, {} rejected, avg {} us, max {} us", total, rejections.sum(),
+                    TimeUnit.NANOSECONDS.toMicros(checkNanos.sum() / total), TimeUnit.NANOSECONDS.toMicros(maxCheckNanos.get()));
+        } else {
+            log.debug("Risk check took {} us", TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    // Per-second buckets over the last minute. Each bucket packs its second and its count into one long, so a
+    // bucket is reset and counted in a single CAS and a stale second can never wipe a fresh increment.
+    private static class OrderRateWindow {
+        private static final int COUNT_BITS = 20;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+        private final AtomicLongArray buckets = new AtomicLongArray(RATE_WINDOW_SECONDS);
+
+        // Adds legs to the current second and returns the window total including them
+        int reserve(long epochSecond, int legs) {
+            int index = (int) (epochSecond % RATE_WINDOW_SECONDS);
+            buckets.getAndUpdate(index, packed -> {
+                long count = (packed >>> COUNT_BITS) == epochSecond ? packed & COUNT_MASK : 0;
+                return (epochSecond << COUNT_BITS) | Math.min(COUNT_MASK, count + legs);
+            });
+            return count(epochSecond);
+        }
+
+        // Hands back a reservation; a bucket that has already moved on to a later second is left alone
+        void unreserve(long epochSecond, int legs) {
+            int index = (int) (epochSecond % RATE_WINDOW_SECONDS);
+            buckets.getAndUpdate(index, packed -> (packed >>> COUNT_BITS) == epochSecond
+                    ? (epochSecond << COUNT_BITS) | Math.max(0, (packed & COUNT_MASK) - legs)
+                    : packed);
+        }
+
+        int count(long epochSecond) {
+            int total = 0;
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                long packed = buckets.get(i);
+                if (epochSecond - (packed >>> COUNT_BITS) < RATE_WINDOW_SECONDS) {
+                    total += (int) (packed & COUNT_MASK);
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Hosts several TWS/Gateway logins in one process. Sessions share the engine, trade and recovery executors and
+// the order store; each alert is routed to the session whose login manages its account. The first session is the
+// primary one and takes any account no other session claims.
+public class SessionManager {
+    // Sessions write into the same order store, so each one allocates order ids from its own range
+    private static final int ORDER_ID_RANGE_PER_SESSION = 100_000_000;
+
+    private final ExecutorService engineExecutor = Executors.newFixedThreadPool(16);
+    private final ExecutorService tradeExecutor = Executors.newFixedThreadPool(32);
+    private final ExecutorService recoveryExecutor = Executors.newFixedThreadPool(4);
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean secondariesStarted = new AtomicBoolean(false);
+
+    public static class Session {
+        private final String name;
+        private final int twsPort;
+        private final TwsEngine engine;
+        private final PlaceOrderService placeOrderService;
+        private final TwsConnectionManager connectionManager;
+
+        private Session(String name, int twsPort, TwsEngine engine, PlaceOrderService placeOrderService) {
+            this.name = name;
+            this.twsPort = twsPort;
+            this.engine = engine;
+            this.placeOrderService = placeOrderService;
+            this.connectionManager = new TwsConnectionManager(engine, twsPort);
+        }
+
+        public String getName() { return name; }
+        public int getTwsPort() { return twsPort; }
+        public TwsEngine getEngine() { return engine; }
+        public PlaceOrderService getPlaceOrderService() { return placeOrderService; }
+        public TwsConnectionManager getConnectionManager() { return connectionManager; }
+    }
+
+    public Session addSession(String name, int twsPort, int clientId) {
+        return addSession(name, twsPort, clientId, null);
+    }
+
+    // dataClientId, when set, opens a second connection for market data and lookups
+    public synchronized Session addSession(String name, int twsPort, int clientId, Integer dataClientId) {
+        for (Session existing : sessions) {
+            if (existing.twsPort == twsPort && existing.engine.getClientId() == clientId) {
+                throw new IllegalArgumentException("Session for port " + twsPort + " and clientId " + clientId + " already exists");
+            }
+        }
+        int orderIdFloor = sessions.size() * ORDER_ID_RANGE_PER_SESSION;
+        TwsEngine engine = new TwsEngine(name, clientId, orderIdFloor, engineExecutor);
+        if (dataClientId != null) {
+            engine.enableDataConnection(dataClientId);
+        }
+        PlaceOrderService service = new PlaceOrderService(engine, tradeExecutor, recoveryExecutor);
+        Session session = new Session(name, twsPort, engine, service);
+        service.setAccountOwnership(account -> sessionForAccount(account) == session);
+        engine.setAccountOwnership(account -> sessionForAccount(account) == session);
+        sessions.add(session);
+        log.info("Added TWS session {} on port {} with clientId {}, order ids from {}", name, twsPort, clientId, orderIdFloor);
+        return session;
+    }
+
+    public Session getPrimary() {
+        return sessions.isEmpty() ? null : sessions.get(0);
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    public Session sessionForAccount(String account) {
+        if (account != null) {
+            for (Session session : sessions) {
+                if (session.engine.getManagedAccounts().contains(account)) {
+                    return session;
+                }
+            }
+        }
+        return getPrimary();
+    }
+
+    public CompletableFuture<Boolean> placeTrade(Map<String, Object> contracts) {
+        if (contracts.get("account_allocations") instanceof List && sessions.size() > 1) {
+            return placeAcrossSessions(contracts);
+        }
+        Session session = sessionForAccount((String) contracts.get("account"));
+        if (session == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No TWS session configured"));
+        }
+        log.debug("Routing alert {} for account {} to session {}", contracts.get("random_alert_key"),
+                contracts.get("account"), session.name);
+        return session.placeOrderService.placeTrade(contracts);
+    }
+
+    // Allocations are split by owning session; each session fans out its own accounts
+    private CompletableFuture<Boolean> placeAcrossSessions(Map<String, Object> contracts) {
+        List<Map<String, Object>> allocations = (List<Map<String, Object>>) contracts.get("account_allocations");
+        Map<Session, List<Map<String, Object>>> bySession = new LinkedHashMap<>();
+        for (Map<String, Object> allocation : allocations) {
+            Session session = sessionForAccount((String) allocation.get("account"));
+            bySession.computeIfAbsent(session, s -> new ArrayList<>()).add(allocation);
+        }
+
+        List<CompletableFuture<Boolean>> placements = new ArrayList<>();
+        for (Map.Entry<Session, List<Map<String, Object>>> entry : bySession.entrySet()) {
+            Map<String, Object> sessionContracts = new HashMap<>(contracts);
+            sessionContracts.put("account_allocations", entry.getValue());
+            log.info("Routing {} allocations of alert {} to session {}", entry.getValue().size(),
+                    contracts.get("random_alert_key"), entry.getKey().name);
+            placements.add(entry.getKey().placeOrderService.placeTrade(sessionContracts));
+        }
+        return CompletableFuture.allOf(placements.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> placements.stream().allMatch(CompletableFuture::join));
+    }
+
+    // The primary session is started by MainApp, which also drives its UI status; the others are started here
+    public void startSecondarySessions(long recoverSince) {
+        if (!secondariesStarted.compareAndSet(false, true)) {
+            return;
+        }
+        for (Session session : sessions) {
+            if (session == getPrimary()) continue;
+            session.connectionManager.addStateListener(state -> {
+                if (state == TwsConnectionManager.State.READY) {
+                    tradeExecutor.submit(() -> session.placeOrderService.placeRemainingTpSlOrder(recoverSince));
+                }
+            });
+            session.connectionManager.start();
+        }
+    }
+
+    public void restartOrderStatusProcessing() {
+        for (Session session : sessions) {
+            session.engine.restartOrderStatusProcessing();
+        }
+    }
+
+    public void shutdown() {
+        for (Session session : sessions) {
+            session.connectionManager.stop();
+            session.engine.disconnect();
+        }
+        engineExecutor.shutdown();
+        tradeExecutor.shutdown();
+        recoveryExecutor.shutdown();
+        try {
+            if (!engineExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                engineExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            engineExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("All TWS sessions shut down");
+    }
+}
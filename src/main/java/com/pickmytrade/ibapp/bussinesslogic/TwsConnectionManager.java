@@ -0,0 +1,193 @@
+package com.pickmytrade.ibapp.bussinesslogic;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.pickmytrade.ibapp.config.Config.log;
+
+// Keeps one TwsEngine connected. Transitions are driven by the engine's connection callbacks rather than by
+// polling; retries use jittered exponential backoff. Every transition runs on a single scheduler thread, so
+// the state needs no locking.
+public class TwsConnectionManager implements TwsEngine.ConnectionListener {
+    public enum State { IDLE, CONNECTING, CONNECTED, READY, BACKOFF, STOPPED }
+
+    private static final long BASE_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 5_000;
+    private static final long CONNECT_TIMEOUT_MS = 10_000;
+
+    private final TwsEngine engine;
+    private final int twsPort;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Consumer<State>> stateListeners = new CopyOnWriteArrayList<>();
+
+    private volatile State state = State.IDLE;
+    private int attempt;
+    private long outageStartMillis;
+    private long attemptStartMillis;
+    private ScheduledFuture<?> pendingTask;
+    private volatile long lastTimeToReadyMs = -1;
+
+    public TwsConnectionManager(TwsEngine engine, int twsPort) {
+        this.engine = engine;
+        this.twsPort = twsPort;
+        engine.addConnectionListener(this);
+    }
+
+    public void addStateListener(Consumer<State> listener) {
+        stateListeners.add(listener);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public long getLastTimeToReadyMs() {
+        return lastTimeToReadyMs;
+    }
+
+    public void start() {
+        scheduler.execute(() -> {
+            if (state != State.IDLE) {
+                return;
+            }
+            outageStartMillis = System.currentTimeMillis();
+            connect();
+        });
+    }
+
+    public void stop() {
+        post(() -> {
+            cancelPending();
+            transition(State.STOPPED);
+        });
+        scheduler.shutdown();
+    }
+
+    @Override
+    public void onConnected() {
+        post(() -> {
+            if (state != State.CONNECTING && state != State.BACKOFF) {
+                return;
+            }
+            cancelPending();
+            log.info("TWS on port {} connected after {} ms (attempt {})", twsPort,
+                    System.currentTimeMillis() - attemptStartMillis, attempt);
+            transition(State.CONNECTED);
+        });
+    }
+
+    @Override
+    public void onReady(long readyMs) {
+        post(() -> {
+            if (state != State.CONNECTED) {
+                return;
+            }
+            lastTimeToReadyMs = System.currentTimeMillis() - outageStartMillis;
+            log.info("TWS on port {} ready {} ms after outage start ({} attempts, reconciliation {} ms)",
+                    twsPort, lastTimeToReadyMs, attempt, readyMs);
+            attempt = 0;
+            transition(State.READY);
+        });
+    }
+
+    @Override
+    public void onDisconnected() {
+        post(() -> {
+            // Disconnects we cause while (re)connecting are expected and ignored
+            if (state != State.CONNECTED && state != State.READY) {
+                return;
+            }
+            log.warn("TWS on port {} disconnected, reconnecting", twsPort);
+            outageStartMillis = System.currentTimeMillis();
+            connect();
+        });
+    }
+
+    @Override
+    public void onConnectFailed(String reason) {
+        post(() -> {
+            if (state != State.CONNECTING) {
+                return;
+            }
+            log.warn("TWS connect attempt {} on port {} failed: {}", attempt, twsPort, reason);
+            backoff();
+        });
+    }
+
+    private void connect() {
+        cancelPending();
+        attempt++;
+        attemptStartMillis = System.currentTimeMillis();
+        transition(State.CONNECTING);
+        int thisAttempt = attempt;
+        try {
+            engine.reconnect(twsPort);
+        } catch (Exception e) {
+            log.error("TWS connect attempt {} on port {} threw: {}", attempt, twsPort, e.getMessage());
+            backoff();
+            return;
+        }
+        pendingTask = scheduler.schedule(() -> {
+            if (state == State.CONNECTING && attempt == thisAttempt) {
+                log.warn("TWS connect attempt {} on port {} timed out after {} ms", attempt, twsPort, CONNECT_TIMEOUT_MS);
+                backoff();
+            }
+        }, CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void backoff() {
+        cancelPending();
+        long delayMs = backoffDelayMs(attempt);
+        log.info("Retrying TWS on port {} in {} ms", twsPort, delayMs);
+        transition(State.BACKOFF);
+        pendingTask = scheduler.schedule(this::connect, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Doubles per attempt up to the cap; the actual delay is drawn from the upper half so retries stay spread out
+    private static long backoffDelayMs(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    // Callbacks can still arrive from the reader thread after stop()
+    private void post(Runnable transition) {
+        try {
+            scheduler.execute(transition);
+        } catch (RejectedExecutionException e) {
+            log.debug("TWS connection manager for port {} stopped, ignoring callback", twsPort);
+        }
+    }
+
+    private void cancelPending() {
+        if (pendingTask != null) {
+            pendingTask.cancel(false);
+            pendingTask = null;
+        }
+    }
+
+    private void transition(State next) {
+        if (state == State.STOPPED) {
+            return;
+        }
+        log.debug("TWS on port {}: {} -> {}", twsPort, state, next);
+        state = next;
+        for (Consumer<State> listener : stateListeners) {
+            try {
+                listener.accept(next);
+            } catch (Exception e) {
+                log.error("TWS state listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -3,17 +3,14 @@ package com.pickmytrade.ibapp.bussinesslogic;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.ib.client.*;
+import com.ib.controller.AccountSummaryTag;
 import com.ib.controller.ApiController;
 import com.ib.controller.Bar;
-import com.ib.controller.Position;
 import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.OrderClientColumn;
+import com.pickmytrade.ibapp.db.OrderClientProjection;
+import com.pickmytrade.ibapp.db.OrderStores;
 import com.pickmytrade.ibapp.db.entities.*;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,16 +18,24 @@ import java.sql.SQLException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.ib.controller.ApiController.IContractDetailsHandler;
@@ -40,29 +45,107 @@ import static com.pickmytrade.ibapp.config.Config.log;
 
 public class TwsEngine {
 //    private static final Logger log = LoggerFactory.getLogger(TwsEngine.class);
-    private final ApiController controller;
-    private final ExecutorService executor = Executors.newFixedThreadPool(16);
-    public static ExecutorService orderStatusExecutor = Executors.newSingleThreadExecutor();
-    public static final AtomicBoolean orderStatusProcessingStarted = new AtomicBoolean(false); // Flag to track if processing is started
+    private final RequestTrackingController controller;
+    // Optional second client connection for contract lookups, market data and bars, so heavy data traffic
+    // never queues in front of order callbacks on the order connection's reader thread
+    private volatile RequestTrackingController dataController;
+    private volatile boolean dataConnected = false;
+    private int dataClientId = -1;
+    private final Map<ApiController.ITopMktDataHandler, RequestTrackingController> marketDataControllers = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> orderSubmitNanos = new ConcurrentHashMap<>();
+    private final LatencyStats ackLatencySharedLink = new LatencyStats();
+    // Callbacks only copy their data and hand off; database work runs here in TWS delivery order
+    private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+    // Takes the possibly blocking hand-off to the status queue; one thread keeps updates in order
+    private final ExecutorService statusDispatchExecutor = Executors.newSingleThreadExecutor();
+    private static final long READER_STALL_WARN_MS = 20;
+    private static final long READER_STATS_LOG_SECONDS = 60;
+    private final LatencyStats readerCallbackStats = new LatencyStats();
+    private final LatencyStats ackLatencySeparateLink = new LatencyStats();
+    private final String sessionName;
+    private final int clientId;
+    private final ExecutorService executor;
+    // A shared executor belongs to the SessionManager and outlives this engine
+    private final boolean ownsExecutor;
+    private static final long LOOKUP_TIMEOUT_SECONDS = 10;
+    private final ScheduledExecutorService lookupTimeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+    private ExecutorService orderStatusExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean orderStatusProcessingStarted = new AtomicBoolean(false); // Flag to track if processing is started
     private final AtomicBoolean stopFlag = new AtomicBoolean(false);
     private final Gson gson = new GsonBuilder()
             .serializeNulls()
             .create();
     private volatile boolean isConnected = false;
     private final Map<Contract, ApiController.ITopMktDataHandler> marketDataHandlers = new java.util.concurrent.ConcurrentHashMap<>();
-    private volatile boolean orderIdReceived = false;
+    private final OrderIdAllocator orderIdAllocator;
+    private static final long ORDER_ACK_TIMEOUT_SECONDS = 10;
+    private final Map<Integer, CompletableFuture<Order>> pendingOrderAcks = new ConcurrentHashMap<>();
+    private final Map<Integer, Contract> orderContracts = new ConcurrentHashMap<>();
+    private final FillRecorder fillRecorder = new FillRecorder();
+    private final RecentErrorIndex recentErrors = new RecentErrorIndex();
+    private final OrderJournal orderJournal;
+    // Orders someone is waiting on; each watch is dropped once it has been left alone for STATUS_WATCH_TTL_MINUTES
+    private final Map<Integer, OrderStatusWatch> statusWatches = new ConcurrentHashMap<>();
+    private static final long STATUS_WATCH_TTL_MINUTES = 10;
+    private final ExecutionFeedHandler executionFeed = new ExecutionFeedHandler();
+    private final AccountStateCache accountStateCache = new AccountStateCache();
+    private volatile List<String> managedAccounts = Collections.emptyList();
+    // Every session shares one order store; reconciliation only touches rows of the accounts this session owns
+    private volatile Predicate<String> ownsAccount = account -> true;
+    private static final Set<String> ACTIVE_ORDER_STATUSES = Set.of("ApiPending", "PendingSubmit", "PreSubmitted", "Submitted");
+    private static final Set<String> TERMINAL_ORDER_STATUSES = Set.of("Filled", "Cancelled", "ApiCancelled", "Inactive");
+    private volatile long disconnectedAtMillis = 0;
+    private PositionHandler positionHandler;
+    private LiveOrderHandler liveOrderHandler;
+    // Values the account cache keeps, for every account the login manages
+    private static final AccountSummaryTag[] ACCOUNT_SUMMARY_TAGS = {
+            AccountSummaryTag.NetLiquidation, AccountSummaryTag.BuyingPower, AccountSummaryTag.AvailableFunds,
+            AccountSummaryTag.InitMarginReq, AccountSummaryTag.MaintMarginReq, AccountSummaryTag.GrossPositionValue};
+    private volatile AccountSummaryHandler accountSummaryHandler;
+    private final Map<String, AccountUpdateMultiHandler> accountUpdateHandlers = new ConcurrentHashMap<>();
     private volatile CountDownLatch connectionLatch = new CountDownLatch(1);
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    // TWS error codes meaning the socket could not be opened or was lost
+    private static final Set<Integer> CONNECT_FAILURE_CODES = Set.of(502, 504, 507);
+    // Informational messages that carry an order id but leave the order working (outside RTH ignored, order held,
+    // TIF preset applied); codes 2100-2169 are warnings as well
+    private static final Set<Integer> WARNING_CODES = Set.of(399, 404, 10349);
     private final List<Map<String, Object>> positions = Collections.synchronizedList(new ArrayList<>());
     private final List<Map.Entry<Order, Contract>> openOrders = Collections.synchronizedList(new ArrayList<>());
-    private static final ArrayBlockingQueue<Map<String, Object>> orderStatusQueue = new ArrayBlockingQueue<>(1000); // Static queue
+    // Per session: order ids are only unique within one TWS login
+    private final DurableStatusQueue orderStatusQueue;
     private final Map<Integer, CachedStrikeData> strikeCache = Collections.synchronizedMap(new HashMap<>());
     private int tws_port;
 
 
 
     public TwsEngine() {
-        controller = new ApiController(new CustomConnectionHandler(), System.out::println, System.err::println);
+        this("default", 0, 0, Executors.newFixedThreadPool(16), true);
+    }
+
+    public TwsEngine(String sessionName, int clientId, int orderIdFloor, ExecutorService executor) {
+        this(sessionName, clientId, orderIdFloor, executor, false);
+    }
+
+    private TwsEngine(String sessionName, int clientId, int orderIdFloor, ExecutorService executor, boolean ownsExecutor) {
+        this.sessionName = sessionName;
+        this.clientId = clientId;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.orderIdAllocator = new OrderIdAllocator(orderIdFloor);
+        this.orderJournal = new OrderJournal(DatabaseConfig.getDbFile(), sessionName);
+        this.orderStatusQueue = new DurableStatusQueue(sessionName);
+        controller = new RequestTrackingController(new CustomConnectionHandler(), clientId) {
+            @Override
+            public synchronized void nextValidId(int orderId) {
+                orderIdAllocator.seed(orderId);
+                super.nextValidId(orderId);
+            }
+        };
         startOrderStatusProcessing(); // Start processing when the instance is created
+        lookupTimeoutScheduler.scheduleWithFixedDelay(
+                () -> log.info("Reader thread callback time for session {}: {}", sessionName, readerCallbackStats.summary()),
+                READER_STATS_LOG_SECONDS, READER_STATS_LOG_SECONDS, TimeUnit.SECONDS);
     }
 
 
@@ -75,6 +158,66 @@ public class TwsEngine {
         }
     }
 
+    public synchronized void restartOrderStatusProcessing() {
+        log.info("Restarting order status processing for session {}", sessionName);
+        orderStatusProcessingStarted.set(false);
+        orderStatusExecutor.shutdownNow();
+        try {
+            if (!orderStatusExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Order status executor did not terminate gracefully");
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted during order status executor shutdown", e);
+            Thread.currentThread().interrupt();
+        }
+        // An update the old processor was interrupted in is still in the table; hand it out again
+        orderStatusQueue.replayUnapplied();
+        orderStatusExecutor = Executors.newSingleThreadExecutor();
+        startOrderStatusProcessing();
+    }
+
+    // Must be called before connecting; data requests fall back to the order connection whenever this one is down
+    public void enableDataConnection(int dataClientId) {
+        if (dataClientId == clientId) {
+            log.error("Data clientId {} equals the order clientId; keeping data on the order connection", dataClientId);
+            return;
+        }
+        this.dataClientId = dataClientId;
+        this.dataController = new RequestTrackingController(new DataConnectionHandler(), dataClientId);
+        log.info("Session {} will use clientId {} for market data and lookups", sessionName, dataClientId);
+    }
+
+    private RequestTrackingController dataController() {
+        RequestTrackingController data = dataController;
+        return data != null && dataConnected ? data : controller;
+    }
+
+    private void connectDataController() {
+        ApiController data = dataController;
+        if (data == null || dataConnected || !isConnected) {
+            return;
+        }
+        log.info("Connecting data client {} on port {}", dataClientId, tws_port);
+        data.client().setAsyncEConnect(true);
+        data.connect("127.0.0.1", tws_port, dataClientId, "+PACEAPI");
+    }
+
+    public String getSessionName() {
+        return sessionName;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public List<String> getManagedAccounts() {
+        return managedAccounts;
+    }
+
+    public void setAccountOwnership(Predicate<String> ownsAccount) {
+        this.ownsAccount = ownsAccount;
+    }
+
     public static class OrderExecutionResult {
         private final Order order;
         private final CompletableFuture<Order> future;
@@ -97,12 +240,32 @@ public class TwsEngine {
         return connectionLatch;
     }
 
+    // Connection lifecycle callbacks, invoked on the TWS reader thread (ready on an executor thread)
+    public interface ConnectionListener {
+        void onConnected();
+
+        void onDisconnected();
+
+        void onConnectFailed(String reason);
+
+        void onReady(long readyMs);
+    }
+
+    public void addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
     private class CustomConnectionHandler implements ApiController.IConnectionHandler {
         @Override
         public void connected() {
+            long startNanos = System.nanoTime();
             isConnected = true;
             log.info("Connected to TWS");
             connectionLatch.countDown();
+            executor.submit(TwsEngine.this::startTwsSubscriptions);
+            executor.submit(TwsEngine.this::connectDataController);
+            connectionListeners.forEach(ConnectionListener::onConnected);
+            trackReaderCallback("connected", startNanos);
         }
 
         @Override
@@ -115,42 +278,54 @@ public class TwsEngine {
             synchronized (openOrders) {
                 openOrders.clear();
             }
-            synchronized (orderStatusQueue) {
-                orderStatusQueue.clear(); // Clear queue on disconnect to avoid stale data
+            // Queued status updates are kept; they are still valid and the reconnect reconciliation builds on them
+            if (disconnectedAtMillis == 0) {
+                disconnectedAtMillis = System.currentTimeMillis();
             }
+            connectionListeners.forEach(ConnectionListener::onDisconnected);
         }
 
         @Override
         public void accountList(List<String> list) {
+            long startNanos = System.nanoTime();
             log.info("Account list received: {}", list);
-            if (!list.isEmpty()) {
-                try {
-                    DatabaseConfig.emptyAccountDataTable();
-                } catch (SQLException e) {
-                    log.info("Error while getting and saving account ids");
-                }
-            }
-            for (String accountId : list) {
-                AccountData accountData = new AccountData();
-                accountData.setAccountId(accountId);
-                accountData.setData("Account information for " + accountId);
-                try {
-                    DatabaseConfig.saveAccountData(accountData);
-                } catch (SQLException e) {
-                    log.error("Failed to save account {}: {}", accountId, e.getMessage());
-                }
-            }
+            managedAccounts = new ArrayList<>(list);
+            List<String> accounts = new ArrayList<>(list);
+            callbackExecutor.execute(() -> saveAccountList(accounts));
+            trackReaderCallback("accountList", startNanos);
         }
 
         @Override
         public void error(Exception e) {
             log.error("TWS error: {}", e.getMessage(), e);
+            if (!isConnected) {
+                connectionListeners.forEach(listener -> listener.onConnectFailed(e.getMessage()));
+            }
         }
 
         @Override
         public void message(int id, int errorCode, String errorMsg, String advancedOrderRejectJson) {
+            long startNanos = System.nanoTime();
             log.warn("TWS message: id={}, errorCode={}, msg={}, advanced={}", id, errorCode, errorMsg, advancedOrderRejectJson);
-            errorFunc(id, errorCode, errorMsg, null);
+            if (CONNECT_FAILURE_CODES.contains(errorCode)) {
+                connectionListeners.forEach(listener -> listener.onConnectFailed(errorCode + ": " + errorMsg));
+            }
+            Contract contract = orderContracts.get(id);
+            if (contract == null) {
+                contract = controller.contractFor(id);
+            }
+            recentErrors.record(clientId, id, errorCode, errorMsg, contract);
+            if (id >= 0) {
+                orderJournal.error(id, errorCode, errorMsg);
+                // Connection and farm status messages carry no request id and never belong to an order
+                callbackExecutor.execute(() -> errorFunc(id, errorCode, errorMsg));
+            }
+            CompletableFuture<Order> pending = isWarning(errorCode) ? null : pendingOrderAcks.remove(id);
+            if (pending != null) {
+                IllegalStateException rejection = new IllegalStateException(errorCode + ": " + errorMsg);
+                callbackExecutor.execute(() -> pending.completeExceptionally(rejection));
+            }
+            trackReaderCallback("message", startNanos);
         }
 
         @Override
@@ -159,6 +334,39 @@ public class TwsEngine {
         }
     }
 
+    private static boolean isWarning(int errorCode) {
+        return WARNING_CODES.contains(errorCode) || (errorCode >= 2100 && errorCode <= 2169);
+    }
+
+    private void saveAccountList(List<String> list) {
+        if (!list.isEmpty()) {
+            try {
+                DatabaseConfig.emptyAccountDataTable();
+            } catch (SQLException e) {
+                log.info("Error while getting and saving account ids");
+            }
+        }
+        for (String accountId : list) {
+            AccountData accountData = new AccountData();
+            accountData.setAccountId(accountId);
+            accountData.setData("Account information for " + accountId);
+            try {
+                DatabaseConfig.saveAccountData(accountData);
+            } catch (SQLException e) {
+                log.error("Failed to save account {}: {}", accountId, e.getMessage());
+            }
+        }
+    }
+
+    // Time the reader thread spends inside one callback; anything slow here delays every later TWS message
+    private void trackReaderCallback(String callback, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        readerCallbackStats.record(nanos);
+        if (nanos >= TimeUnit.MILLISECONDS.toNanos(READER_STALL_WARN_MS)) {
+            log.warn("Reader thread stalled {} ms in {} callback", TimeUnit.NANOSECONDS.toMillis(nanos), callback);
+        }
+    }
+
     private void processOrderStatusQueue() {
 
 
@@ -166,21 +374,33 @@ public class TwsEngine {
             try {
                 // check if 5 minutes have passed
 
-                Map<String, Object> statusData = orderStatusQueue.poll(1, TimeUnit.SECONDS);
-                if (statusData != null) {
+                OrderStatusEvent event = orderStatusQueue.poll(1, TimeUnit.SECONDS);
+                if (event != null) {
                     orderStatusLoop(
-                            (int) statusData.get("orderId"),
-                            (OrderStatus) statusData.get("status"),
-                            (Decimal) statusData.get("filled"),
-                            (Decimal) statusData.get("remaining"),
-                            (double) statusData.get("avgFillPrice"),
-                            (int) statusData.get("permId"),
-                            (int) statusData.get("parentId"),
-                            (double) statusData.get("lastFillPrice"),
-                            (int) statusData.get("clientId"),
-                            (String) statusData.get("whyHeld")
+                            event.getOrderId(),
+                            OrderStatus.valueOf(event.getStatus()),
+                            event.getFilled() != null ? Decimal.parse(event.getFilled()) : null,
+                            event.getRemaining() != null ? Decimal.parse(event.getRemaining()) : null,
+                            event.getAvgFillPrice(),
+                            event.getPermId(),
+                            event.getParentId(),
+                            event.getLastFillPrice(),
+                            event.getClientId(),
+                            event.getWhyHeld()
                     );
+                    // Interrupted part way, the update may not have reached order_clients; it stays queued
+                    if (!Thread.currentThread().isInterrupted()) {
+                        orderStatusQueue.complete(event);
+                        OrderStatusWatch watch = statusWatches.get(event.getOrderId());
+                        if (watch != null) {
+                            watch.record(event.getStatus(), event.getEnqueuedAt());
+                        }
+                    }
                 }
+            } catch (InterruptedException e) {
+                // restartOrderStatusProcessing() stops this processor with shutdownNow()
+                Thread.currentThread().interrupt();
+                break;
             } catch (Exception e) {
                 log.error("Order status queue processing interrupted: {}", e.getMessage());
             } catch (Error e) {
@@ -202,12 +422,12 @@ public class TwsEngine {
 
     public void twsConnect(int twsport) {
         this.tws_port = twsport;
-        log.info("Attempting to connect to TWS");
+        log.info("Attempting to connect to TWS on port {} with clientId {} (session {})", twsport, clientId, sessionName);
         connectionLatch = new CountDownLatch(1);
         controller.client().setAsyncEConnect(true);
 
-        controller.connect("127.0.0.1", tws_port, 0, "+PACEAPI");
-        executor.submit(() -> startTwsSubscriptions());
+        // Subscriptions start from the connected() callback, so a failed attempt leaves nothing waiting behind
+        controller.connect("127.0.0.1", tws_port, clientId, "+PACEAPI");
     }
 
     public void startTwsSubscriptions() {
@@ -217,9 +437,21 @@ public class TwsEngine {
             currentLatch.await();
             if (isConnected) {
                 log.info("Subscribing to TWS events");
-                controller.reqAccountUpdates(false, null, new AccountHandler());
-                controller.reqPositions(new PositionHandler(null));
-                controller.reqLiveOrders(new LiveOrderHandler(new CompletableFuture<>()));
+                subscribeAccountState(managedAccounts);
+                // ApiController keeps every registered handler, so the previous session's handlers go first
+                if (positionHandler != null) {
+                    controller.cancelPositions(positionHandler);
+                }
+                if (liveOrderHandler != null) {
+                    controller.removeLiveOrderHandler(liveOrderHandler);
+                }
+                CompletableFuture<List<Map<String, Object>>> positionsLoaded = new CompletableFuture<>();
+                CompletableFuture<List<Map.Entry<Order, Contract>>> liveOrdersLoaded = new CompletableFuture<>();
+                positionHandler = new PositionHandler(positionsLoaded);
+                liveOrderHandler = new LiveOrderHandler(liveOrdersLoaded);
+                controller.reqPositions(positionHandler);
+                controller.reqLiveOrders(liveOrderHandler);
+                reconcileWithTws(positionsLoaded, liveOrdersLoaded);
                 // Do not resubmit processOrderStatusQueue here; it's already running
             } else {
                 log.warn("Not connected to TWS, skipping subscriptions");
@@ -242,13 +474,209 @@ public class TwsEngine {
         }
     }
 
+    // Reuses this engine across a TWS blip so caches, id allocation and queued status updates survive
+    public void reconnect(int twsport) {
+        log.info("Reconnecting to TWS on port {}", twsport);
+        try {
+            controller.disconnect();
+        } catch (Exception e) {
+            log.warn("Error closing previous TWS connection: {}", e.getMessage());
+        }
+        disconnectDataController();
+        isConnected = false;
+        twsConnect(twsport);
+    }
+
+    private void disconnectDataController() {
+        ApiController data = dataController;
+        if (data == null) {
+            return;
+        }
+        try {
+            data.disconnect();
+        } catch (Exception e) {
+            log.warn("Error closing data client connection: {}", e.getMessage());
+        }
+        dataConnected = false;
+    }
+
+    private void reconcileWithTws(CompletableFuture<List<Map<String, Object>>> positionsLoaded,
+                                  CompletableFuture<List<Map.Entry<Order, Contract>>> liveOrdersLoaded) {
+        long startMillis = System.currentTimeMillis();
+        long blipStartMillis = disconnectedAtMillis;
+        // Unfiltered so executions missed while disconnected or before a restart are backfilled into fills
+        CompletableFuture<Map<Integer, Execution>> executionsLoaded = executionFeed.beginSnapshot();
+        controller.reqExecutions(new ExecutionFilter(), executionFeed);
+        // An unfinished snapshot completes with null so it is never mistaken for an empty one
+        completeOnLookupTimeout(positionsLoaded, () -> null, "positions snapshot");
+        completeOnLookupTimeout(liveOrdersLoaded, () -> null, "open orders snapshot");
+        completeOnLookupTimeout(executionsLoaded, () -> null, "executions snapshot");
+
+        CompletableFuture.allOf(positionsLoaded, liveOrdersLoaded, executionsLoaded)
+                .thenRunAsync(() -> replayMissingTransitions(liveOrdersLoaded.join(), executionsLoaded.join(),
+                        positionsLoaded.join()), executor)
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        log.error("Reconnect reconciliation failed: {}", e.getMessage(), e);
+                    }
+                    long readyMs = System.currentTimeMillis() - (blipStartMillis > 0 ? blipStartMillis : startMillis);
+                    log.info("TWS ready {} ms after {}", readyMs, blipStartMillis > 0 ? "disconnect" : "connect");
+                    disconnectedAtMillis = 0;
+                    connectionListeners.forEach(listener -> listener.onReady(readyMs));
+                });
+    }
+
+    private void replayMissingTransitions(List<Map.Entry<Order, Contract>> liveOrders, Map<Integer, Execution> executions,
+                                          List<Map<String, Object>> twsPositions) {
+        List<OrderClient> rows = new ArrayList<>();
+        try {
+            for (OrderClient row : OrderStores.get().findActiveSince(0)) {
+                // Other sessions' orders are never in this login's open order list and must not be touched
+                if (ownsAccount.test(row.getAccountId())) {
+                    rows.add(row);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Reconciliation could not load orders: {}", e.getMessage());
+            return;
+        }
+        Set<Integer> openIds = null;
+        if (liveOrders != null) {
+            openIds = new HashSet<>();
+            for (Map.Entry<Order, Contract> entry : liveOrders) {
+                openIds.add(entry.getKey().orderId());
+            }
+        }
+        Map<Integer, Execution> fills = executions != null ? executions : Collections.emptyMap();
+
+        // reqExecutions only reports today's executions, so an older order that is no longer open may have
+        // filled as well as been cancelled
+        long executionWindowStart = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int replayed = 0;
+        for (OrderClient row : rows) {
+            boolean inWindow = row.getCreatedAtMs() != null && row.getCreatedAtMs() >= executionWindowStart;
+            replayed += replayMissedStatus(row.getParentId(), row.getEntryStatus(), row.getQuantity(), openIds, fills, inWindow);
+            replayed += replayMissedStatus(row.getTpTempId(), row.getTpStatus(), row.getQuantity(), openIds, fills, inWindow);
+            replayed += replayMissedStatus(row.getSlTempId(), row.getSlStatus(), row.getQuantity(), openIds, fills, inWindow);
+        }
+        if (twsPositions != null) {
+            logPositionDrift(rows, twsPositions);
+        }
+        log.info("Reconnect reconciliation checked {} orders, replayed {} missed transitions", rows.size(), replayed);
+    }
+
+    // Returns 1 when a transition TWS already made was missing locally and has been queued for the status loop
+    private int replayMissedStatus(String orderIdText, String knownStatus, Integer quantity, Set<Integer> openIds,
+                                   Map<Integer, Execution> executions, boolean inExecutionWindow) {
+        if (orderIdText == null || orderIdText.isEmpty() || "Filled".equals(knownStatus) || "Cancelled".equals(knownStatus)) {
+            return 0;
+        }
+        int orderId;
+        try {
+            orderId = Integer.parseInt(orderIdText);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        OrderJournal.OrderState journalled = orderJournal.getOrderState(orderId);
+        if (journalled != null && journalled.isTerminal() && !journalled.getStatus().equals(knownStatus)) {
+            // The journal saw this transition, but the row update was lost to a crash or restart
+            log.info("Replaying journalled {} for order {} (last known status {})", journalled.getStatus(), orderId,
+                    knownStatus);
+            enqueueOrderStatus(orderId, OrderStatus.valueOf(journalled.getStatus()), Decimal.get(journalled.getFilled()),
+                    Decimal.get(journalled.getRemaining()), journalled.getAvgFillPrice(), journalled.getPermId(),
+                    journalled.getParentId(), journalled.getAvgFillPrice(), 0, null);
+            return 1;
+        }
+        Execution execution = executions.get(orderId);
+        long filledQuantity = execution != null ? execution.cumQty().longValue() : 0;
+        OrderStatus missedStatus;
+        if (execution != null && quantity != null && filledQuantity >= quantity) {
+            missedStatus = OrderStatus.Filled;
+        } else if (openIds != null && !openIds.contains(orderId) && knownStatus != null
+                && ACTIVE_ORDER_STATUSES.contains(knownStatus)) {
+            if (!inExecutionWindow) {
+                log.warn("Order {} is no longer open in TWS but predates the executions snapshot; final status unknown "
+                        + "(last known status {})", orderId, knownStatus);
+                return 0;
+            }
+            missedStatus = OrderStatus.Cancelled;
+        } else {
+            return 0;
+        }
+
+        log.info("Replaying missed {} for order {} (last known status {})", missedStatus, orderId, knownStatus);
+        enqueueOrderStatus(orderId, missedStatus, Decimal.get(filledQuantity),
+                Decimal.get(quantity != null ? Math.max(0, quantity - filledQuantity) : 0),
+                execution != null ? execution.avgPrice() : 0, execution != null ? execution.permId() : 0, 0,
+                execution != null ? execution.price() : 0, 0, null);
+        return 1;
+    }
+
+    private void logPositionDrift(List<OrderClient> rows, List<Map<String, Object>> twsPositions) {
+        for (OrderClient row : rows) {
+            boolean expectOpen = "Filled".equals(row.getEntryStatus())
+                    && !"Filled".equals(row.getTpStatus()) && !"Filled".equals(row.getSlStatus());
+            if (!expectOpen) continue;
+            boolean found = twsPositions.stream().anyMatch(pos -> {
+                Contract contract = (Contract) pos.get("contract");
+                return Objects.equals(pos.get("account"), row.getAccountId())
+                        && (String.valueOf(contract.symbol()).equals(row.getSymbol())
+                        || String.valueOf(contract.localSymbol()).split(" ")[0].equals(row.getSymbol()));
+            });
+            if (!found) {
+                log.warn("Order {} shows an open {} position for account {} but TWS reports none",
+                        row.getOrdersRandomId(), row.getSymbol(), row.getAccountId());
+            }
+        }
+    }
+
+    // ApiController keeps a single trade report handler, so one instance serves both the live execution
+    // feed and the per-connect executions snapshot used for backfill and reconciliation
+    private class ExecutionFeedHandler implements ApiController.ITradeReportHandler {
+        private final Map<Integer, Execution> latestByOrder = new ConcurrentHashMap<>();
+        private volatile CompletableFuture<Map<Integer, Execution>> snapshot;
+
+        public CompletableFuture<Map<Integer, Execution>> beginSnapshot() {
+            latestByOrder.clear();
+            CompletableFuture<Map<Integer, Execution>> future = new CompletableFuture<>();
+            snapshot = future;
+            return future;
+        }
+
+        @Override
+        public void tradeReport(String tradeKey, Contract contract, Execution execution) {
+            long startNanos = System.nanoTime();
+            fillRecorder.onExecution(contract, execution);
+            // Every execution is recorded, but order ids are only ours under our own clientId; manual TWS orders
+            // and other API clients reuse the same ids
+            if (execution.clientId() == clientId) {
+                latestByOrder.merge(execution.orderId(), execution,
+                        (known, latest) -> latest.cumQty().longValue() >= known.cumQty().longValue() ? latest : known);
+            }
+            trackReaderCallback("tradeReport", startNanos);
+        }
+
+        @Override
+        public void tradeReportEnd() {
+            CompletableFuture<Map<Integer, Execution>> future = snapshot;
+            if (future != null) {
+                future.complete(new HashMap<>(latestByOrder));
+            }
+        }
+
+        @Override
+        public void commissionReport(String tradeKey, CommissionReport commissionReport) {
+            fillRecorder.onCommission(commissionReport);
+        }
+    }
+
     public void disconnect() {
         log.info("Initiating TWS disconnection and cleanup");
 
         try {
             marketDataHandlers.forEach((contract, handler) -> {
                 try {
-                    controller.cancelTopMktData(handler);
+                    cancelTopMktData(handler);
                     log.info("Cancelled market data for contract: {}", contract);
                 } catch (Exception e) {
                     log.error("Error cancelling market data for contract {}: {}", contract, e.getMessage());
@@ -257,7 +685,7 @@ public class TwsEngine {
             marketDataHandlers.clear();
 
             try {
-                controller.reqAccountUpdates(false, null, null);
+                cancelAccountState();
                 log.info("Stopped account updates");
             } catch (Exception e) {
                 log.error("Error stopping account updates: {}", e.getMessage());
@@ -275,17 +703,27 @@ public class TwsEngine {
                 isConnected = false;
                 log.info("Disconnected from TWS");
             }
+            disconnectDataController();
 
-            try {
-                executor.shutdown();
-                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            lookupTimeoutScheduler.shutdownNow();
+            fillRecorder.shutdown();
+            recentErrors.shutdown();
+            orderJournal.shutdown();
+            statusDispatchExecutor.shutdown();
+            callbackExecutor.shutdown();
+
+            if (ownsExecutor) {
+                try {
+                    executor.shutdown();
+                    if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                        executor.shutdownNow();
+                        log.warn("Executor did not terminate gracefully, forced shutdown");
+                    }
+                } catch (InterruptedException e) {
                     executor.shutdownNow();
-                    log.warn("Executor did not terminate gracefully, forced shutdown");
+                    log.error("Executor shutdown interrupted: {}", e.getMessage());
+                    Thread.currentThread().interrupt();
                 }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                log.error("Executor shutdown interrupted: {}", e.getMessage());
-                Thread.currentThread().interrupt();
             }
 
         } catch (Exception e) {
@@ -295,26 +733,55 @@ public class TwsEngine {
         log.info("TWS disconnection and cleanup completed");
     }
 
-    private class AccountHandler implements ApiController.IAccountHandler {
+    // reqAccountUpdates streams a single account per connection, so every managed account is covered by one
+    // account summary for the sizing and margin values plus an account update stream per account
+    private void subscribeAccountState(List<String> accounts) {
+        // ApiController keeps every registered handler, so the previous session's subscriptions go first
+        cancelAccountState();
+        AccountSummaryHandler summaryHandler = new AccountSummaryHandler();
+        accountSummaryHandler = summaryHandler;
+        controller.reqAccountSummary("All", ACCOUNT_SUMMARY_TAGS, summaryHandler);
+        for (String account : accounts) {
+            AccountUpdateMultiHandler handler = new AccountUpdateMultiHandler();
+            accountUpdateHandlers.put(account, handler);
+            controller.reqAccountUpdatesMulti(account, "", false, handler);
+        }
+        log.info("Subscribed to account summary and updates for accounts {}", accounts);
+    }
+
+    private void cancelAccountState() {
+        AccountSummaryHandler summaryHandler = accountSummaryHandler;
+        accountSummaryHandler = null;
+        if (summaryHandler != null) {
+            controller.cancelAccountSummary(summaryHandler);
+        }
+        accountUpdateHandlers.values().forEach(controller::cancelAccountUpdatesMulti);
+        accountUpdateHandlers.clear();
+    }
+
+    private class AccountSummaryHandler implements ApiController.IAccountSummaryHandler {
         @Override
-        public void accountValue(String account, String key, String value, String currency) {
-            log.debug("Account value: account={}, key={}, value={}, currency={}", account, key, value, currency);
+        public void accountSummary(String account, AccountSummaryTag tag, String value, String currency) {
+            log.debug("Account summary: account={}, tag={}, value={}, currency={}", account, tag, value, currency);
+            accountStateCache.onAccountValue(account, tag != null ? tag.name() : null, value, currency);
         }
 
         @Override
-        public void accountTime(String timeStamp) {
-            log.debug("Account time: {}", timeStamp);
+        public void accountSummaryEnd() {
+            log.info("Account summary download ended");
         }
+    }
 
+    private class AccountUpdateMultiHandler implements ApiController.IAccountUpdateMultiHandler {
         @Override
-        public void accountDownloadEnd(String account) {
-            log.info("Account download ended for: {}", account);
+        public void accountUpdateMulti(String account, String modelCode, String key, String value, String currency) {
+            log.debug("Account value: account={}, key={}, value={}, currency={}", account, key, value, currency);
+            accountStateCache.onAccountValue(account, key, value, currency);
         }
 
         @Override
-        public void updatePortfolio(Position position) {
-            log.info("Portfolio update: account={}, contract={}, position={}, avgCost={}",
-                    position.account(), position.contract().toString(), position.position(), position.averageCost());
+        public void accountUpdateMultiEnd(String account, String modelCode) {
+            log.info("Account download ended for: {}", account);
         }
     }
 
@@ -327,6 +794,7 @@ public class TwsEngine {
 
         @Override
         public void position(String account, Contract contract, Decimal pos, double avgCost) {
+            long startNanos = System.nanoTime();
             Map<String, Object> positionData = new HashMap<>();
             positionData.put("contract", contract);
             positionData.put("account", account);
@@ -364,14 +832,17 @@ public class TwsEngine {
                     positions.add(positionData);
                 }
             }
+            trackReaderCallback("position", startNanos);
         }
 
         @Override
         public void positionEnd() {
             if (future != null) {
+                List<Map<String, Object>> snapshot;
                 synchronized (positions) {
-                    future.complete(new ArrayList<>(positions));
+                    snapshot = new ArrayList<>(positions);
                 }
+                callbackExecutor.execute(() -> future.complete(snapshot));
             }
         }
     }
@@ -444,31 +915,25 @@ public class TwsEngine {
         return contract;
     }
 
-    // Core function to get closest strike
-    public Double getClosestStrike(int conId, double strike) {
-        try {
-            LocalDate today = LocalDate.now();
-            Contract contract = new Contract();
-            contract.conid(conId);
-            // Check cache
-            CachedStrikeData cached = strikeCache.get(conId);
-            if (cached != null && cached.getFetchDate().equals(today)) {
-                List<Double> cachedStrikes = cached.getStrikes();
-                Double closestStrike = cachedStrikes.stream()
-                        .filter(s -> s <= strike)
-                        .max(Double::compareTo)
-                        .orElse(strike);
-
-                log.info("Using cached strikes for conId={}: Closest strike={}, Available={}",
-                        conId, closestStrike, cachedStrikes);
-                return closestStrike;
-            }
+    // Core function to get closest strike, resolved without blocking the caller
+    public CompletableFuture<Double> getClosestStrikeAsync(int conId, double strike) {
+        LocalDate today = LocalDate.now();
+        // Check cache
+        CachedStrikeData cached = strikeCache.get(conId);
+        if (cached != null && cached.getFetchDate().equals(today)) {
+            List<Double> cachedStrikes = cached.getStrikes();
+            Double closestStrike = closestStrikeAtOrBelow(cachedStrikes, strike);
+            log.info("Using cached strikes for conId={}: Closest strike={}, Available={}",
+                    conId, closestStrike, cachedStrikes);
+            return CompletableFuture.completedFuture(closestStrike);
+        }
 
-            // Fetch contract details
-            List<ContractDetails> details = reqContractDetailsSync(contract);
+        Contract contract = new Contract();
+        contract.conid(conId);
+        return reqContractDetailsAsync(contract).thenCompose(details -> {
             if (details == null || details.isEmpty()) {
                 log.warn("No contract details found for contract ID: {}, using input strike: {}", conId, strike);
-                return strike;
+                return CompletableFuture.completedFuture(strike);
             }
 
             ContractDetails contractDetails = details.get(0);
@@ -478,70 +943,67 @@ public class TwsEngine {
 
             log.info("Contract details retrieved: symbol={}, secType={}", underlyingSymbol, underlyingSecType);
 
-            List<Double> strikes = reqSecDefOptParamsSync(underlyingSymbol, conId, underlyingSecType, futFopExchange);
-            if (strikes == null || strikes.isEmpty()) {
-                log.warn("No strikes available for contract ID: {}, using input strike: {}", conId, strike);
-                return strike;
-            }
-
-            // Cache result
-            strikeCache.put(conId, new CachedStrikeData(strikes, today));
-
-            Double closestStrike = strikes.stream()
-                    .filter(s -> s <= strike)
-                    .max(Double::compareTo)
-                    .orElse(strike);
+            return reqSecDefOptParamsAsync(underlyingSymbol, conId, underlyingSecType, futFopExchange).thenApply(strikes -> {
+                if (strikes == null || strikes.isEmpty()) {
+                    log.warn("No strikes available for contract ID: {}, using input strike: {}", conId, strike);
+                    return strike;
+                }
 
-            log.info("Fetched new strikes: Closest strike={}, All available={}", closestStrike, strikes);
-            return closestStrike;
+                // Cache result
+                strikeCache.put(conId, new CachedStrikeData(strikes, today));
 
-        } catch (Exception e) {
+                Double closestStrike = closestStrikeAtOrBelow(strikes, strike);
+                log.info("Fetched new strikes: Closest strike={}, All available={}", closestStrike, strikes);
+                return closestStrike;
+            });
+        }).exceptionally(e -> {
             log.error("Error fetching closest strike for contract ID {}: {}, using input strike: {}",
                     conId, e.getMessage(), strike);
             return strike;
-        }
+        });
+    }
+
+    private static Double closestStrikeAtOrBelow(List<Double> strikes, double strike) {
+        return strikes.stream()
+                .filter(s -> s <= strike)
+                .max(Double::compareTo)
+                .orElse(strike);
     }
 
-    // Blocking contract detail fetch
-    public List<ContractDetails> reqContractDetailsSync(Contract contract) throws InterruptedException {
-        CountDownLatch latch = new CountDownLatch(1);
-        List<ContractDetails> detailsList = new ArrayList<>();
+    // Non-blocking contract detail fetch, whatever arrived is returned if TWS does not answer in time
+    public CompletableFuture<List<ContractDetails>> reqContractDetailsAsync(Contract contract) {
+        CompletableFuture<List<ContractDetails>> future = new CompletableFuture<>();
+        List<ContractDetails> detailsList = Collections.synchronizedList(new ArrayList<>());
 
         log.info("Requesting contract details for contract: {}", contract.toString());
 
-        controller.reqContractDetails(contract, new IContractDetailsHandler() {
+        RequestTrackingController owner = dataController();
+        IContractDetailsHandler handler = new IContractDetailsHandler() {
             @Override
             public void contractDetails(List<ContractDetails> details) {
                 detailsList.addAll(details);
-            }
-
-
-            public void contractDetailsEnd() {
                 log.info("Received {} contract details for contract: {}", detailsList.size(), contract.toString());
-                latch.countDown();
+                future.complete(snapshot(detailsList));
             }
-        });
-
-        if (!latch.await(10, TimeUnit.SECONDS)) {
-            log.warn("Timeout while waiting for contract details for {}", contract.toString());
-        }
+        };
+        owner.reqContractDetails(contract, handler);
 
-        return detailsList;
+        completeOnLookupTimeout(future, () -> snapshot(detailsList),
+                "contract details for " + contract.toString(), owner, handler);
+        return future;
     }
 
-
-
-    // Blocking strike fetch
-    public List<Double> reqSecDefOptParamsSync(String underlyingSymbol, int underlyingConId,
-                                               String underlyingSecType, String futFopExchange) throws InterruptedException {
-        CountDownLatch latch = new CountDownLatch(1);
-        Set<Double> allStrikes = new HashSet<>();
+    // Non-blocking strike fetch, whatever arrived is returned if TWS does not answer in time
+    public CompletableFuture<List<Double>> reqSecDefOptParamsAsync(String underlyingSymbol, int underlyingConId,
+                                                                   String underlyingSecType, String futFopExchange) {
+        CompletableFuture<List<Double>> future = new CompletableFuture<>();
+        Set<Double> allStrikes = ConcurrentHashMap.newKeySet();
 
         log.info("Requesting option chain strikes for underlyingSymbol={}, conId={}, secType={}, exchange={}",
                 underlyingSymbol, underlyingConId, underlyingSecType, futFopExchange);
 
-        controller.reqSecDefOptParams(underlyingSymbol, futFopExchange, underlyingSecType, underlyingConId,
-                new ISecDefOptParamsReqHandler() {
+        RequestTrackingController owner = dataController();
+        ISecDefOptParamsReqHandler handler = new ISecDefOptParamsReqHandler() {
                     @Override
                     public void securityDefinitionOptionalParameter(String exchange, int underlyingConId,
                                                                     String tradingClass, String multiplier,
@@ -554,15 +1016,53 @@ public class TwsEngine {
                     @Override
                     public void securityDefinitionOptionalParameterEnd(int reqId) {
                         log.info("Completed option chain request for reqId={}, unique strikes count={}", reqId, allStrikes.size());
-                        latch.countDown();
+                        future.complete(sortedStrikes(allStrikes));
                     }
-                });
+                };
+        owner.reqSecDefOptParams(underlyingSymbol, futFopExchange, underlyingSecType, underlyingConId, handler);
+
+        completeOnLookupTimeout(future, () -> sortedStrikes(allStrikes), "option strikes", owner, handler);
+        return future;
+    }
 
-        if (!latch.await(10, TimeUnit.SECONDS)) {
-            log.warn("Timeout while waiting for option strikes");
+    // Completes the lookup with the fallback value once the timeout elapses; no thread waits for it
+    private <T> void completeOnLookupTimeout(CompletableFuture<T> future, Supplier<T> fallback, String what) {
+        completeOnLookupTimeout(future, fallback, what, null, null);
+    }
+
+    // A timed out request is reported with the error TWS sent for its id, if there was one
+    private <T> void completeOnLookupTimeout(CompletableFuture<T> future, Supplier<T> fallback, String what,
+                                             RequestTrackingController owner, Object handler) {
+        ScheduledFuture<?> timeout = lookupTimeoutScheduler.schedule(() -> {
+            int reqId = owner != null ? owner.requestIdFor(handler) : -1;
+            if (future.complete(fallback.get())) {
+                ErrorLog error = reqId >= 0
+                        ? recentErrors.recentForRequest(owner.getClientId(), reqId, TimeUnit.SECONDS.toMillis(LOOKUP_TIMEOUT_SECONDS))
+                        : null;
+                if (error != null) {
+                    log.warn("Timeout while waiting for {} (reqId {}): {} {}", what, reqId, error.getErrorCode(),
+                            error.getErrorString());
+                } else {
+                    log.warn("Timeout while waiting for {}", what);
+                }
+            }
+        }, LOOKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        future.whenComplete((result, e) -> {
+            timeout.cancel(false);
+            if (owner != null) {
+                owner.forget(handler);
+            }
+        });
+    }
+
+    private static <T> List<T> snapshot(List<T> list) {
+        synchronized (list) {
+            return new ArrayList<>(list);
         }
+    }
 
-        return allStrikes.stream().sorted().collect(Collectors.toList());
+    private static List<Double> sortedStrikes(Set<Double> strikes) {
+        return strikes.stream().sorted().collect(Collectors.toList());
     }
 
     // Internal cache structure
@@ -724,52 +1224,198 @@ public class TwsEngine {
     }
 
     public OrderExecutionResult executeOrder(Contract contract, Order order) {
+        return new OrderExecutionResult(order, submitOrderAsync(contract, order));
+    }
+
+    // Returns as soon as the order is handed to the socket; the future completes when TWS acknowledges it
+    public CompletableFuture<Order> submitOrderAsync(Contract contract, Order order) {
+        assignOrderId(order);
+        return submitOrder(contract, order);
+    }
+
+    // Take the watch before transmitting the order; taking it again keeps it alive for another TTL
+    public OrderStatusWatch watchOrderStatus(int orderId) {
+        long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(STATUS_WATCH_TTL_MINUTES);
+        OrderStatusWatch watch = statusWatches.computeIfAbsent(orderId, id -> {
+            OrderStatusWatch created = new OrderStatusWatch(expiresAt);
+            scheduleWatchExpiry(id, created);
+            return created;
+        });
+        watch.extendTo(expiresAt);
+        return watch;
+    }
+
+    private void scheduleWatchExpiry(int orderId, OrderStatusWatch watch) {
+        long delay = Math.max(0, watch.getExpiresAtMillis() - System.currentTimeMillis());
+        lookupTimeoutScheduler.schedule(() -> {
+            if (watch.getExpiresAtMillis() > System.currentTimeMillis()) {
+                scheduleWatchExpiry(orderId, watch);
+            } else if (statusWatches.remove(orderId, watch)) {
+                watch.cancel();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public int assignOrderId(Order order) {
+        if (order.orderId() == 0) {
+            order.orderId(orderIdAllocator.next());
+        }
+        return order.orderId();
+    }
+
+    // Ids come from the local allocator, so callers can record them before anything is transmitted
+    public void assignBracketIds(Order parentOrder, Order takeProfitOrder, Order stopLossOrder) {
+        List<Order> legs = bracketLegs(parentOrder, takeProfitOrder, stopLossOrder);
+        int firstId = orderIdAllocator.reserve(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            legs.get(i).orderId(firstId + i);
+            if (i > 0) {
+                legs.get(i).parentId(firstId);
+            }
+        }
+    }
+
+    public List<OrderExecutionResult> executeBracketOrder(Contract contract, Order parentOrder, Order takeProfitOrder, Order stopLossOrder) {
+        if (parentOrder.orderId() == 0) {
+            assignBracketIds(parentOrder, takeProfitOrder, stopLossOrder);
+        }
+        List<Order> legs = bracketLegs(parentOrder, takeProfitOrder, stopLossOrder);
+        List<OrderExecutionResult> results = new ArrayList<>();
+        for (int i = 0; i < legs.size(); i++) {
+            Order leg = legs.get(i);
+            // Only the last leg transmits; TWS holds the earlier legs and releases the bracket as one unit
+            leg.transmit(i == legs.size() - 1);
+            results.add(new OrderExecutionResult(leg, submitOrder(contract, leg)));
+        }
+        log.info("Submitted bracket for contract {} with parent order {} and {} child orders",
+                contract, parentOrder.orderId(), legs.size() - 1);
+        return results;
+    }
+
+    private static List<Order> bracketLegs(Order parentOrder, Order takeProfitOrder, Order stopLossOrder) {
+        List<Order> legs = new ArrayList<>();
+        legs.add(parentOrder);
+        if (takeProfitOrder != null) legs.add(takeProfitOrder);
+        if (stopLossOrder != null) legs.add(stopLossOrder);
+        return legs;
+    }
+
+    // The id is set before placement, so ApiController skips its own handler registry; acks come back through
+    // the live order feed and errors through the connection handler
+    private CompletableFuture<Order> submitOrder(Contract contract, Order order) {
+        int orderId = order.orderId();
         CompletableFuture<Order> future = new CompletableFuture<>();
-        controller.placeOrModifyOrder(contract, order, new OrderHandler(future, order, contract));
-        Order resolvedOrder = order;
-        try {
-            resolvedOrder = future.get(10, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            log.warn("Order assignment not confirmed within timeout for contract {}: {}", contract, e.getMessage());
+        orderContracts.put(orderId, contract);
+        pendingOrderAcks.put(orderId, future);
+        orderSubmitNanos.put(orderId, System.nanoTime());
+        orderJournal.placed(orderId, order.parentId(), toDouble(order.totalQuantity()),
+                order.action() + " " + order.orderType() + " " + contract.symbol());
+        future.orTimeout(ORDER_ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .whenComplete((acked, e) -> {
+                    pendingOrderAcks.remove(orderId, future);
+                    orderSubmitNanos.remove(orderId);
+                    if (e != null) {
+                        log.warn("Order {} not acknowledged by TWS: {}", orderId, e.getMessage());
+                    }
+                });
+        controller.placeOrModifyOrder(contract, order, null);
+        return future;
+    }
+
+    private void completePendingOrder(int orderId, Order order) {
+        CompletableFuture<Order> future = pendingOrderAcks.remove(orderId);
+        if (future != null) {
+            // Dependent stages run in the completing thread, so completion must not happen on the reader thread
+            callbackExecutor.execute(() -> future.complete(order));
+        }
+        Long submittedAt = orderSubmitNanos.remove(orderId);
+        if (submittedAt != null) {
+            // Kept apart per routing mode so both can be compared under the same data load
+            boolean separateLink = dataController() != controller;
+            LatencyStats stats = separateLink ? ackLatencySeparateLink : ackLatencySharedLink;
+            long ackNanos = System.nanoTime() - submittedAt;
+            stats.record(ackNanos);
+            log.info("Order {} acknowledged in {} us with data on {} connection ({})", orderId,
+                    TimeUnit.NANOSECONDS.toMicros(ackNanos), separateLink ? "a separate" : "the order", stats.summary());
         }
-        return new OrderExecutionResult(resolvedOrder, future);
     }
 
-    private class OrderHandler implements ApiController.IOrderHandler {
-        private final CompletableFuture<Order> future;
-        private final Order order;
-        private final Contract contract;
+    private static double toDouble(Decimal value) {
+        return value != null && value.value() != null ? value.value().doubleValue() : 0;
+    }
 
-        public OrderHandler(CompletableFuture<Order> future, Order order, Contract contract) {
-            this.future = future;
-            this.order = order;
-            this.contract = contract;
+    private static class LatencyStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        String summary() {
+            long n = count.sum();
+            return n == 0 ? "no samples" : String.format("n=%d avg=%d us max=%d us", n,
+                    TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / n), TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        }
+    }
+
+    private class DataConnectionHandler implements ApiController.IConnectionHandler {
+        @Override
+        public void connected() {
+            dataConnected = true;
+            log.info("Data client {} connected; market data and lookups now use it", dataClientId);
         }
 
         @Override
-        public void orderState(OrderState orderState, Order order) {
-            log.debug("Order state for {}: {}", order.orderId(), orderState.status());
-            if (!future.isDone() && order != null && order.orderId() > 0) {
-                future.complete(order);
+        public void disconnected() {
+            boolean wasConnected = dataConnected;
+            dataConnected = false;
+            log.warn("Data client {} disconnected; falling back to the order connection", dataClientId);
+            if (wasConnected && isConnected) {
+                lookupTimeoutScheduler.schedule(TwsEngine.this::connectDataController, 5, TimeUnit.SECONDS);
             }
         }
 
         @Override
-        public void orderStatus(OrderStatus status, Decimal filled, Decimal remaining, double avgFillPrice, int permId,
-                                int parentId, double lastFillPrice, int clientId, String whyHeld, double mktCapPrice) {
-            log.info("order status in orderStatus {}", status);
+        public void accountList(List<String> list) {
         }
 
         @Override
-        public void handle(int errorCode, String errorMsg) {
-            if (errorCode != 0) {
-                log.error("Order error for {}: {} - {}", order.orderId(), errorCode, errorMsg);
-                errorFunc(order.orderId(), errorCode, errorMsg, contract);
-                if (!future.isDone()) {
-                    future.completeExceptionally(new IllegalStateException(errorCode + ": " + errorMsg));
-                }
-            }
+        public void error(Exception e) {
+            log.error("Data client error: {}", e.getMessage(), e);
         }
+
+        // Data request ids come from this connection's own sequence, so they are never matched to orders
+        @Override
+        public void message(int id, int errorCode, String errorMsg, String advancedOrderRejectJson) {
+            log.warn("TWS data message: id={}, errorCode={}, msg={}", id, errorCode, errorMsg);
+            RequestTrackingController data = dataController;
+            recentErrors.record(dataClientId, id, errorCode, errorMsg, data != null ? data.contractFor(id) : null);
+        }
+
+        @Override
+        public void show(String string) {
+            log.info("TWS data show: {}", string);
+        }
+    }
+
+    public RecentErrorIndex getRecentErrors() {
+        return recentErrors;
+    }
+
+    public OrderJournal getOrderJournal() {
+        return orderJournal;
+    }
+
+    public AccountStateCache getAccountStateCache() {
+        return accountStateCache;
+    }
+
+    public OrderIdAllocator getOrderIdAllocator() {
+        return orderIdAllocator;
     }
 
     private class LiveOrderHandler implements ApiController.ILiveOrderHandler {
@@ -781,12 +1427,20 @@ public class TwsEngine {
 
         @Override
         public void openOrder(Contract contract, Order order, OrderState orderState) {
+            long startNanos = System.nanoTime();
             Map.Entry<Order, Contract> entry = new AbstractMap.SimpleEntry<>(order, contract);
+            // TWS also reports orders that just finished; those are no longer open
+            boolean finished = orderState != null && orderState.status() != null
+                    && TERMINAL_ORDER_STATUSES.contains(orderState.status().name());
             synchronized (openOrders) {
                 openOrders.removeIf(e -> e.getKey().orderId() == order.orderId());
-                openOrders.add(entry);
+                if (!finished) {
+                    openOrders.add(entry);
+                }
             }
             log.info("Updated open order: orderId={}, contract={}", order.orderId(), contract.toString());
+            completePendingOrder(order.orderId(), order);
+            trackReaderCallback("openOrder", startNanos);
         }
 
         @Override
@@ -802,33 +1456,13 @@ public class TwsEngine {
         public void orderStatus(int orderId, OrderStatus status, Decimal filled, Decimal remaining,
                                 double avgFillPrice, int permId, int parentId, double lastFillPrice,
                                 int clientId, String whyHeld, double mktCapPrice) {
+            long startNanos = System.nanoTime();
             log.info("Live order status update for order {}: {}", orderId, status);
-
-            Map<String, Object> statusData = new HashMap<>();
-            statusData.put("orderId", orderId);
-            statusData.put("status", status);
-            statusData.put("filled", filled);
-            statusData.put("remaining", remaining);
-            statusData.put("avgFillPrice", avgFillPrice);
-            statusData.put("permId", permId);
-            statusData.put("parentId", parentId);
-            statusData.put("lastFillPrice", lastFillPrice);
-            statusData.put("clientId", clientId);
-            statusData.put("whyHeld", whyHeld);
-
-            try {
-
-                if (!orderStatusQueue.offer(statusData, 5, TimeUnit.SECONDS)) {
-                    log.error("Order status queue full, dropping status update for orderId={}", orderId);
-                }
-                log.info("Enqueued order status for orderId={}: {}", orderId, status);
-                log.info("order status queue after adding orderId={} size={} orderStatusQueue={}", orderId, orderStatusQueue.size(), orderStatusQueue);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Interrupted while adding order status for orderId={}: {}", orderId, e.getMessage());
-            } catch (Exception e) {
-                log.error("Failed to add order status to queue for orderId={}: {}", orderId, e.getMessage());
-            }
+            orderJournal.statusChanged(orderId, status != null ? status.name() : null, toDouble(filled),
+                    toDouble(remaining), avgFillPrice, permId, parentId);
+            statusDispatchExecutor.execute(() -> enqueueOrderStatus(orderId, status, filled, remaining, avgFillPrice,
+                    permId, parentId, lastFillPrice, clientId, whyHeld));
+            trackReaderCallback("orderStatus", startNanos);
         }
 
         @Override
@@ -839,6 +1473,28 @@ public class TwsEngine {
 
 
 
+    private void enqueueOrderStatus(int orderId, OrderStatus status, Decimal filled, Decimal remaining,
+                                    double avgFillPrice, int permId, int parentId, double lastFillPrice,
+                                    int clientId, String whyHeld) {
+        if (status == null) {
+            log.warn("Ignoring order status without a status for orderId={}", orderId);
+            return;
+        }
+        OrderStatusEvent event = new OrderStatusEvent();
+        event.setOrderId(orderId);
+        event.setStatus(status.name());
+        event.setFilled(filled != null ? filled.toString() : null);
+        event.setRemaining(remaining != null ? remaining.toString() : null);
+        event.setAvgFillPrice(avgFillPrice);
+        event.setPermId(permId);
+        event.setParentId(parentId);
+        event.setLastFillPrice(lastFillPrice);
+        event.setClientId(clientId);
+        event.setWhyHeld(whyHeld);
+        orderStatusQueue.offer(event);
+        log.info("Enqueued order status for orderId={}: {}, queue size={}", orderId, status, orderStatusQueue.size());
+    }
+
     public void cancelTrade(Order order) {
         OrderCancel orderCancel = new OrderCancel();
         controller.cancelOrder(order.orderId(), orderCancel, new ApiController.IOrderCancelHandler() {
@@ -859,8 +1515,13 @@ public class TwsEngine {
     public CompletableFuture<Map<String, Double>> getOptionDetails(Contract contract) {
         CompletableFuture<Map<String, Double>> future = new CompletableFuture<>();
         TopMktDataHandler handler = new TopMktDataHandler(future, contract);
-        controller.reqTopMktData(contract, "", false, false, handler);
+        requestTopMktData(contract, "", handler);
         marketDataHandlers.put(contract, handler);
+        completeOnLookupTimeout(future, () -> {
+            marketDataHandlers.remove(contract, handler);
+            cancelTopMktData(handler);
+            return Map.of("bid", Double.NaN, "volume", Double.NaN);
+        }, "option market data for " + contract.toString());
         return future;
     }
 
@@ -894,7 +1555,7 @@ public class TwsEngine {
 
         private void checkCompletion() {
             if ((!Double.isNaN(bid) && !Double.isNaN(volume)) || attempts >= 50) {
-                controller.cancelTopMktData(this);
+                cancelTopMktData(this);
                 future.complete(Map.of("bid", bid, "volume", volume));
                 return;
             }
@@ -928,22 +1589,31 @@ public class TwsEngine {
     public CompletableFuture<Map<String, Double>> reqMktData(Contract contract) {
         CompletableFuture<Map<String, Double>> future = new CompletableFuture<>();
         TopMktDataHandler handler = new TopMktDataHandler(future, contract);
-        controller.reqTopMktData(contract, "100", false, false, handler);
+        requestTopMktData(contract, "100", handler);
         marketDataHandlers.put(contract, handler);
         return future;
     }
 
+    // A subscription has to be cancelled on the connection that opened it
+    private void requestTopMktData(Contract contract, String genericTicks, ApiController.ITopMktDataHandler handler) {
+        RequestTrackingController target = dataController();
+        marketDataControllers.put(handler, target);
+        target.reqTopMktData(contract, genericTicks, false, false, handler);
+    }
+
+    private void cancelTopMktData(ApiController.ITopMktDataHandler handler) {
+        RequestTrackingController owner = marketDataControllers.remove(handler);
+        (owner != null ? owner : controller).cancelTopMktData(handler);
+    }
+
     public void unsubsMktData(Contract contract) {
         ApiController.ITopMktDataHandler handler = marketDataHandlers.remove(contract);
         if (handler != null) {
-            controller.cancelTopMktData(handler);
+            cancelTopMktData(handler);
         }
-        try {
-            Thread.sleep(2000);
-            ErrorLog error = DatabaseConfig.getErrorData(contract.toString());
-            if (error != null) log.info(error.toString());
-        } catch (Exception e) {
-            log.error("Unsubscribe error: {}", e.getMessage());
+        ErrorLog error = recentErrors.recentForContract(contract);
+        if (error != null) {
+            log.info("Recent error for unsubscribed contract {}: {} {}", contract, error.getErrorCode(), error.getErrorString());
         }
     }
 
@@ -957,7 +1627,7 @@ public class TwsEngine {
         int duration = parseDuration(durationStr);
         Types.DurationUnit durationUnit = parseDurationUnit(durationStr);
         Types.BarSize barSize = Types.BarSize.valueOf(barSizeSetting.replace(" ", "_"));
-        controller.reqHistoricalData(contract, "", duration, durationUnit, barSize, Types.WhatToShow.TRADES, true, false,
+        dataController().reqHistoricalData(contract, "", duration, durationUnit, barSize, Types.WhatToShow.TRADES, true, false,
                 new HistoricalDataHandler(future));
         return future;
     }
@@ -1060,43 +1730,6 @@ public class TwsEngine {
         return data;
     }
 
-    private void sendOrderToApi(OrderClient order) {
-        try {
-            Token tokenRecord = DatabaseConfig.getToken();
-            String authToken = tokenRecord != null ? tokenRecord.getToken() : "";
-            ConnectionEntity conn = DatabaseConfig.getConnectionEntity();
-            String connName = conn != null ? conn.getConnectionName() : "";
-
-            log.debug("Sending order: {}", order);
-            Map<String, Object> data = orderToDict(order);
-
-            try (CloseableHttpClient client = HttpClients.createDefault()) {
-                HttpPost post = new HttpPost("https://api.pickmytrade.io/v5/exe_save_orders");
-                String payload = gson.toJson(data);
-                log.info("payload to send to API: {}", payload);
-                post.setEntity(new StringEntity(payload));
-                post.setHeader("Authorization", authToken + "_" + connName);
-                post.setHeader("Content-Type", "application/json");
-
-                try (CloseableHttpResponse response = client.execute(post)) {
-                    String responseText = EntityUtils.toString(response.getEntity());
-                    log.info("Order API response: {} for {}", responseText, order.getEntryId());
-
-                    Map<String, Object> updateFields = new HashMap<>();
-                    if (response.getStatusLine().getStatusCode() == 200) {
-                        log.info("Order sent successfully to API: {}", order.getEntryId());
-                    } else {
-                        log.info("Failed to send order to API: {}", order.getEntryId());
-                    }
-
-                }
-            }
-        } catch (Exception e) {
-            log.warn("Error sending order to API: {}", e.getMessage());
-            log.error("Error sending order: {}", e.getMessage(), e);
-        }
-    }
-
     private void orderStatusLoop(int orderId, OrderStatus status, Decimal filled, Decimal remaining, double avgFillPrice,
                                  int permId, int parentId, double lastFillPrice, int clientId, String whyHeld) {
         log.info("orderStatusLoop called: orderId={}, status={}, filled={}, remaining={}",
@@ -1111,10 +1744,17 @@ public class TwsEngine {
         log.debug("Converted status to string: statusStr={}", statusStr);
 
         double filledPrice = "Filled".equals(statusStr) ? avgFillPrice : 0;
+        if ("Filled".equals(statusStr) && filledPrice == 0) {
+            // Replayed transitions may carry no price; fall back to the recorded executions
+            filledPrice = fillRecorder.averagePrice(permId);
+        }
         log.debug("Calculated filledPrice: filledPrice={}", filledPrice);
 
-        // Update openOrders
+        // Update openOrders; finished orders leave it so the risk engine's open order count stays current
         synchronized (openOrders) {
+            if (TERMINAL_ORDER_STATUSES.contains(statusStr)) {
+                openOrders.removeIf(e -> e.getKey().orderId() == orderId);
+            }
             for (Map.Entry<Order, Contract> entry : openOrders) {
                 if (entry.getKey().orderId() == orderId) {
                     Order updatedOrder = entry.getKey();
@@ -1128,9 +1768,9 @@ public class TwsEngine {
 
         try {
             log.info("Retrieving order clients for orderId={}", orderId);
-            OrderClient client = DatabaseConfig.getOrderClientByParentId(String.valueOf(orderId));
-            OrderClient tpClient = DatabaseConfig.getOrderClientByTpTempId(String.valueOf(orderId));
-            OrderClient slClient = DatabaseConfig.getOrderClientBySlTempId(String.valueOf(orderId));
+            OrderClient client = OrderStores.get().findByParentId(String.valueOf(orderId), OrderClientProjection.STATUS);
+            OrderClient tpClient = OrderStores.get().findByTpTempId(String.valueOf(orderId), OrderClientProjection.STATUS);
+            OrderClient slClient = OrderStores.get().findBySlTempId(String.valueOf(orderId), OrderClientProjection.STATUS);
 
             log.debug("Retrieved clients:orderId={} client={}, tpClient={}, slClient={}", orderId,
                     client != null, tpClient != null, slClient != null);
@@ -1138,58 +1778,46 @@ public class TwsEngine {
             if (client != null) {
 
                 log.info("Updating main client for orderId={}", orderId);
-                Map<String, Object> updateFields = new HashMap<>();
-                updateFields.put("entry_status", statusStr);
-                updateFields.put("entry_filled_price", (float) filledPrice);
-                updateFields.put("error_message", "Entry order " + statusStr);
-                updateFields.put("entry_id", String.valueOf(permId));
-                updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
+                Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+                updateFields.put(OrderClientColumn.ENTRY_STATUS, statusStr);
+                updateFields.put(OrderClientColumn.ENTRY_FILLED_PRICE, (float) filledPrice);
+                updateFields.put(OrderClientColumn.ERROR_MESSAGE, "Entry order " + statusStr);
+                updateFields.put(OrderClientColumn.ENTRY_ID, String.valueOf(permId));
+                updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
                 Instant nowUtc = Instant.now();
                 LocalDateTime utcDateTime = LocalDateTime.ofInstant(nowUtc, ZoneOffset.UTC);
-                updateFields.put("created_at", utcDateTime);
-                updateFields.put("remaining", remaining != null ? (float) remaining.longValue() : 0.0f);
-                DatabaseConfig.updateOrderClient(client, updateFields);
+                updateFields.put(OrderClientColumn.CREATED_AT, utcDateTime);
+                updateFields.put(OrderClientColumn.REMAINING, remaining != null ? (float) remaining.longValue() : 0.0f);
+                OrderStores.get().update(client, updateFields);
                 log.info("Main client update persisted for orderId={}", orderId);
 
-                OrderClient client_new = DatabaseConfig.getOrderClientByParentId(String.valueOf(orderId));
-                sendOrderToApi(client_new);
-                log.info("Sending order to API for orderId={}", orderId);
-
             } else if (tpClient != null) {
                 log.info("Updating take-profit client for orderId={}", orderId);
-                Map<String, Object> updateFields = new HashMap<>();
-                updateFields.put("tp_id", String.valueOf(permId));
-                updateFields.put("tp_price", (float) filledPrice);
-                updateFields.put("tp_status", statusStr);
-                updateFields.put("tp_filled_price", (float) filledPrice);
+                Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+                updateFields.put(OrderClientColumn.TP_ID, String.valueOf(permId));
+                updateFields.put(OrderClientColumn.TP_PRICE, (float) filledPrice);
+                updateFields.put(OrderClientColumn.TP_STATUS, statusStr);
+                updateFields.put(OrderClientColumn.TP_FILLED_PRICE, (float) filledPrice);
                 Instant nowUtc = Instant.now();
                 LocalDateTime utcDateTime = LocalDateTime.ofInstant(nowUtc, ZoneOffset.UTC);
-                updateFields.put("created_at", utcDateTime);
-                updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                DatabaseConfig.updateOrderClient(tpClient, updateFields);
+                updateFields.put(OrderClientColumn.CREATED_AT, utcDateTime);
+                updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
+                OrderStores.get().update(tpClient, updateFields);
                 log.info("TP client update persisted for orderId={}", orderId);
 
-                OrderClient tpClient_new = DatabaseConfig.getOrderClientByTpTempId(String.valueOf(orderId));
-                sendOrderToApi(tpClient_new);
-                log.info("Sending order to API for orderId={}", orderId);
-
             } else if (slClient != null ) {
                 log.info("Updating stop-loss client for orderId={}", orderId);
-                Map<String, Object> updateFields = new HashMap<>();
-                updateFields.put("sl_status", statusStr);
-                updateFields.put("sl_price", (float) filledPrice);
-                updateFields.put("sl_id", String.valueOf(permId));
+                Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+                updateFields.put(OrderClientColumn.SL_STATUS, statusStr);
+                updateFields.put(OrderClientColumn.SL_PRICE, (float) filledPrice);
+                updateFields.put(OrderClientColumn.SL_ID, String.valueOf(permId));
                 Instant nowUtc = Instant.now();
                 LocalDateTime utcDateTime = LocalDateTime.ofInstant(nowUtc, ZoneOffset.UTC);
-                updateFields.put("created_at", utcDateTime);
-                updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                DatabaseConfig.updateOrderClient(slClient, updateFields);
+                updateFields.put(OrderClientColumn.CREATED_AT, utcDateTime);
+                updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
+                OrderStores.get().update(slClient, updateFields);
                 log.info("SL client update persisted for orderId={}", orderId);
 
-                OrderClient slClient_new = DatabaseConfig.getOrderClientBySlTempId(String.valueOf(orderId));
-                sendOrderToApi(slClient_new);
-                log.info("Sending order to API for orderId={}", orderId);
-
 
             } else {
                 log.warn("No valid client found or status is INACTIVE for orderId={}", orderId);
@@ -1199,36 +1827,23 @@ public class TwsEngine {
         }
     }
 
-    private void errorFunc(int reqId, int errorCode, String errorString, Contract contract) {
-        ErrorLog error = new ErrorLog();
-        error.setReqId(String.valueOf(reqId));
-        error.setErrorCode(String.valueOf(errorCode));
-        error.setErrorString(errorString);
-        error.setContract(contract != null ? contract.toString() : "");
+    // The error row itself is written by recentErrors; this only marks the order it belongs to
+    private void errorFunc(int reqId, int errorCode, String errorString) {
         try {
-            DatabaseConfig.saveErrorData(error);
-
-            OrderClient client = DatabaseConfig.getOrderClientByParentId(String.valueOf(reqId));
-            OrderClient tpClient = DatabaseConfig.getOrderClientByTpTempId(String.valueOf(reqId));
-            OrderClient slClient = DatabaseConfig.getOrderClientBySlTempId(String.valueOf(reqId));
-
-            if (!"Order Canceled - reason:".equals(errorString) && !errorString.contains("Warning")) {
-                if (client != null) {
-                    Map<String, Object> updateFields = new HashMap<>();
-                    updateFields.put("error_message", errorString);
-                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                    DatabaseConfig.updateOrderClient(client, updateFields);
-                } else if (tpClient != null) {
-                    Map<String, Object> updateFields = new HashMap<>();
-                    updateFields.put("error_message", errorString);
-                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                    DatabaseConfig.updateOrderClient(tpClient, updateFields);
-                } else if (slClient != null) {
-                    Map<String, Object> updateFields = new HashMap<>();
-                    updateFields.put("error_message", errorString);
-                    updateFields.put("sent_to_server", OrderClient.SentToServerStatus.Initialized.toString());
-                    DatabaseConfig.updateOrderClient(slClient, updateFields);
-                }
+            OrderClient client = OrderStores.get().findByParentId(String.valueOf(reqId), OrderClientProjection.STATUS);
+            OrderClient tpClient = OrderStores.get().findByTpTempId(String.valueOf(reqId), OrderClientProjection.STATUS);
+            OrderClient slClient = OrderStores.get().findBySlTempId(String.valueOf(reqId), OrderClientProjection.STATUS);
+
+            OrderClient target = client != null ? client : tpClient != null ? tpClient : slClient;
+            if (target != null && !"Order Canceled - reason:".equals(errorString) && !errorString.contains("Warning")) {
+                Map<OrderClientColumn, Object> updateFields = new EnumMap<>(OrderClientColumn.class);
+                updateFields.put(OrderClientColumn.ERROR_MESSAGE, errorString);
+                updateFields.put(OrderClientColumn.SENT_TO_SERVER, OrderClient.SentToServerStatus.Initialized.toString());
+                // Nothing reads the row back here, so the callback thread does not wait for the commit
+                OrderStores.get().updateAsync(target, updateFields).exceptionally(e -> {
+                    log.error("Error saving error message for order {}: {}", reqId, e.getMessage());
+                    return null;
+                });
             }
         } catch (SQLException e) {
             log.error("Error saving error data: {}", e.getMessage());
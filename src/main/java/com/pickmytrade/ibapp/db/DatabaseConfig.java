@@ -6,16 +6,30 @@ import org.slf4j.LoggerFactory;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.io.File;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DatabaseConfig {
     private static final Logger log = LoggerFactory.getLogger(DatabaseConfig.class);
     private static String DB_URL;
+    private static final Map<Set<OrderClientColumn>, String> ORDER_UPDATE_SQL = new ConcurrentHashMap<>();
+    private static final LongAdder ORDER_UPDATES = new LongAdder();
+    private static final LongAdder ORDER_UPDATE_NANOS = new LongAdder();
+    private static final LongAdder ORDER_UPDATE_COLUMNS_SKIPPED = new LongAdder();
 
     static {
         String platform = System.getProperty("os.name").toLowerCase();
@@ -52,9 +66,20 @@ public class DatabaseConfig {
         log.info("Set DB_URL to: {}", DB_URL);
     }
 
+    static String getDbUrl() {
+        return DB_URL;
+    }
+
+    // The database file behind DB_URL; journals and archives are kept next to it
+    public static File getDbFile() {
+        return new File(DB_URL.substring("jdbc:sqlite:".length()));
+    }
+
     public static void initializeTables() throws SQLException {
         try (java.sql.Connection conn = getConnection();
              Statement stmt = conn.createStatement()) {
+            enableIncrementalVacuum(stmt);
+
             // Create Token table
             stmt.execute("CREATE TABLE IF NOT EXISTS tokens (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -128,10 +153,147 @@ public class DatabaseConfig {
                     "error_string TEXT, " +
                     "contract TEXT, " +
                     "logged TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
+            // Create Fill table (append-only, one row per TWS execution)
+            stmt.execute("CREATE TABLE IF NOT EXISTS fills (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "exec_id TEXT NOT NULL UNIQUE, " +
+                    "order_id INTEGER, " +
+                    "perm_id INTEGER, " +
+                    "account_id TEXT, " +
+                    "symbol TEXT, " +
+                    "security_type TEXT, " +
+                    "side TEXT, " +
+                    "shares REAL, " +
+                    "price REAL, " +
+                    "cum_qty REAL, " +
+                    "avg_price REAL, " +
+                    "commission REAL, " +
+                    "commission_currency TEXT, " +
+                    "exec_time TEXT, " +
+                    "recorded_at INTEGER)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_fills_recorded_at ON fills (recorded_at)");
+
+            // Create order outbox table (one row per order change still to be synced to the server)
+            stmt.execute("CREATE TABLE IF NOT EXISTS order_outbox (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "order_client_id INTEGER NOT NULL, " +
+                    "enqueued_at INTEGER NOT NULL, " +
+                    "attempts INTEGER NOT NULL DEFAULT 0, " +
+                    "next_attempt_at INTEGER NOT NULL DEFAULT 0, " +
+                    "delivered_at INTEGER, " +
+                    "last_error TEXT)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_outbox_pending ON order_outbox (delivered_at, next_attempt_at)");
+
+            // Create order status queue table (TWS status callbacks not yet applied to order_clients)
+            stmt.execute("CREATE TABLE IF NOT EXISTS order_status_queue (" +
+                    "session TEXT NOT NULL, " +
+                    "seq INTEGER NOT NULL, " +
+                    "order_id INTEGER NOT NULL, " +
+                    "status TEXT, " +
+                    "filled TEXT, " +
+                    "remaining TEXT, " +
+                    "avg_fill_price REAL, " +
+                    "perm_id INTEGER, " +
+                    "parent_id INTEGER, " +
+                    "last_fill_price REAL, " +
+                    "client_id INTEGER, " +
+                    "why_held TEXT, " +
+                    "enqueued_at INTEGER NOT NULL, " +
+                    "PRIMARY KEY (session, seq))");
+
+            // Epoch-millisecond copies of the text timestamps, so time filters are index range scans
+            addColumnIfMissing(conn, "order_clients", "created_at_ms", "INTEGER");
+            addColumnIfMissing(conn, "error_log_data", "logged_ms", "INTEGER");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_clients_active_created ON order_clients (active, created_at_ms)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_error_log_logged_ms ON error_log_data (logged_ms)");
+            // order_clients keeps rows across logins until RetentionJob archives them, so leg lookups need indexes
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_clients_parent_id ON order_clients (parent_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_clients_tp_temp_id ON order_clients (tp_temp_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_clients_sl_temp_id ON order_clients (sl_temp_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_clients_random_id ON order_clients (orders_random_id)");
         } catch (SQLException e) {
             log.error("Failed to initialize database tables: {}", e.getMessage());
             throw e;
         }
+        CompletableFuture.runAsync(DatabaseConfig::backfillEpochColumns);
+    }
+
+    private static void addColumnIfMissing(Connection conn, String table, String column, String type) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+            log.info("Added column {}.{}", table, column);
+        }
+    }
+
+    // Fills the epoch columns of rows written before they existed, a small batch per write so live writes
+    // are never held up. order_clients.created_at is UTC; error_log_data.logged is local time.
+    // RetentionJob returns free pages with incremental_vacuum, which needs auto_vacuum INCREMENTAL. A new file
+    // takes the setting before its first table; an existing one needs a full VACUUM, run here once at startup
+    // before anything is queued on the persistence writer.
+    private static void enableIncrementalVacuum(Statement stmt) throws SQLException {
+        int autoVacuum;
+        int pageCount;
+        try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+            autoVacuum = rs.next() ? rs.getInt(1) : 0;
+        }
+        if (autoVacuum == 2) {
+            return;
+        }
+        try (ResultSet rs = stmt.executeQuery("PRAGMA page_count")) {
+            pageCount = rs.next() ? rs.getInt(1) : 0;
+        }
+        stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+        if (pageCount > 0) {
+            long startNanos = System.nanoTime();
+            stmt.execute("VACUUM");
+            log.info("Switched database to incremental vacuum in {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    public static void backfillEpochColumns() {
+        long startNanos = System.nanoTime();
+        try {
+            int orders = backfillInBatches("UPDATE order_clients SET created_at_ms = " +
+                    "CAST(strftime('%s', REPLACE(substr(created_at, 1, 19), 'T', ' ')) AS INTEGER) * 1000 " +
+                    "WHERE id IN (SELECT id FROM order_clients WHERE created_at_ms IS NULL AND created_at IS NOT NULL LIMIT 500)");
+            int errors = backfillInBatches("UPDATE error_log_data SET logged_ms = " +
+                    "CAST(strftime('%s', REPLACE(substr(logged, 1, 19), 'T', ' '), 'utc') AS INTEGER) * 1000 " +
+                    "WHERE id IN (SELECT id FROM error_log_data WHERE logged_ms IS NULL AND logged IS NOT NULL LIMIT 500)");
+            if (orders > 0 || errors > 0) {
+                log.info("Backfilled epoch timestamps for {} orders and {} error rows in {} ms", orders, errors,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+        } catch (SQLException e) {
+            log.error("Epoch timestamp backfill failed, rows keep using the text fallback: {}", e.getMessage());
+        }
+    }
+
+    private static int backfillInBatches(String sql) throws SQLException {
+        int total = 0;
+        int[] updated = new int[1];
+        do {
+            PersistenceWriter.get().execute(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    updated[0] = stmt.executeUpdate(sql);
+                }
+            });
+            total += updated[0];
+        } while (updated[0] > 0);
+        return total;
+    }
+
+    static Long toEpochMillisUtc(Object value) {
+        return value instanceof LocalDateTime ? ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli() : null;
     }
 
     // Get a connection to the SQLite database
@@ -285,15 +447,15 @@ public class DatabaseConfig {
 
     // OrderClient methods (replacing OrderClientRepository)
     public static void saveOrderClient(OrderClient orderClient) throws SQLException {
-        try (java.sql.Connection conn = getConnection()) {
+        PersistenceWriter.get().execute(conn -> {
             String sql = "INSERT INTO order_clients (orders_random_id, client_db_id, client_name, account_id, " +
                     "risk_multiplier, fund, max_stock, contract_json, order_json, remaining, rm_option, rm_stock, " +
                     "quantity, parent_id, entry_price, entry_filled_price, tp_filled_price, tp_price, sl_price, " +
                     "strike, entry_id, tp_temp_id, sl_temp_id, tp_id, sl_id, entry_status, tp_status, sl_status, " +
                     "active, created_at, symbol, exchange, currency, maturity_date, trading_class, call_put, action, " +
-                    "security_type, order_type, price, error_message, sent_to_server) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    "security_type, order_type, price, error_message, sent_to_server, created_at_ms) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
                 pstmt.setString(1, orderClient.getOrdersRandomId());
                 pstmt.setObject(2, orderClient.getClientDbId());
                 pstmt.setString(3, orderClient.getClientName());
@@ -336,57 +498,58 @@ public class DatabaseConfig {
                 pstmt.setString(40, orderClient.getPrice());
                 pstmt.setString(41, orderClient.getErrorMessage());
                 pstmt.setString(42, orderClient.getSentToServer() != null ? orderClient.getSentToServer().name() : "Initialized");
+                orderClient.setCreatedAtMs(toEpochMillisUtc(orderClient.getCreatedAt()));
+                pstmt.setObject(43, orderClient.getCreatedAtMs());
                 pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        orderClient.setId(keys.getInt(1));
+                    }
+                }
+                if (orderClient.getId() != null) {
+                    enqueueOutbox(conn, orderClient.getId());
+                }
             }
-        }
+        });
     }
 
     public static OrderClient getOrderClientByParentId(String parentId) throws SQLException {
-        try (java.sql.Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM order_clients WHERE parent_id = ? LIMIT 1")) {
-            pstmt.setString(1, parentId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
-                }
-            }
-        }
-        return null;
+        return getOrderClientByParentId(parentId, OrderClientProjection.FULL);
+    }
+
+    public static OrderClient getOrderClientByParentId(String parentId, OrderClientProjection projection) throws SQLException {
+        return findOrderClient(OrderClientColumn.PARENT_ID, parentId, projection);
     }
 
     public static OrderClient getOrderClientByOrderRandomId(String orderRandomId) throws SQLException {
-        try (java.sql.Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM order_clients WHERE orders_random_id = ? LIMIT 1")) {
-            pstmt.setString(1, orderRandomId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
-                }
-            }
-        }
-        return null;
+        return findOrderClient(OrderClientColumn.ORDERS_RANDOM_ID, orderRandomId, OrderClientProjection.FULL);
     }
 
     public static OrderClient getOrderClientByTpTempId(String tpTempId) throws SQLException {
-        try (java.sql.Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM order_clients WHERE tp_temp_id = ? LIMIT 1")) {
-            pstmt.setString(1, tpTempId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
-                }
-            }
-        }
-        return null;
+        return getOrderClientByTpTempId(tpTempId, OrderClientProjection.FULL);
+    }
+
+    public static OrderClient getOrderClientByTpTempId(String tpTempId, OrderClientProjection projection) throws SQLException {
+        return findOrderClient(OrderClientColumn.TP_TEMP_ID, tpTempId, projection);
     }
 
     public static OrderClient getOrderClientBySlTempId(String slTempId) throws SQLException {
+        return getOrderClientBySlTempId(slTempId, OrderClientProjection.FULL);
+    }
+
+    public static OrderClient getOrderClientBySlTempId(String slTempId, OrderClientProjection projection) throws SQLException {
+        return findOrderClient(OrderClientColumn.SL_TEMP_ID, slTempId, projection);
+    }
+
+    // Newest row first: TWS order ids can repeat across logins once the id sequence is reset
+    private static OrderClient findOrderClient(OrderClientColumn column, String value, OrderClientProjection projection) throws SQLException {
         try (java.sql.Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM order_clients WHERE sl_temp_id = ? LIMIT 1")) {
-            pstmt.setString(1, slTempId);
+             PreparedStatement pstmt = conn.prepareStatement("SELECT " + projection.selectList() +
+                     " FROM order_clients WHERE " + column.columnName() + " = ? ORDER BY id DESC LIMIT 1")) {
+            pstmt.setString(1, value);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
+                    return projection.map(rs);
                 }
             }
         }
@@ -396,67 +559,44 @@ public class DatabaseConfig {
     public static List<OrderClient> getAllOrderClients(long time_var) throws SQLException {
         List<OrderClient> orders = new ArrayList<>();
 
-        // Convert milliseconds to LocalDateTime
-        LocalDateTime dateTime = Instant.ofEpochMilli(time_var)
-                .atZone(ZoneId.systemDefault())
-                .toLocalDateTime();
-
-        String sql = "SELECT * FROM order_clients WHERE active = 1 AND datetime(created_at) >= datetime(?)";
+        // Range scan on (active, created_at_ms); rows the backfill has not reached yet fall back to the text column
+        String sql = "SELECT " + OrderClientProjection.FULL.selectList() + " FROM order_clients WHERE active = 1 AND (created_at_ms >= ? " +
+                "OR (created_at_ms IS NULL AND datetime(created_at) >= datetime(?)))";
+        LocalDateTime dateTime = Instant.ofEpochMilli(time_var).atOffset(ZoneOffset.UTC).toLocalDateTime();
 
+        long startNanos = System.nanoTime();
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, dateTime.toString().replace('T', ' ')); // format: "YYYY-MM-DD HH:MM:SS"
+            pstmt.setLong(1, time_var);
+            pstmt.setString(2, dateTime.toString().replace('T', ' ')); // format: "YYYY-MM-DD HH:MM:SS"
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    orders.add(mapResultSetToOrderClient(rs));
+                    orders.add(OrderClientProjection.FULL.map(rs));
                 }
             }
         }
+        log.info("Loaded {} active orders created since {} in {} ms", orders.size(), time_var,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
 
         return orders;
     }
 
     public static List<OrderClient> getOrderClientsNotSentToServer() throws SQLException {
         List<OrderClient> orders = new ArrayList<>();
-
         try (Connection conn = getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(
-                     "SELECT *, " +
-                             "strftime('%s', REPLACE(substr(created_at, 1, 19), 'T', ' ')) AS created_ts, " +
-                             "strftime('%s', 'now', '-20 seconds') AS cutoff_ts " +
-                             "FROM order_clients " +
-                             "WHERE LOWER(TRIM(sent_to_server)) != 'pushed' " +
-                             "   OR strftime('%s', REPLACE(substr(created_at, 1, 19), 'T', ' ')) >= strftime('%s', 'now', '-20 seconds')"
-             )) {
-
+                     "SELECT " + OrderClientProjection.FULL.selectList() +
+                             " FROM order_clients WHERE sent_to_server IS NULL OR sent_to_server != 'Pushed'")) {
             while (rs.next()) {
-                // Debug log
-                String createdAt = rs.getString("created_at");
-                String createdTs = rs.getString("created_ts");
-                String cutoffTs = rs.getString("cutoff_ts");
-                String sentToServer = rs.getString("sent_to_server");
-
-                System.out.println("created_at: " + createdAt +
-                        " | created_ts: " + createdTs +
-                        " | cutoff_ts: " + cutoffTs +
-                        " | sent_to_server: " + sentToServer);
-
-                orders.add(mapResultSetToOrderClient(rs));
+                orders.add(OrderClientProjection.FULL.map(rs));
             }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            throw e;
         }
-
         return orders;
     }
 
-
-
     public static void emptyOrderClientTable() {
         String sql = "DELETE FROM order_clients";
         try (Connection conn = getConnection(); // Assume getConnection() is a method that returns a database connection
@@ -470,7 +610,28 @@ public class DatabaseConfig {
     }
 
 
-    public static void updateOrderClient(OrderClient orderClient, Map<String, Object> updateFields) throws SQLException {
+    // Changes only the given columns. Values equal to what the caller's OrderClient already holds are left out,
+    // and the SQL for each distinct column set is built once.
+    public static void updateOrderClient(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) throws SQLException {
+        PersistenceWriter.SqlWork work = orderUpdate(orderClient, updateFields);
+        if (work == null) {
+            return;
+        }
+        try {
+            PersistenceWriter.get().execute(work);
+        } catch (SQLException e) {
+            log.error("Failed to update OrderClient id={}: {}", orderClient.getId(), e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    // Completes when the update is committed, for callers that do not read the row back
+    public static CompletableFuture<Void> updateOrderClientAsync(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
+        PersistenceWriter.SqlWork work = orderUpdate(orderClient, updateFields);
+        return work != null ? PersistenceWriter.get().submit(work) : CompletableFuture.completedFuture(null);
+    }
+
+    private static PersistenceWriter.SqlWork orderUpdate(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
         if (orderClient == null) {
             log.error("OrderClient is null, cannot update");
             throw new IllegalArgumentException("OrderClient cannot be null");
@@ -478,34 +639,42 @@ public class DatabaseConfig {
 
         if (orderClient.getId() <= 0) {
             log.warn("Invalid OrderClient ID: {}, skipping update", orderClient.getId());
-            return;
+            return null;
         }
 
         if (updateFields == null || updateFields.isEmpty()) {
             log.warn("Update fields dictionary is null or empty, skipping update");
-            return;
+            return null;
         }
 
-        log.info("Attempting to update OrderClient with id={}", orderClient.getId());
-        log.debug("Update fields provided: {}", updateFields);
-
-        StringBuilder sql = new StringBuilder("UPDATE order_clients SET ");
-        int index = 1;
-        for (String key : updateFields.keySet()) {
-            if (index > 1) {
-                sql.append(", ");
+        long startNanos = System.nanoTime();
+        Map<OrderClientColumn, Object> changed = new EnumMap<>(OrderClientColumn.class);
+        for (Map.Entry<OrderClientColumn, Object> entry : updateFields.entrySet()) {
+            if (!sameValue(entry.getKey().currentValue(orderClient), entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
             }
-            sql.append(key).append(" = ?");
-            index++;
         }
-        sql.append(" WHERE id = ?");
+        ORDER_UPDATE_COLUMNS_SKIPPED.add(updateFields.size() - changed.size());
+        if (changed.containsKey(OrderClientColumn.CREATED_AT)) {
+            changed.put(OrderClientColumn.CREATED_AT_MS, toEpochMillisUtc(changed.get(OrderClientColumn.CREATED_AT)));
+        }
+        if (changed.isEmpty()) {
+            log.debug("No changed fields for OrderClient id={}, skipping update", orderClient.getId());
+            recordOrderUpdate(System.nanoTime() - startNanos);
+            return null;
+        }
 
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
-            index = 1;
-            for (Map.Entry<String, Object> entry : updateFields.entrySet()) {
-                pstmt.setObject(index, entry.getValue());
-                index++;
+        log.info("Attempting to update OrderClient with id={}", orderClient.getId());
+        log.debug("Update fields provided: {}, changed: {}", updateFields, changed.keySet());
+
+        String sql = ORDER_UPDATE_SQL.computeIfAbsent(EnumSet.copyOf(changed.keySet()), DatabaseConfig::buildOrderUpdateSql);
+        return conn -> {
+            // Prepared once per column set on the writer connection and reused, so it is not closed here
+            PreparedStatement pstmt = PersistenceWriter.get().prepareCached(conn, sql);
+            // EnumMap iterates in declaration order, the same order the cached SQL was built in
+            int index = 1;
+            for (Object value : changed.values()) {
+                bindValue(pstmt, index++, value);
             }
             pstmt.setInt(index, orderClient.getId());
 
@@ -514,93 +683,450 @@ public class DatabaseConfig {
                 log.warn("No rows updated for OrderClient id={}", orderClient.getId());
             } else {
                 log.info("Successfully updated {} row(s) for OrderClient id={}", rowsAffected, orderClient.getId());
+                if (needsServerSync(updateFields)) {
+                    enqueueOutbox(conn, orderClient.getId());
+                }
             }
-        } catch (SQLException e) {
-            log.error("Failed to update OrderClient id={}: {}", orderClient.getId(), e.getMessage(), e);
-            throw e;
+            recordOrderUpdate(System.nanoTime() - startNanos);
+        };
+    }
+
+    private static String buildOrderUpdateSql(Set<OrderClientColumn> columns) {
+        StringBuilder sql = new StringBuilder("UPDATE order_clients SET ");
+        boolean first = true;
+        for (OrderClientColumn column : columns) {
+            if (!first) {
+                sql.append(", ");
+            }
+            sql.append(column.columnName()).append(" = ?");
+            first = false;
+        }
+        return sql.append(" WHERE id = ?").toString();
+    }
+
+    private static boolean sameValue(Object current, Object value) {
+        if (current == null || value == null) {
+            return current == value;
+        }
+        if (current instanceof Number && value instanceof Number) {
+            return ((Number) current).doubleValue() == ((Number) value).doubleValue();
+        }
+        if (current instanceof Enum || value instanceof Enum) {
+            return String.valueOf(current).equals(String.valueOf(value));
+        }
+        return current.equals(value);
+    }
+
+    private static void bindValue(PreparedStatement pstmt, int index, Object value) throws SQLException {
+        if (value == null) {
+            pstmt.setNull(index, Types.NULL);
+        } else if (value instanceof String) {
+            pstmt.setString(index, (String) value);
+        } else if (value instanceof Integer) {
+            pstmt.setInt(index, (Integer) value);
+        } else if (value instanceof Long) {
+            pstmt.setLong(index, (Long) value);
+        } else if (value instanceof Float || value instanceof Double) {
+            pstmt.setDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            pstmt.setBoolean(index, (Boolean) value);
+        } else if (value instanceof Enum) {
+            pstmt.setString(index, ((Enum<?>) value).name());
+        } else {
+            pstmt.setObject(index, value);
+        }
+    }
+
+    private static void recordOrderUpdate(long nanos) {
+        ORDER_UPDATES.increment();
+        ORDER_UPDATE_NANOS.add(nanos);
+        long total = ORDER_UPDATES.sum();
+        if (total % 1000 == 0) {
+            log.info("Order updates: {} run, avg {} us, {} unchanged columns skipped, {} cached statements",
+                    total, TimeUnit.NANOSECONDS.toMicros(ORDER_UPDATE_NANOS.sum() / total),
+                    ORDER_UPDATE_COLUMNS_SKIPPED.sum(), ORDER_UPDATE_SQL.size());
+        }
+    }
+
+    // Every change is synced except the sent_to_server bookkeeping the outbox sender writes itself
+    private static boolean needsServerSync(Map<OrderClientColumn, Object> updateFields) {
+        Object sentToServer = updateFields.get(OrderClientColumn.SENT_TO_SERVER);
+        return sentToServer == null || OrderClient.SentToServerStatus.Initialized.toString().equals(String.valueOf(sentToServer));
+    }
+
+    private static void enqueueOutbox(Connection conn, int orderClientId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO order_outbox (order_client_id, enqueued_at) VALUES (?, ?)")) {
+            pstmt.setInt(1, orderClientId);
+            pstmt.setLong(2, System.currentTimeMillis());
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Order outbox methods
+    public static List<OutboxEntry> getPendingOutbox(long now, int limit) throws SQLException {
+        List<OutboxEntry> entries = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT id, order_client_id, enqueued_at, attempts, next_attempt_at FROM order_outbox " +
+                             "WHERE delivered_at IS NULL AND next_attempt_at <= ? ORDER BY id LIMIT ?")) {
+            pstmt.setLong(1, now);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    OutboxEntry entry = new OutboxEntry();
+                    entry.setId(rs.getLong("id"));
+                    entry.setOrderClientId(rs.getInt("order_client_id"));
+                    entry.setEnqueuedAt(rs.getLong("enqueued_at"));
+                    entry.setAttempts(rs.getInt("attempts"));
+                    entry.setNextAttemptAt(rs.getLong("next_attempt_at"));
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    public static Map<Integer, OrderClient> getOrderClientsByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, OrderClient> orders = new HashMap<>();
+        if (ids.isEmpty()) {
+            return orders;
+        }
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(OrderClientProjection.FULL.selectList()).append(" FROM order_clients WHERE id IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Integer id : ids) {
+                pstmt.setInt(index++, id);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    OrderClient order = OrderClientProjection.FULL.map(rs);
+                    orders.put(order.getId(), order);
+                }
+            }
+        }
+        return orders;
+    }
+
+    // Marks outbox rows delivered and their orders Pushed in one transaction
+    public static void markOutboxDelivered(List<OutboxEntry> entries, long deliveredAt) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement outbox = conn.prepareStatement(
+                    "UPDATE order_outbox SET delivered_at = ?, attempts = attempts + 1, last_error = NULL WHERE id = ?");
+                 PreparedStatement order = conn.prepareStatement(
+                         "UPDATE order_clients SET sent_to_server = ? WHERE id = ?")) {
+                for (OutboxEntry entry : entries) {
+                    outbox.setLong(1, deliveredAt);
+                    outbox.setLong(2, entry.getId());
+                    outbox.addBatch();
+                    order.setString(1, OrderClient.SentToServerStatus.Pushed.toString());
+                    order.setInt(2, entry.getOrderClientId());
+                    order.addBatch();
+                }
+                outbox.executeBatch();
+                order.executeBatch();
+            }
+        });
+    }
+
+    // Failed rows keep their place in the outbox and are retried from nextAttemptAt
+    public static void rescheduleOutbox(List<OutboxEntry> entries, String error) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
         }
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement outbox = conn.prepareStatement(
+                    "UPDATE order_outbox SET attempts = ?, next_attempt_at = ?, last_error = ? WHERE id = ?");
+                 PreparedStatement order = conn.prepareStatement(
+                         "UPDATE order_clients SET sent_to_server = ? WHERE id = ?")) {
+                for (OutboxEntry entry : entries) {
+                    outbox.setInt(1, entry.getAttempts());
+                    outbox.setLong(2, entry.getNextAttemptAt());
+                    outbox.setString(3, error);
+                    outbox.setLong(4, entry.getId());
+                    outbox.addBatch();
+                    order.setString(1, OrderClient.SentToServerStatus.Failed.toString());
+                    order.setInt(2, entry.getOrderClientId());
+                    order.addBatch();
+                }
+                outbox.executeBatch();
+                order.executeBatch();
+            }
+        });
     }
 
-    private static OrderClient mapResultSetToOrderClient(ResultSet rs) throws SQLException {
-        OrderClient oc = new OrderClient();
-        oc.setId(rs.getInt("id"));
-        oc.setOrdersRandomId(rs.getString("orders_random_id"));
-        oc.setClientDbId(rs.getObject("client_db_id") != null ? rs.getInt("client_db_id") : null);
-        oc.setClientName(rs.getString("client_name"));
-        oc.setAccountId(rs.getString("account_id"));
-        oc.setRiskMultiplier(rs.getString("risk_multiplier"));
-        oc.setFund(rs.getObject("fund") != null ? rs.getFloat("fund") : null);
-        oc.setMaxStock(rs.getObject("max_stock") != null ? rs.getInt("max_stock") : null);
-        oc.setContractJson(rs.getString("contract_json"));
-        oc.setOrderJson(rs.getString("order_json"));
-        oc.setRemaining(rs.getFloat("remaining"));
-        oc.setRmOption(rs.getObject("rm_option") != null ? rs.getFloat("rm_option") : null);
-        oc.setRmStock(rs.getObject("rm_stock") != null ? rs.getFloat("rm_stock") : null);
-        oc.setQuantity(rs.getObject("quantity") != null ? rs.getInt("quantity") : null);
-        oc.setParentId(rs.getString("parent_id"));
-        oc.setEntryPrice(rs.getObject("entry_price") != null ? rs.getFloat("entry_price") : null);
-        oc.setEntryFilledPrice(rs.getObject("entry_filled_price") != null ? rs.getFloat("entry_filled_price") : null);
-        oc.setTpFilledPrice(rs.getObject("tp_filled_price") != null ? rs.getFloat("tp_filled_price") : null);
-        oc.setTpPrice(rs.getObject("tp_price") != null ? rs.getFloat("tp_price") : null);
-        oc.setSlPrice(rs.getObject("sl_price") != null ? rs.getFloat("sl_price") : null);
-        oc.setStrike(rs.getString("strike"));
-        oc.setEntryId(rs.getString("entry_id"));
-        oc.setTpTempId(rs.getString("tp_temp_id"));
-        oc.setSlTempId(rs.getString("sl_temp_id"));
-        oc.setTpId(rs.getString("tp_id"));
-        oc.setSlId(rs.getString("sl_id"));
-        oc.setEntryStatus(rs.getString("entry_status"));
-        oc.setTpStatus(rs.getString("tp_status"));
-        oc.setSlStatus(rs.getString("sl_status"));
-        oc.setActive(rs.getObject("active") != null ? rs.getBoolean("active") : null);
-        oc.setCreatedAt(rs.getObject("created_at", LocalDateTime.class));
-        oc.setSymbol(rs.getString("symbol"));
-        oc.setExchange(rs.getString("exchange"));
-        oc.setCurrency(rs.getString("currency"));
-        oc.setMaturityDate(rs.getString("maturity_date"));
-        oc.setTradingClass(rs.getString("trading_class"));
-        oc.setCallPut(rs.getString("call_put"));
-        oc.setAction(rs.getString("action"));
-        oc.setSecurityType(rs.getString("security_type"));
-        oc.setOrderType(rs.getString("order_type"));
-        oc.setPrice(rs.getString("price"));
-        oc.setErrorMessage(rs.getString("error_message"));
-        oc.setSentToServer(rs.getString("sent_to_server") != null ?
-                OrderClient.SentToServerStatus.valueOf(rs.getString("sent_to_server")) : OrderClient.SentToServerStatus.Initialized);
-        return oc;
+    // Orders written before the outbox existed, or left unsent, get one pending entry each
+    public static int enqueueUnsentOrders() throws SQLException {
+        int[] enqueued = new int[1];
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO order_outbox (order_client_id, enqueued_at) " +
+                            "SELECT id, ? FROM order_clients WHERE (sent_to_server IS NULL OR sent_to_server != 'Pushed') " +
+                            "AND id NOT IN (SELECT order_client_id FROM order_outbox WHERE delivered_at IS NULL)")) {
+                pstmt.setLong(1, System.currentTimeMillis());
+                enqueued[0] = pstmt.executeUpdate();
+            }
+        });
+        return enqueued[0];
+    }
+
+    public static int countPendingOutbox() throws SQLException {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM order_outbox WHERE delivered_at IS NULL")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public static int pruneDeliveredOutbox(long deliveredBefore) throws SQLException {
+        int[] pruned = new int[1];
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM order_outbox WHERE delivered_at IS NOT NULL AND delivered_at < ?")) {
+                pstmt.setLong(1, deliveredBefore);
+                pruned[0] = pstmt.executeUpdate();
+            }
+        });
+        return pruned[0];
+    }
+
+    // Order status queue methods
+    public static CompletableFuture<Void> saveStatusEvent(OrderStatusEvent event) {
+        return PersistenceWriter.get().submit(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO order_status_queue (session, seq, order_id, status, filled, remaining, " +
+                            "avg_fill_price, perm_id, parent_id, last_fill_price, client_id, why_held, enqueued_at) " +
+                            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                pstmt.setString(1, event.getSession());
+                pstmt.setLong(2, event.getSeq());
+                pstmt.setInt(3, event.getOrderId());
+                pstmt.setString(4, event.getStatus());
+                pstmt.setString(5, event.getFilled());
+                pstmt.setString(6, event.getRemaining());
+                pstmt.setDouble(7, event.getAvgFillPrice());
+                pstmt.setInt(8, event.getPermId());
+                pstmt.setInt(9, event.getParentId());
+                pstmt.setDouble(10, event.getLastFillPrice());
+                pstmt.setInt(11, event.getClientId());
+                pstmt.setString(12, event.getWhyHeld());
+                pstmt.setLong(13, event.getEnqueuedAt());
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    public static CompletableFuture<Void> deleteStatusEvent(String session, long seq) {
+        return PersistenceWriter.get().submit(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM order_status_queue WHERE session = ? AND seq = ?")) {
+                pstmt.setString(1, session);
+                pstmt.setLong(2, seq);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    public static List<OrderStatusEvent> getStatusEvents(String session, long fromSeq, int limit) throws SQLException {
+        List<OrderStatusEvent> events = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT * FROM order_status_queue WHERE session = ? AND seq >= ? ORDER BY seq LIMIT ?")) {
+            pstmt.setString(1, session);
+            pstmt.setLong(2, fromSeq);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    OrderStatusEvent event = new OrderStatusEvent();
+                    event.setSession(rs.getString("session"));
+                    event.setSeq(rs.getLong("seq"));
+                    event.setOrderId(rs.getInt("order_id"));
+                    event.setStatus(rs.getString("status"));
+                    event.setFilled(rs.getString("filled"));
+                    event.setRemaining(rs.getString("remaining"));
+                    event.setAvgFillPrice(rs.getDouble("avg_fill_price"));
+                    event.setPermId(rs.getInt("perm_id"));
+                    event.setParentId(rs.getInt("parent_id"));
+                    event.setLastFillPrice(rs.getDouble("last_fill_price"));
+                    event.setClientId(rs.getInt("client_id"));
+                    event.setWhyHeld(rs.getString("why_held"));
+                    event.setEnqueuedAt(rs.getLong("enqueued_at"));
+                    events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    public static long getMaxStatusEventSeq(String session) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT MAX(seq) FROM order_status_queue WHERE session = ?")) {
+            pstmt.setString(1, session);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    // Statuses this old belong to an earlier TWS login whose order ids may since have been reused
+    public static int pruneStatusEvents(String session, long enqueuedBefore) throws SQLException {
+        int[] pruned = new int[1];
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM order_status_queue WHERE session = ? AND enqueued_at < ?")) {
+                pstmt.setString(1, session);
+                pstmt.setLong(2, enqueuedBefore);
+                pruned[0] = pstmt.executeUpdate();
+            }
+        });
+        return pruned[0];
     }
 
     // ErrorLog methods (replacing ErrorLogRepository)
     public static void saveErrorData(ErrorLog errorLog) throws SQLException {
-        try (java.sql.Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                     "INSERT INTO error_log_data (req_id, error_code, error_string, contract, logged) VALUES (?, ?, ?, ?, ?)")) {
-            pstmt.setString(1, errorLog.getReqId());
-            pstmt.setString(2, errorLog.getErrorCode());
-            pstmt.setString(3, errorLog.getErrorString());
-            pstmt.setString(4, errorLog.getContract());
-            pstmt.setObject(5, errorLog.getLogged());
-            pstmt.executeUpdate();
+        saveErrorLogs(List.of(errorLog));
+    }
+
+    public static void saveErrorLogs(List<ErrorLog> errorLogs) throws SQLException {
+        if (errorLogs.isEmpty()) {
+            return;
         }
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO error_log_data (req_id, error_code, error_string, contract, logged, logged_ms) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (ErrorLog errorLog : errorLogs) {
+                    pstmt.setString(1, errorLog.getReqId());
+                    pstmt.setString(2, errorLog.getErrorCode());
+                    pstmt.setString(3, errorLog.getErrorString());
+                    pstmt.setString(4, errorLog.getContract());
+                    pstmt.setObject(5, errorLog.getLogged());
+                    // logged is local time (LocalDateTime.now())
+                    pstmt.setObject(6, errorLog.getLogged() != null
+                            ? errorLog.getLogged().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : null);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        });
     }
 
     public static ErrorLog getErrorData(String contract) throws SQLException {
         try (java.sql.Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM error_log_data WHERE contract = ? LIMIT 1")) {
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT " + ERROR_LOG_COLUMNS + " FROM error_log_data WHERE contract = ? LIMIT 1")) {
             pstmt.setString(1, contract);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    ErrorLog errorLog = new ErrorLog();
-                    errorLog.setId(rs.getInt("id"));
-                    errorLog.setReqId(rs.getString("req_id"));
-                    errorLog.setErrorCode(rs.getString("error_code"));
-                    errorLog.setErrorString(rs.getString("error_string"));
-                    errorLog.setContract(rs.getString("contract"));
-                    errorLog.setLogged(rs.getObject("logged", LocalDateTime.class));
-                    return errorLog;
+                    return mapErrorLog(rs);
                 }
             }
         }
         return null;
     }
-}
\ No newline at end of file
+
+    // Column order read by mapErrorLog
+    public static final String ERROR_LOG_COLUMNS = "id, req_id, error_code, error_string, contract, logged";
+
+    public static ErrorLog mapErrorLog(ResultSet rs) throws SQLException {
+        ErrorLog errorLog = new ErrorLog();
+        errorLog.setId(rs.getInt(1));
+        errorLog.setReqId(rs.getString(2));
+        errorLog.setErrorCode(rs.getString(3));
+        errorLog.setErrorString(rs.getString(4));
+        errorLog.setContract(rs.getString(5));
+        errorLog.setLogged(rs.getObject(6, LocalDateTime.class));
+        return errorLog;
+    }
+
+    // Fill methods
+    public static void saveFills(List<Fill> fills) throws SQLException {
+        if (fills.isEmpty()) {
+            return;
+        }
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT OR IGNORE INTO fills (exec_id, order_id, perm_id, account_id, symbol, security_type, side, " +
+                            "shares, price, cum_qty, avg_price, commission, commission_currency, exec_time, recorded_at) " +
+                            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Fill fill : fills) {
+                    pstmt.setString(1, fill.getExecId());
+                    pstmt.setObject(2, fill.getOrderId());
+                    pstmt.setObject(3, fill.getPermId());
+                    pstmt.setString(4, fill.getAccount());
+                    pstmt.setString(5, fill.getSymbol());
+                    pstmt.setString(6, fill.getSecType());
+                    pstmt.setString(7, fill.getSide());
+                    pstmt.setObject(8, fill.getShares());
+                    pstmt.setObject(9, fill.getPrice());
+                    pstmt.setObject(10, fill.getCumQty());
+                    pstmt.setObject(11, fill.getAvgPrice());
+                    pstmt.setObject(12, fill.getCommission());
+                    pstmt.setString(13, fill.getCommissionCurrency());
+                    pstmt.setString(14, fill.getExecTime());
+                    pstmt.setObject(15, fill.getRecordedAt());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        });
+    }
+
+    // Commission reports can arrive after the execution row was flushed
+    public static void updateFillCommissions(List<Fill> fills) throws SQLException {
+        if (fills.isEmpty()) {
+            return;
+        }
+        PersistenceWriter.get().execute(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE fills SET commission = ?, commission_currency = ? WHERE exec_id = ? AND commission IS NULL")) {
+                for (Fill fill : fills) {
+                    pstmt.setObject(1, fill.getCommission());
+                    pstmt.setString(2, fill.getCommissionCurrency());
+                    pstmt.setString(3, fill.getExecId());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        });
+    }
+
+    public static List<Fill> getFillsSince(long recordedAfterMillis) throws SQLException {
+        List<Fill> fills = new ArrayList<>();
+        try (java.sql.Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT * FROM fills WHERE recorded_at >= ? ORDER BY recorded_at")) {
+            pstmt.setLong(1, recordedAfterMillis);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Fill fill = new Fill();
+                    fill.setExecId(rs.getString("exec_id"));
+                    fill.setOrderId(rs.getObject("order_id") != null ? rs.getInt("order_id") : null);
+                    fill.setPermId(rs.getObject("perm_id") != null ? rs.getInt("perm_id") : null);
+                    fill.setAccount(rs.getString("account_id"));
+                    fill.setSymbol(rs.getString("symbol"));
+                    fill.setSecType(rs.getString("security_type"));
+                    fill.setSide(rs.getString("side"));
+                    fill.setShares(rs.getObject("shares") != null ? rs.getDouble("shares") : null);
+                    fill.setPrice(rs.getObject("price") != null ? rs.getDouble("price") : null);
+                    fill.setCumQty(rs.getObject("cum_qty") != null ? rs.getDouble("cum_qty") : null);
+                    fill.setAvgPrice(rs.getObject("avg_price") != null ? rs.getDouble("avg_price") : null);
+                    fill.setCommission(rs.getObject("commission") != null ? rs.getDouble("commission") : null);
+                    fill.setCommissionCurrency(rs.getString("commission_currency"));
+                    fill.setExecTime(rs.getString("exec_time"));
+                    fill.setRecordedAt(rs.getObject("recorded_at") != null ? rs.getLong("recorded_at") : null);
+                    fills.add(fill);
+                }
+            }
+        }
+        return fills;
+    }
+}
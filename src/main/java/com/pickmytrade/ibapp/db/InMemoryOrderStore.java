@@ -0,0 +1,213 @@
+package com.pickmytrade.ibapp.db;
+
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Order rows held only in memory, for benchmarks and simulations of the trade path without SQLite. Nothing
+// survives a restart and nothing is queued for the server. Rows are copied in and out, so callers see the
+// same detached objects the SQLite store hands them. Lookups return the highest id among equal keys, as the
+// SQLite lookups do.
+public class InMemoryOrderStore implements OrderStore {
+    private final Map<Integer, OrderClient> rows = new HashMap<>();
+    private final Index byParentId = new Index(OrderClient::getParentId);
+    private final Index byTpTempId = new Index(OrderClient::getTpTempId);
+    private final Index bySlTempId = new Index(OrderClient::getSlTempId);
+    private final Index byOrderRandomId = new Index(OrderClient::getOrdersRandomId);
+    private final List<Index> indexes = List.of(byParentId, byTpTempId, bySlTempId, byOrderRandomId);
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public void save(OrderClient orderClient) {
+        orderClient.setId(nextId.incrementAndGet());
+        if (orderClient.getCreatedAtMs() == null) {
+            orderClient.setCreatedAtMs(DatabaseConfig.toEpochMillisUtc(orderClient.getCreatedAt()));
+        }
+        put(orderClient);
+    }
+
+    @Override
+    public void update(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
+        if (orderClient == null) {
+            throw new IllegalArgumentException("OrderClient cannot be null");
+        }
+        if (updateFields == null || updateFields.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            OrderClient stored = orderClient.getId() != null ? rows.get(orderClient.getId()) : null;
+            if (stored == null) {
+                return;
+            }
+            unindex(stored);
+            for (Map.Entry<OrderClientColumn, Object> entry : updateFields.entrySet()) {
+                entry.getKey().apply(stored, entry.getValue());
+            }
+            if (updateFields.containsKey(OrderClientColumn.CREATED_AT)) {
+                stored.setCreatedAtMs(DatabaseConfig.toEpochMillisUtc(updateFields.get(OrderClientColumn.CREATED_AT)));
+            }
+            index(stored);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAsync(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
+        update(orderClient, updateFields);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public OrderClient findByParentId(String parentId, OrderClientProjection projection) {
+        return lookup(byParentId, parentId);
+    }
+
+    @Override
+    public OrderClient findByTpTempId(String tpTempId, OrderClientProjection projection) {
+        return lookup(byTpTempId, tpTempId);
+    }
+
+    @Override
+    public OrderClient findBySlTempId(String slTempId, OrderClientProjection projection) {
+        return lookup(bySlTempId, slTempId);
+    }
+
+    @Override
+    public OrderClient findByOrderRandomId(String orderRandomId) {
+        return lookup(byOrderRandomId, orderRandomId);
+    }
+
+    @Override
+    public synchronized List<OrderClient> findActiveSince(long createdAfterMillis) {
+        List<OrderClient> orders = new ArrayList<>();
+        for (OrderClient oc : rows.values()) {
+            if (Boolean.TRUE.equals(oc.getActive()) && createdMillis(oc) >= createdAfterMillis) {
+                orders.add(copy(oc));
+            }
+        }
+        orders.sort(Comparator.comparingInt(OrderClient::getId));
+        return orders;
+    }
+
+    @Override
+    public synchronized List<OrderClient> findNotSentToServer() {
+        List<OrderClient> orders = new ArrayList<>();
+        for (OrderClient oc : rows.values()) {
+            if (oc.getSentToServer() != OrderClient.SentToServerStatus.Pushed) {
+                orders.add(copy(oc));
+            }
+        }
+        orders.sort(Comparator.comparingInt(OrderClient::getId));
+        return orders;
+    }
+
+    @Override
+    public synchronized void clear() {
+        rows.clear();
+        indexes.forEach(index -> index.ids.clear());
+    }
+
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    // Stores a copy of a row that already has its id, e.g. one read from SQLite
+    synchronized void put(OrderClient orderClient) {
+        OrderClient previous = rows.get(orderClient.getId());
+        if (previous != null) {
+            unindex(previous);
+        }
+        OrderClient stored = copy(orderClient);
+        rows.put(stored.getId(), stored);
+        index(stored);
+    }
+
+    synchronized void putIfAbsent(OrderClient orderClient) {
+        if (!rows.containsKey(orderClient.getId())) {
+            put(orderClient);
+        }
+    }
+
+    synchronized OrderClient get(int id) {
+        OrderClient oc = rows.get(id);
+        return oc != null ? copy(oc) : null;
+    }
+
+    synchronized boolean contains(int id) {
+        return rows.containsKey(id);
+    }
+
+    private OrderClient lookup(Index index, String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (this) {
+            Integer id = index.ids.get(key);
+            OrderClient oc = id != null ? rows.get(id) : null;
+            return oc != null ? copy(oc) : null;
+        }
+    }
+
+    private void index(OrderClient oc) {
+        for (Index index : indexes) {
+            String key = index.key.apply(oc);
+            if (key != null) {
+                index.ids.merge(key, oc.getId(), Math::max);
+            }
+        }
+    }
+
+    // When the row that held a key lets go of it, the next highest id with that key takes over
+    private void unindex(OrderClient oc) {
+        for (Index index : indexes) {
+            String key = index.key.apply(oc);
+            if (key == null || !index.ids.remove(key, oc.getId())) {
+                continue;
+            }
+            for (OrderClient other : rows.values()) {
+                if (!other.getId().equals(oc.getId()) && key.equals(index.key.apply(other))) {
+                    index.ids.merge(key, other.getId(), Math::max);
+                }
+            }
+        }
+    }
+
+    private static long createdMillis(OrderClient oc) {
+        if (oc.getCreatedAtMs() != null) {
+            return oc.getCreatedAtMs();
+        }
+        LocalDateTime createdAt = oc.getCreatedAt();
+        return createdAt != null ? createdAt.toInstant(ZoneOffset.UTC).toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    static OrderClient copy(OrderClient source) {
+        OrderClient copy = new OrderClient();
+        copy.setId(source.getId());
+        for (OrderClientColumn column : OrderClientColumn.values()) {
+            column.apply(copy, column.currentValue(source));
+        }
+        return copy;
+    }
+
+    private static final class Index {
+        final Function<OrderClient, String> key;
+        final Map<String, Integer> ids = new HashMap<>();
+
+        Index(Function<OrderClient, String> key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.pickmytrade.ibapp.db;
+
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// Updatable order_clients columns. Column names in SQL only ever come from here. Each column knows how to
+// read its current value from an OrderClient, so unchanged values can be left out of an update, how to
+// read itself from a result set by position, so OrderClientProjection can map any column list, and how to
+// apply an update value to an OrderClient for stores that keep rows in memory.
+public enum OrderClientColumn {
+    ORDERS_RANDOM_ID("orders_random_id", OrderClient::getOrdersRandomId,
+            (oc, rs, i) -> oc.setOrdersRandomId(rs.getString(i)),
+            (oc, v) -> oc.setOrdersRandomId(toText(v))),
+    CLIENT_DB_ID("client_db_id", OrderClient::getClientDbId,
+            (oc, rs, i) -> oc.setClientDbId(getInteger(rs, i)),
+            (oc, v) -> oc.setClientDbId(toInteger(v))),
+    CLIENT_NAME("client_name", OrderClient::getClientName,
+            (oc, rs, i) -> oc.setClientName(rs.getString(i)),
+            (oc, v) -> oc.setClientName(toText(v))),
+    ACCOUNT_ID("account_id", OrderClient::getAccountId,
+            (oc, rs, i) -> oc.setAccountId(rs.getString(i)),
+            (oc, v) -> oc.setAccountId(toText(v))),
+    RISK_MULTIPLIER("risk_multiplier", OrderClient::getRiskMultiplier,
+            (oc, rs, i) -> oc.setRiskMultiplier(rs.getString(i)),
+            (oc, v) -> oc.setRiskMultiplier(toText(v))),
+    FUND("fund", OrderClient::getFund,
+            (oc, rs, i) -> oc.setFund(getFloat(rs, i)),
+            (oc, v) -> oc.setFund(toFloat(v))),
+    MAX_STOCK("max_stock", OrderClient::getMaxStock,
+            (oc, rs, i) -> oc.setMaxStock(getInteger(rs, i)),
+            (oc, v) -> oc.setMaxStock(toInteger(v))),
+    CONTRACT_JSON("contract_json", OrderClient::getContractJson,
+            (oc, rs, i) -> oc.setContractJson(rs.getString(i)),
+            (oc, v) -> oc.setContractJson(toText(v))),
+    ORDER_JSON("order_json", OrderClient::getOrderJson,
+            (oc, rs, i) -> oc.setOrderJson(rs.getString(i)),
+            (oc, v) -> oc.setOrderJson(toText(v))),
+    REMAINING("remaining", OrderClient::getRemaining,
+            (oc, rs, i) -> oc.setRemaining(rs.getFloat(i)),
+            (oc, v) -> oc.setRemaining(toFloat(v))),
+    RM_OPTION("rm_option", OrderClient::getRmOption,
+            (oc, rs, i) -> oc.setRmOption(getFloat(rs, i)),
+            (oc, v) -> oc.setRmOption(toFloat(v))),
+    RM_STOCK("rm_stock", OrderClient::getRmStock,
+            (oc, rs, i) -> oc.setRmStock(getFloat(rs, i)),
+            (oc, v) -> oc.setRmStock(toFloat(v))),
+    QUANTITY("quantity", OrderClient::getQuantity,
+            (oc, rs, i) -> oc.setQuantity(getInteger(rs, i)),
+            (oc, v) -> oc.setQuantity(toInteger(v))),
+    PARENT_ID("parent_id", OrderClient::getParentId,
+            (oc, rs, i) -> oc.setParentId(rs.getString(i)),
+            (oc, v) -> oc.setParentId(toText(v))),
+    ENTRY_PRICE("entry_price", OrderClient::getEntryPrice,
+            (oc, rs, i) -> oc.setEntryPrice(getFloat(rs, i)),
+            (oc, v) -> oc.setEntryPrice(toFloat(v))),
+    ENTRY_FILLED_PRICE("entry_filled_price", OrderClient::getEntryFilledPrice,
+            (oc, rs, i) -> oc.setEntryFilledPrice(getFloat(rs, i)),
+            (oc, v) -> oc.setEntryFilledPrice(toFloat(v))),
+    TP_FILLED_PRICE("tp_filled_price", OrderClient::getTpFilledPrice,
+            (oc, rs, i) -> oc.setTpFilledPrice(getFloat(rs, i)),
+            (oc, v) -> oc.setTpFilledPrice(toFloat(v))),
+    TP_PRICE("tp_price", OrderClient::getTpPrice,
+            (oc, rs, i) -> oc.setTpPrice(getFloat(rs, i)),
+            (oc, v) -> oc.setTpPrice(toFloat(v))),
+    SL_PRICE("sl_price", OrderClient::getSlPrice,
+            (oc, rs, i) -> oc.setSlPrice(getFloat(rs, i)),
+            (oc, v) -> oc.setSlPrice(toFloat(v))),
+    STRIKE("strike", OrderClient::getStrike,
+            (oc, rs, i) -> oc.setStrike(rs.getString(i)),
+            (oc, v) -> oc.setStrike(toText(v))),
+    ENTRY_ID("entry_id", OrderClient::getEntryId,
+            (oc, rs, i) -> oc.setEntryId(rs.getString(i)),
+            (oc, v) -> oc.setEntryId(toText(v))),
+    TP_TEMP_ID("tp_temp_id", OrderClient::getTpTempId,
+            (oc, rs, i) -> oc.setTpTempId(rs.getString(i)),
+            (oc, v) -> oc.setTpTempId(toText(v))),
+    SL_TEMP_ID("sl_temp_id", OrderClient::getSlTempId,
+            (oc, rs, i) -> oc.setSlTempId(rs.getString(i)),
+            (oc, v) -> oc.setSlTempId(toText(v))),
+    TP_ID("tp_id", OrderClient::getTpId,
+            (oc, rs, i) -> oc.setTpId(rs.getString(i)),
+            (oc, v) -> oc.setTpId(toText(v))),
+    SL_ID("sl_id", OrderClient::getSlId,
+            (oc, rs, i) -> oc.setSlId(rs.getString(i)),
+            (oc, v) -> oc.setSlId(toText(v))),
+    ENTRY_STATUS("entry_status", OrderClient::getEntryStatus,
+            (oc, rs, i) -> oc.setEntryStatus(rs.getString(i)),
+            (oc, v) -> oc.setEntryStatus(toText(v))),
+    TP_STATUS("tp_status", OrderClient::getTpStatus,
+            (oc, rs, i) -> oc.setTpStatus(rs.getString(i)),
+            (oc, v) -> oc.setTpStatus(toText(v))),
+    SL_STATUS("sl_status", OrderClient::getSlStatus,
+            (oc, rs, i) -> oc.setSlStatus(rs.getString(i)),
+            (oc, v) -> oc.setSlStatus(toText(v))),
+    ACTIVE("active", OrderClient::getActive,
+            (oc, rs, i) -> oc.setActive(getBoolean(rs, i)),
+            (oc, v) -> oc.setActive(toBoolean(v))),
+    CREATED_AT("created_at", OrderClient::getCreatedAt,
+            (oc, rs, i) -> oc.setCreatedAt(rs.getObject(i, LocalDateTime.class)),
+            (oc, v) -> oc.setCreatedAt((LocalDateTime) v)),
+    CREATED_AT_MS("created_at_ms", OrderClient::getCreatedAtMs,
+            (oc, rs, i) -> oc.setCreatedAtMs(getLong(rs, i)),
+            (oc, v) -> oc.setCreatedAtMs(toLong(v))),
+    SYMBOL("symbol", OrderClient::getSymbol,
+            (oc, rs, i) -> oc.setSymbol(rs.getString(i)),
+            (oc, v) -> oc.setSymbol(toText(v))),
+    EXCHANGE("exchange", OrderClient::getExchange,
+            (oc, rs, i) -> oc.setExchange(rs.getString(i)),
+            (oc, v) -> oc.setExchange(toText(v))),
+    CURRENCY("currency", OrderClient::getCurrency,
+            (oc, rs, i) -> oc.setCurrency(rs.getString(i)),
+            (oc, v) -> oc.setCurrency(toText(v))),
+    MATURITY_DATE("maturity_date", OrderClient::getMaturityDate,
+            (oc, rs, i) -> oc.setMaturityDate(rs.getString(i)),
+            (oc, v) -> oc.setMaturityDate(toText(v))),
+    TRADING_CLASS("trading_class", OrderClient::getTradingClass,
+            (oc, rs, i) -> oc.setTradingClass(rs.getString(i)),
+            (oc, v) -> oc.setTradingClass(toText(v))),
+    CALL_PUT("call_put", OrderClient::getCallPut,
+            (oc, rs, i) -> oc.setCallPut(rs.getString(i)),
+            (oc, v) -> oc.setCallPut(toText(v))),
+    ACTION("action", OrderClient::getAction,
+            (oc, rs, i) -> oc.setAction(rs.getString(i)),
+            (oc, v) -> oc.setAction(toText(v))),
+    SECURITY_TYPE("security_type", OrderClient::getSecurityType,
+            (oc, rs, i) -> oc.setSecurityType(rs.getString(i)),
+            (oc, v) -> oc.setSecurityType(toText(v))),
+    ORDER_TYPE("order_type", OrderClient::getOrderType,
+            (oc, rs, i) -> oc.setOrderType(rs.getString(i)),
+            (oc, v) -> oc.setOrderType(toText(v))),
+    PRICE("price", OrderClient::getPrice,
+            (oc, rs, i) -> oc.setPrice(rs.getString(i)),
+            (oc, v) -> oc.setPrice(toText(v))),
+    ERROR_MESSAGE("error_message", OrderClient::getErrorMessage,
+            (oc, rs, i) -> oc.setErrorMessage(rs.getString(i)),
+            (oc, v) -> oc.setErrorMessage(toText(v))),
+    SENT_TO_SERVER("sent_to_server", OrderClient::getSentToServer,
+            (oc, rs, i) -> oc.setSentToServer(getSentToServer(rs, i)),
+            (oc, v) -> oc.setSentToServer(toSentToServer(v)));
+
+    @FunctionalInterface
+    interface ColumnReader {
+        void read(OrderClient orderClient, ResultSet rs, int index) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface ColumnWriter {
+        void write(OrderClient orderClient, Object value);
+    }
+
+    private static final Map<String, OrderClientColumn> BY_NAME = new HashMap<>();
+
+    static {
+        for (OrderClientColumn column : values()) {
+            BY_NAME.put(column.columnName, column);
+        }
+    }
+
+    private final String columnName;
+    private final Function<OrderClient, Object> currentValue;
+    private final ColumnReader reader;
+    private final ColumnWriter writer;
+
+    OrderClientColumn(String columnName, Function<OrderClient, Object> currentValue, ColumnReader reader,
+                      ColumnWriter writer) {
+        this.columnName = columnName;
+        this.currentValue = currentValue;
+        this.reader = reader;
+        this.writer = writer;
+    }
+
+    public String columnName() {
+        return columnName;
+    }
+
+    public Object currentValue(OrderClient orderClient) {
+        return currentValue.apply(orderClient);
+    }
+
+    void read(OrderClient orderClient, ResultSet rs, int index) throws SQLException {
+        reader.read(orderClient, rs, index);
+    }
+
+    // Sets the field from an update value, accepting the same value types bindValue() writes to SQLite
+    public void apply(OrderClient orderClient, Object value) {
+        writer.write(orderClient, value);
+    }
+
+    public static OrderClientColumn fromColumnName(String columnName) {
+        OrderClientColumn column = BY_NAME.get(columnName);
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown order_clients column: " + columnName);
+        }
+        return column;
+    }
+
+    // Typed getters return 0 for NULL; wasNull() tells the two apart without a second getObject() call
+    private static Integer getInteger(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Long getLong(ResultSet rs, int index) throws SQLException {
+        long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Float getFloat(ResultSet rs, int index) throws SQLException {
+        float value = rs.getFloat(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Boolean getBoolean(ResultSet rs, int index) throws SQLException {
+        boolean value = rs.getBoolean(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static OrderClient.SentToServerStatus getSentToServer(ResultSet rs, int index) throws SQLException {
+        String value = rs.getString(index);
+        return value != null ? OrderClient.SentToServerStatus.valueOf(value) : OrderClient.SentToServerStatus.Initialized;
+    }
+
+    private static String toText(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static Integer toInteger(Object value) {
+        return value != null ? ((Number) value).intValue() : null;
+    }
+
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+
+    private static Float toFloat(Object value) {
+        return value != null ? ((Number) value).floatValue() : null;
+    }
+
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return (Boolean) value;
+    }
+
+    // Callers pass the status either as the enum or as its name
+    private static OrderClient.SentToServerStatus toSentToServer(Object value) {
+        if (value == null || value instanceof OrderClient.SentToServerStatus) {
+            return (OrderClient.SentToServerStatus) value;
+        }
+        return OrderClient.SentToServerStatus.valueOf(value.toString());
+    }
+}
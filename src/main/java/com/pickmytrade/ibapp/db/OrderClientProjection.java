@@ -0,0 +1,62 @@
+package com.pickmytrade.ibapp.db;
+
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.Set;
+
+// A fixed list of order_clients columns and the mapper for it. Queries select exactly these columns, id first,
+// and rows are read by position. A projection narrower than FULL leaves the other fields of the OrderClient
+// null, so callers may only compare or update columns the projection loaded.
+public final class OrderClientProjection {
+    public static final OrderClientProjection FULL = new OrderClientProjection(EnumSet.allOf(OrderClientColumn.class));
+
+    // What the TWS status and error handlers read and write on an order's legs
+    public static final OrderClientProjection STATUS = new OrderClientProjection(EnumSet.of(
+            OrderClientColumn.REMAINING,
+            OrderClientColumn.PARENT_ID,
+            OrderClientColumn.ENTRY_FILLED_PRICE,
+            OrderClientColumn.TP_FILLED_PRICE,
+            OrderClientColumn.TP_PRICE,
+            OrderClientColumn.SL_PRICE,
+            OrderClientColumn.ENTRY_ID,
+            OrderClientColumn.TP_TEMP_ID,
+            OrderClientColumn.SL_TEMP_ID,
+            OrderClientColumn.TP_ID,
+            OrderClientColumn.SL_ID,
+            OrderClientColumn.ENTRY_STATUS,
+            OrderClientColumn.TP_STATUS,
+            OrderClientColumn.SL_STATUS,
+            OrderClientColumn.CREATED_AT,
+            OrderClientColumn.CREATED_AT_MS,
+            OrderClientColumn.ERROR_MESSAGE,
+            OrderClientColumn.SENT_TO_SERVER));
+
+    private final OrderClientColumn[] columns;
+    private final String selectList;
+
+    private OrderClientProjection(Set<OrderClientColumn> columns) {
+        this.columns = columns.toArray(new OrderClientColumn[0]);
+        StringBuilder list = new StringBuilder("id");
+        for (OrderClientColumn column : this.columns) {
+            list.append(", ").append(column.columnName());
+        }
+        this.selectList = list.toString();
+    }
+
+    // For "SELECT " + selectList() + " FROM order_clients ..."
+    public String selectList() {
+        return selectList;
+    }
+
+    public OrderClient map(ResultSet rs) throws SQLException {
+        OrderClient oc = new OrderClient();
+        oc.setId(rs.getInt(1));
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(oc, rs, i + 2);
+        }
+        return oc;
+    }
+}
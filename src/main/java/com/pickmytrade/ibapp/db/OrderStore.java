@@ -0,0 +1,49 @@
+package com.pickmytrade.ibapp.db;
+
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// order_clients as the trade path uses it. The engine behind it is picked once at startup by OrderStores, so
+// the trade path can run against SQLite, purely in memory, or in memory with SQLite written behind.
+public interface OrderStore {
+    String name();
+
+    // Sets the id on the given OrderClient
+    void save(OrderClient orderClient) throws SQLException;
+
+    // Same contract as DatabaseConfig.updateOrderClient: values equal to what orderClient holds are skipped
+    void update(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) throws SQLException;
+
+    CompletableFuture<Void> updateAsync(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields);
+
+    OrderClient findByParentId(String parentId, OrderClientProjection projection) throws SQLException;
+
+    OrderClient findByTpTempId(String tpTempId, OrderClientProjection projection) throws SQLException;
+
+    OrderClient findBySlTempId(String slTempId, OrderClientProjection projection) throws SQLException;
+
+    OrderClient findByOrderRandomId(String orderRandomId) throws SQLException;
+
+    // Active orders created at or after the given epoch millis
+    List<OrderClient> findActiveSince(long createdAfterMillis) throws SQLException;
+
+    List<OrderClient> findNotSentToServer() throws SQLException;
+
+    void clear();
+
+    default OrderClient findByParentId(String parentId) throws SQLException {
+        return findByParentId(parentId, OrderClientProjection.FULL);
+    }
+
+    default OrderClient findByTpTempId(String tpTempId) throws SQLException {
+        return findByTpTempId(tpTempId, OrderClientProjection.FULL);
+    }
+
+    default OrderClient findBySlTempId(String slTempId) throws SQLException {
+        return findBySlTempId(slTempId, OrderClientProjection.FULL);
+    }
+}
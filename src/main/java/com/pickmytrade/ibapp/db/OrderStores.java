@@ -0,0 +1,47 @@
+package com.pickmytrade.ibapp.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// The OrderStore the trade path uses, picked once from the pickmytrade.orderStore system property:
+// sqlite (default), memory or write-behind. set() replaces it, e.g. for a simulation harness.
+public final class OrderStores {
+    private static final Logger log = LoggerFactory.getLogger(OrderStores.class);
+    private static volatile OrderStore store;
+
+    private OrderStores() {
+    }
+
+    public static OrderStore get() {
+        OrderStore current = store;
+        if (current == null) {
+            synchronized (OrderStores.class) {
+                if (store == null) {
+                    store = create(System.getProperty("pickmytrade.orderStore", "sqlite"));
+                    log.info("Order store: {}", store.name());
+                }
+                current = store;
+            }
+        }
+        return current;
+    }
+
+    public static void set(OrderStore orderStore) {
+        store = orderStore;
+        log.info("Order store replaced with {}", orderStore.name());
+    }
+
+    static OrderStore create(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "memory":
+                return new InMemoryOrderStore();
+            case "write-behind":
+                return new WriteBehindOrderStore();
+            case "sqlite":
+                return new SqliteOrderStore();
+            default:
+                log.warn("Unknown order store '{}', using sqlite", name);
+                return new SqliteOrderStore();
+        }
+    }
+}
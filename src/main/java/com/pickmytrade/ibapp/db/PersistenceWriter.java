@@ -0,0 +1,270 @@
+package com.pickmytrade.ibapp.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Single writer for the SQLite database. Writes from every thread are queued and applied by one thread on one
+// connection, grouped into a transaction per batch so a burst pays for one commit instead of one per write.
+// Each write runs under its own savepoint, so a failing write is rolled back without failing the rest of its batch.
+public class PersistenceWriter {
+    private static final Logger log = LoggerFactory.getLogger(PersistenceWriter.class);
+    private static final long MAX_BATCH_WAIT_MS = 5;
+    private static final int MAX_BATCH_SIZE = 200;
+    private static final long STATS_LOG_INTERVAL_MS = 60_000;
+
+    private static final PersistenceWriter INSTANCE = new PersistenceWriter();
+
+    @FunctionalInterface
+    public interface SqlWork {
+        void run(Connection conn) throws SQLException;
+    }
+
+    private static final class WriteOp {
+        final SqlWork work;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        WriteOp(SqlWork work) {
+            this.work = work;
+        }
+    }
+
+    private final BlockingQueue<WriteOp> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private Connection conn;
+    private String connUrl;
+    // Prepared on conn and reused across batches; only touched by the writer thread, closed with the connection
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private long lastStatsLogMillis = System.currentTimeMillis();
+    private volatile long lastWriteMillis = System.currentTimeMillis();
+
+    private PersistenceWriter() {
+        writerThread = new Thread(this::run, "persistence-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public static PersistenceWriter get() {
+        return INSTANCE;
+    }
+
+    // Completes once the write is committed
+    public CompletableFuture<Void> submit(SqlWork work) {
+        WriteOp op = new WriteOp(work);
+        if (!running) {
+            op.done.completeExceptionally(new SQLException("Persistence writer is stopped"));
+            return op.done;
+        }
+        queue.add(op);
+        return op.done;
+    }
+
+    // Blocks until the write is committed, for callers that read their own write right after
+    public void execute(SqlWork work) throws SQLException {
+        if (Thread.currentThread() == writerThread) {
+            // Nested write from inside a batch; it joins the current transaction
+            work.run(conn);
+            return;
+        }
+        try {
+            submit(work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    // For SqlWork running on the writer: a statement kept open on the writer connection for reuse, so the
+    // caller must not close it
+    public PreparedStatement prepareCached(Connection c, String sql) throws SQLException {
+        if (Thread.currentThread() != writerThread || c != conn) {
+            throw new IllegalStateException("Cached statements are only available to writes on the persistence writer");
+        }
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = c.prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    public long getBatchCount() { return batches.sum(); }
+    public long getWriteCount() { return writes.sum(); }
+    public long getMaxBatchSize() { return maxBatchSize.get(); }
+    public long getLastWriteMillis() { return lastWriteMillis; }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count > 0 ? (double) writes.sum() / count : 0;
+    }
+
+    public long getAverageCommitMicros() {
+        long count = batches.sum();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMicros(commitNanos.sum() / count) : 0;
+    }
+
+    // Applies whatever is queued, then stops the writer thread
+    public void shutdown() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logStats();
+    }
+
+    private void run() {
+        List<WriteOp> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                WriteOp first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_WAIT_MS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    WriteOp next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutdown() interrupts to stop waiting; anything already taken is still written
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+            if (System.currentTimeMillis() - lastStatsLogMillis >= STATS_LOG_INTERVAL_MS) {
+                logStats();
+            }
+        }
+        closeConnection();
+    }
+
+    private void writeBatch(List<WriteOp> batch) {
+        List<WriteOp> applied = new ArrayList<>(batch.size());
+        try {
+            Connection c = connection();
+            c.setAutoCommit(false);
+            for (WriteOp op : batch) {
+                Savepoint savepoint = c.setSavepoint();
+                try {
+                    op.work.run(c);
+                    c.releaseSavepoint(savepoint);
+                    applied.add(op);
+                } catch (Exception e) {
+                    c.rollback(savepoint);
+                    op.done.completeExceptionally(e);
+                }
+            }
+            long commitStart = System.nanoTime();
+            c.commit();
+            recordBatch(batch.size(), System.nanoTime() - commitStart);
+            applied.forEach(op -> op.done.complete(null));
+        } catch (SQLException e) {
+            log.error("Persistence batch of {} writes failed: {}", batch.size(), e.getMessage(), e);
+            try {
+                if (conn != null) {
+                    conn.rollback();
+                }
+            } catch (SQLException rollbackError) {
+                log.error("Rollback after failed batch failed: {}", rollbackError.getMessage());
+            }
+            // The connection may be unusable; the next batch opens a fresh one
+            closeConnection();
+            for (WriteOp op : batch) {
+                op.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Reopens when DatabaseConfig switches to another database file
+    private Connection connection() throws SQLException {
+        String url = DatabaseConfig.getDbUrl();
+        if (conn != null && url != null && url.equals(connUrl) && !conn.isClosed()) {
+            return conn;
+        }
+        closeConnection();
+        conn = DatabaseConfig.getConnection();
+        connUrl = url;
+        try (Statement stmt = conn.createStatement()) {
+            // Readers on other connections may briefly hold the lock
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        log.info("Persistence writer connected to {}", url);
+        return conn;
+    }
+
+    private void closeConnection() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                log.warn("Error closing cached statement: {}", e.getMessage());
+            }
+        }
+        statements.clear();
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                log.warn("Error closing persistence writer connection: {}", e.getMessage());
+            }
+            conn = null;
+            connUrl = null;
+        }
+    }
+
+    private void recordBatch(int size, long nanos) {
+        lastWriteMillis = System.currentTimeMillis();
+        batches.increment();
+        writes.add(size);
+        commitNanos.add(nanos);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+        maxCommitNanos.accumulateAndGet(nanos, Math::max);
+        log.debug("Committed batch of {} writes in {} us", size, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private void logStats() {
+        lastStatsLogMillis = System.currentTimeMillis();
+        if (batches.sum() == 0) {
+            return;
+        }
+        log.info("Persistence writer: {} writes in {} commits, avg batch {}, max batch {}, avg commit {} us, max commit {} us",
+                writes.sum(), batches.sum(), String.format("%.1f", getAverageBatchSize()), maxBatchSize.get(),
+                getAverageCommitMicros(), TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get()));
+    }
+}
@@ -0,0 +1,253 @@
+package com.pickmytrade.ibapp.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the live database down to the working set. Closed orders older than the retention age move into one
+// archive database per month next to the live file, old error rows are deleted, and freed pages are returned
+// with incremental vacuum while nothing is being written. Settings come from system properties
+// (pickmytrade.retention.*).
+public class RetentionJob {
+    private static final Logger log = LoggerFactory.getLogger(RetentionJob.class);
+    private static final int BATCH_SIZE = 500;
+    private static final long CHECK_INTERVAL_MINUTES = 5;
+    private static final long QUIET_PERIOD_MS = 30_000;
+    private static final int VACUUM_PAGES_PER_RUN = 2000;
+
+    // Terminal TWS statuses; an order is closed once its entry and every protective leg it has are terminal
+    private static final String TERMINAL = "('Filled', 'Cancelled', 'ApiCancelled', 'Inactive')";
+    private static final String CLOSED_ORDER =
+            "created_at_ms IS NOT NULL AND created_at_ms < ? " +
+            "AND (entry_status IS NULL OR entry_status = '' OR entry_status IN " + TERMINAL + ") " +
+            "AND (tp_temp_id IS NULL OR tp_temp_id = '' OR tp_status IN " + TERMINAL + ") " +
+            "AND (sl_temp_id IS NULL OR sl_temp_id = '' OR sl_status IN " + TERMINAL + ") " +
+            "AND id NOT IN (SELECT order_client_id FROM order_outbox WHERE delivered_at IS NULL)";
+
+    private final long orderRetentionMs;
+    private final long errorLogRetentionMs;
+    private final long archiveIntervalMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private long lastArchiveMillis;
+
+    public RetentionJob(int orderRetentionDays, int errorLogRetentionDays, int archiveIntervalMinutes) {
+        this.orderRetentionMs = TimeUnit.DAYS.toMillis(orderRetentionDays);
+        this.errorLogRetentionMs = TimeUnit.DAYS.toMillis(errorLogRetentionDays);
+        this.archiveIntervalMs = TimeUnit.MINUTES.toMillis(archiveIntervalMinutes);
+        log.info("Retention: orders {} days, error logs {} days, archive every {} minutes",
+                orderRetentionDays, errorLogRetentionDays, archiveIntervalMinutes);
+    }
+
+    public static RetentionJob fromSystemProperties() {
+        return new RetentionJob(
+                Integer.getInteger("pickmytrade.retention.orderDays", 30),
+                Integer.getInteger("pickmytrade.retention.errorLogDays", 7),
+                Integer.getInteger("pickmytrade.retention.intervalMinutes", 60));
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::runOnce, 1, CHECK_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void runOnce() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastArchiveMillis >= archiveIntervalMs) {
+                lastArchiveMillis = now;
+                archiveClosedOrders(now - orderRetentionMs);
+                pruneErrorLogs(now - errorLogRetentionMs);
+            }
+            if (now - PersistenceWriter.get().getLastWriteMillis() >= QUIET_PERIOD_MS) {
+                vacuum();
+            }
+        } catch (Exception e) {
+            log.error("Retention run failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void archiveClosedOrders(long cutoffMillis) throws SQLException {
+        File dbFile = DatabaseConfig.getDbFile();
+        long startNanos = System.nanoTime();
+        int archived = 0;
+        // ATTACH is not allowed inside a transaction, so archiving uses its own connection beside the writer
+        try (Connection conn = openConnection()) {
+            for (String month : monthsToArchive(conn, cutoffMillis)) {
+                File archive = archiveFile(dbFile, month);
+                try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS archive")) {
+                    attach.setString(1, archive.getAbsolutePath());
+                    attach.execute();
+                }
+                try {
+                    String columns = syncArchiveSchema(conn);
+                    archived += moveMonth(conn, columns, month, cutoffMillis);
+                } finally {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("DETACH DATABASE archive");
+                    }
+                }
+            }
+        }
+        if (archived > 0) {
+            log.info("Archived {} closed orders older than {} in {} ms", archived, cutoffMillis,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    private List<String> monthsToArchive(Connection conn, long cutoffMillis) throws SQLException {
+        List<String> months = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT DISTINCT strftime('%Y_%m', created_at_ms / 1000, 'unixepoch') AS month " +
+                        "FROM order_clients WHERE " + CLOSED_ORDER)) {
+            pstmt.setLong(1, cutoffMillis);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    months.add(rs.getString("month"));
+                }
+            }
+        }
+        return months;
+    }
+
+    // Creates the archive table on first use and adds any column the live table gained since
+    private String syncArchiveSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS archive.order_clients AS SELECT * FROM main.order_clients WHERE 0");
+        }
+        List<String> archiveColumns = tableColumns(conn, "archive");
+        StringBuilder columns = new StringBuilder();
+        for (String column : tableColumns(conn, "main")) {
+            if (!archiveColumns.contains(column)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE archive.order_clients ADD COLUMN " + column);
+                }
+            }
+            columns.append(columns.length() == 0 ? "" : ", ").append(column);
+        }
+        return columns.toString();
+    }
+
+    private static List<String> tableColumns(Connection conn, String schema) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + schema + ".table_info(order_clients)")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    // Small transactions so the writer thread is never locked out for long
+    private int moveMonth(Connection conn, String columns, String month, long cutoffMillis) throws SQLException {
+        String batch = "SELECT id FROM order_clients WHERE " + CLOSED_ORDER +
+                " AND strftime('%Y_%m', created_at_ms / 1000, 'unixepoch') = ? ORDER BY id LIMIT " + BATCH_SIZE;
+        int moved = 0;
+        while (true) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement copy = conn.prepareStatement(
+                    "INSERT INTO archive.order_clients (" + columns + ") SELECT " + columns +
+                            " FROM main.order_clients WHERE id IN (" + batch + ")");
+                 PreparedStatement delete = conn.prepareStatement(
+                         "DELETE FROM main.order_clients WHERE id IN (" + batch + ")")) {
+                copy.setLong(1, cutoffMillis);
+                copy.setString(2, month);
+                int copied = copy.executeUpdate();
+                delete.setLong(1, cutoffMillis);
+                delete.setString(2, month);
+                int deleted = delete.executeUpdate();
+                if (copied != deleted) {
+                    throw new SQLException("Archive copied " + copied + " rows but would delete " + deleted);
+                }
+                conn.commit();
+                moved += copied;
+                if (copied < BATCH_SIZE) {
+                    return moved;
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void pruneErrorLogs(long cutoffMillis) throws SQLException {
+        int total = 0;
+        int[] deleted = new int[1];
+        do {
+            PersistenceWriter.get().execute(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "DELETE FROM error_log_data WHERE id IN " +
+                                "(SELECT id FROM error_log_data WHERE logged_ms < ? LIMIT " + BATCH_SIZE + ")")) {
+                    pstmt.setLong(1, cutoffMillis);
+                    deleted[0] = pstmt.executeUpdate();
+                }
+            });
+            total += deleted[0];
+        } while (deleted[0] > 0);
+        if (total > 0) {
+            log.info("Pruned {} error log rows older than {}", total, cutoffMillis);
+        }
+    }
+
+    // Only ever incremental: a full VACUUM here could hold the file longer than the writer's busy timeout. The
+    // switch to auto_vacuum INCREMENTAL happens at startup in DatabaseConfig.initializeTables().
+    private void vacuum() throws SQLException {
+        try (Connection conn = openConnection();
+             Statement stmt = conn.createStatement()) {
+            int autoVacuum;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                autoVacuum = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (autoVacuum != 2) {
+                log.debug("auto_vacuum is not INCREMENTAL yet, skipping vacuum");
+                return;
+            }
+            long startNanos = System.nanoTime();
+            int freePages;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA freelist_count")) {
+                freePages = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (freePages == 0) {
+                return;
+            }
+            stmt.execute("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_RUN + ")");
+            log.info("Incremental vacuum released up to {} of {} free pages in {} ms", VACUUM_PAGES_PER_RUN, freePages,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    private static Connection openConnection() throws SQLException {
+        Connection conn = DatabaseConfig.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        return conn;
+    }
+
+    // IB_7497.db -> archive/IB_7497_2024_05.db
+    private static File archiveFile(File db, String month) {
+        File dir = new File(db.getParentFile(), "archive");
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.warn("Could not create archive directory {}", dir.getAbsolutePath());
+        }
+        String name = db.getName().endsWith(".db") ? db.getName().substring(0, db.getName().length() - 3) : db.getName();
+        return new File(dir, name + "_" + month + ".db");
+    }
+}
@@ -0,0 +1,66 @@
+package com.pickmytrade.ibapp.db;
+
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// The order_clients table, through the DatabaseConfig methods and the persistence writer
+public class SqliteOrderStore implements OrderStore {
+    @Override
+    public String name() {
+        return "sqlite";
+    }
+
+    @Override
+    public void save(OrderClient orderClient) throws SQLException {
+        DatabaseConfig.saveOrderClient(orderClient);
+    }
+
+    @Override
+    public void update(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) throws SQLException {
+        DatabaseConfig.updateOrderClient(orderClient, updateFields);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAsync(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
+        return DatabaseConfig.updateOrderClientAsync(orderClient, updateFields);
+    }
+
+    @Override
+    public OrderClient findByParentId(String parentId, OrderClientProjection projection) throws SQLException {
+        return DatabaseConfig.getOrderClientByParentId(parentId, projection);
+    }
+
+    @Override
+    public OrderClient findByTpTempId(String tpTempId, OrderClientProjection projection) throws SQLException {
+        return DatabaseConfig.getOrderClientByTpTempId(tpTempId, projection);
+    }
+
+    @Override
+    public OrderClient findBySlTempId(String slTempId, OrderClientProjection projection) throws SQLException {
+        return DatabaseConfig.getOrderClientBySlTempId(slTempId, projection);
+    }
+
+    @Override
+    public OrderClient findByOrderRandomId(String orderRandomId) throws SQLException {
+        return DatabaseConfig.getOrderClientByOrderRandomId(orderRandomId);
+    }
+
+    @Override
+    public List<OrderClient> findActiveSince(long createdAfterMillis) throws SQLException {
+        return DatabaseConfig.getAllOrderClients(createdAfterMillis);
+    }
+
+    @Override
+    public List<OrderClient> findNotSentToServer() throws SQLException {
+        return DatabaseConfig.getOrderClientsNotSentToServer();
+    }
+
+    @Override
+    public void clear() {
+        DatabaseConfig.emptyOrderClientTable();
+    }
+}
@@ -0,0 +1,160 @@
+package com.pickmytrade.ibapp.db;
+
+import com.pickmytrade.ibapp.db.entities.OrderClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+// Serves the trade path from memory and writes updates to SQLite behind it. Inserts stay synchronous because
+// the row id comes from SQLite and the outbox entry has to commit with the row. Updates land in memory at
+// once and are handed to the persistence writer without waiting, so a crash can lose the last group commit
+// but never reorders it. Lookups that miss memory read SQLite and keep the row.
+public class WriteBehindOrderStore implements OrderStore {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindOrderStore.class);
+
+    private final SqliteOrderStore sqlite = new SqliteOrderStore();
+    private final InMemoryOrderStore cache = new InMemoryOrderStore();
+    // Updates of rows not in memory, counted per id until SQLite has them, and a sequence bumped by each one.
+    // A miss caches what it read only if no such update was pending or issued while it read. Both are guarded
+    // by the cache's lock, as are cache updates.
+    private final Map<Integer, Integer> pendingUncachedWrites = new HashMap<>();
+    private long uncachedWriteSeq;
+
+    @Override
+    public String name() {
+        return "write-behind";
+    }
+
+    @Override
+    public void save(OrderClient orderClient) throws SQLException {
+        sqlite.save(orderClient);
+        cache.put(orderClient);
+    }
+
+    @Override
+    public void update(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
+        updateAsync(orderClient, updateFields);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAsync(OrderClient orderClient, Map<OrderClientColumn, Object> updateFields) {
+        Integer id = orderClient != null ? orderClient.getId() : null;
+        boolean cached;
+        CompletableFuture<Void> written;
+        // Memory and the writer queue see concurrent updates of a row in the same order
+        synchronized (cache) {
+            cached = id != null && cache.contains(id);
+            if (id != null && !cached) {
+                pendingUncachedWrites.merge(id, 1, Integer::sum);
+                uncachedWriteSeq++;
+            }
+            written = sqlite.updateAsync(orderClient, updateFields);
+            if (cached) {
+                cache.update(orderClient, updateFields);
+            }
+        }
+        return written.whenComplete((ignored, e) -> {
+            if (id != null && !cached) {
+                synchronized (cache) {
+                    pendingUncachedWrites.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+                }
+            }
+            if (e != null) {
+                log.error("Write-behind update of OrderClient id={} failed: {}", orderClient.getId(), e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public OrderClient findByParentId(String parentId, OrderClientProjection projection) throws SQLException {
+        OrderClient oc = cache.findByParentId(parentId, projection);
+        if (oc != null) {
+            return oc;
+        }
+        long readFromSeq = currentUncachedWriteSeq();
+        return keep(sqlite.findByParentId(parentId, OrderClientProjection.FULL), readFromSeq);
+    }
+
+    @Override
+    public OrderClient findByTpTempId(String tpTempId, OrderClientProjection projection) throws SQLException {
+        OrderClient oc = cache.findByTpTempId(tpTempId, projection);
+        if (oc != null) {
+            return oc;
+        }
+        long readFromSeq = currentUncachedWriteSeq();
+        return keep(sqlite.findByTpTempId(tpTempId, OrderClientProjection.FULL), readFromSeq);
+    }
+
+    @Override
+    public OrderClient findBySlTempId(String slTempId, OrderClientProjection projection) throws SQLException {
+        OrderClient oc = cache.findBySlTempId(slTempId, projection);
+        if (oc != null) {
+            return oc;
+        }
+        long readFromSeq = currentUncachedWriteSeq();
+        return keep(sqlite.findBySlTempId(slTempId, OrderClientProjection.FULL), readFromSeq);
+    }
+
+    @Override
+    public OrderClient findByOrderRandomId(String orderRandomId) throws SQLException {
+        OrderClient oc = cache.findByOrderRandomId(orderRandomId);
+        if (oc != null) {
+            return oc;
+        }
+        long readFromSeq = currentUncachedWriteSeq();
+        return keep(sqlite.findByOrderRandomId(orderRandomId), readFromSeq);
+    }
+
+    // Range queries go to SQLite; rows held in memory replace what was read, as they may be ahead of it
+    @Override
+    public List<OrderClient> findActiveSince(long createdAfterMillis) throws SQLException {
+        return overlay(sqlite.findActiveSince(createdAfterMillis), oc -> Boolean.TRUE.equals(oc.getActive()));
+    }
+
+    @Override
+    public List<OrderClient> findNotSentToServer() throws SQLException {
+        return overlay(sqlite.findNotSentToServer(),
+                oc -> oc.getSentToServer() != OrderClient.SentToServerStatus.Pushed);
+    }
+
+    @Override
+    public void clear() {
+        sqlite.clear();
+        cache.clear();
+    }
+
+    private long currentUncachedWriteSeq() {
+        synchronized (cache) {
+            return uncachedWriteSeq;
+        }
+    }
+
+    // A row read while an update of it was pending or issued may be older than SQLite will be; it is returned
+    // but not cached, so the next lookup reads again
+    private OrderClient keep(OrderClient oc, long readFromSeq) {
+        if (oc == null) {
+            return null;
+        }
+        synchronized (cache) {
+            if (uncachedWriteSeq == readFromSeq && !pendingUncachedWrites.containsKey(oc.getId())) {
+                cache.putIfAbsent(oc);
+            }
+        }
+        return oc;
+    }
+
+    private List<OrderClient> overlay(List<OrderClient> orders, Predicate<OrderClient> stillMatches) {
+        orders.replaceAll(oc -> {
+            OrderClient held = cache.get(oc.getId());
+            return held != null ? held : oc;
+        });
+        orders.removeIf(stillMatches.negate());
+        return orders;
+    }
+}
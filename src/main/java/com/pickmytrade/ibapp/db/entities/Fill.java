@@ -0,0 +1,51 @@
+package com.pickmytrade.ibapp.db.entities;
+
+public class Fill {
+    private String execId;
+    private Integer orderId;
+    private Integer permId;
+    private String account;
+    private String symbol;
+    private String secType;
+    private String side;
+    private Double shares;
+    private Double price;
+    private Double cumQty;
+    private Double avgPrice;
+    private Double commission;
+    private String commissionCurrency;
+    private String execTime;
+    private Long recordedAt;
+
+    // Getters and Setters
+    public String getExecId() { return execId; }
+    public void setExecId(String execId) { this.execId = execId; }
+    public Integer getOrderId() { return orderId; }
+    public void setOrderId(Integer orderId) { this.orderId = orderId; }
+    public Integer getPermId() { return permId; }
+    public void setPermId(Integer permId) { this.permId = permId; }
+    public String getAccount() { return account; }
+    public void setAccount(String account) { this.account = account; }
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+    public String getSecType() { return secType; }
+    public void setSecType(String secType) { this.secType = secType; }
+    public String getSide() { return side; }
+    public void setSide(String side) { this.side = side; }
+    public Double getShares() { return shares; }
+    public void setShares(Double shares) { this.shares = shares; }
+    public Double getPrice() { return price; }
+    public void setPrice(Double price) { this.price = price; }
+    public Double getCumQty() { return cumQty; }
+    public void setCumQty(Double cumQty) { this.cumQty = cumQty; }
+    public Double getAvgPrice() { return avgPrice; }
+    public void setAvgPrice(Double avgPrice) { this.avgPrice = avgPrice; }
+    public Double getCommission() { return commission; }
+    public void setCommission(Double commission) { this.commission = commission; }
+    public String getCommissionCurrency() { return commissionCurrency; }
+    public void setCommissionCurrency(String commissionCurrency) { this.commissionCurrency = commissionCurrency; }
+    public String getExecTime() { return execTime; }
+    public void setExecTime(String execTime) { this.execTime = execTime; }
+    public Long getRecordedAt() { return recordedAt; }
+    public void setRecordedAt(Long recordedAt) { this.recordedAt = recordedAt; }
+}
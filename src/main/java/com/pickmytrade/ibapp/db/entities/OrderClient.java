@@ -34,6 +34,7 @@ public class OrderClient {
     private String slStatus;
     private Boolean active;
     private LocalDateTime createdAt;
+    private Long createdAtMs;
     private String symbol;
     private String exchange;
     private String currency;
@@ -114,6 +115,8 @@ public class OrderClient {
     public void setActive(Boolean active) { this.active = active; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public Long getCreatedAtMs() { return createdAtMs; }
+    public void setCreatedAtMs(Long createdAtMs) { this.createdAtMs = createdAtMs; }
     public String getSymbol() { return symbol; }
     public void setSymbol(String symbol) { this.symbol = symbol; }
     public String getExchange() { return exchange; }
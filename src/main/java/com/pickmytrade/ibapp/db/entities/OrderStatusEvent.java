@@ -0,0 +1,45 @@
+package com.pickmytrade.ibapp.db.entities;
+
+public class OrderStatusEvent {
+    private String session;
+    private long seq;
+    private int orderId;
+    private String status;
+    private String filled;
+    private String remaining;
+    private double avgFillPrice;
+    private int permId;
+    private int parentId;
+    private double lastFillPrice;
+    private int clientId;
+    private String whyHeld;
+    private long enqueuedAt;
+
+    // Getters and Setters
+    public String getSession() { return session; }
+    public void setSession(String session) { this.session = session; }
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+    public int getOrderId() { return orderId; }
+    public void setOrderId(int orderId) { this.orderId = orderId; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getFilled() { return filled; }
+    public void setFilled(String filled) { this.filled = filled; }
+    public String getRemaining() { return remaining; }
+    public void setRemaining(String remaining) { this.remaining = remaining; }
+    public double getAvgFillPrice() { return avgFillPrice; }
+    public void setAvgFillPrice(double avgFillPrice) { this.avgFillPrice = avgFillPrice; }
+    public int getPermId() { return permId; }
+    public void setPermId(int permId) { this.permId = permId; }
+    public int getParentId() { return parentId; }
+    public void setParentId(int parentId) { this.parentId = parentId; }
+    public double getLastFillPrice() { return lastFillPrice; }
+    public void setLastFillPrice(double lastFillPrice) { this.lastFillPrice = lastFillPrice; }
+    public int getClientId() { return clientId; }
+    public void setClientId(int clientId) { this.clientId = clientId; }
+    public String getWhyHeld() { return whyHeld; }
+    public void setWhyHeld(String whyHeld) { this.whyHeld = whyHeld; }
+    public long getEnqueuedAt() { return enqueuedAt; }
+    public void setEnqueuedAt(long enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+}
@@ -0,0 +1,21 @@
+package com.pickmytrade.ibapp.db.entities;
+
+public class OutboxEntry {
+    private long id;
+    private int orderClientId;
+    private long enqueuedAt;
+    private int attempts;
+    private long nextAttemptAt;
+
+    // Getters and Setters
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+    public int getOrderClientId() { return orderClientId; }
+    public void setOrderClientId(int orderClientId) { this.orderClientId = orderClientId; }
+    public long getEnqueuedAt() { return enqueuedAt; }
+    public void setEnqueuedAt(long enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public long getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(long nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+}
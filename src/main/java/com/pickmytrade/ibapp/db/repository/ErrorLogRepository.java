@@ -26,17 +26,11 @@ public class ErrorLogRepository {
     public ErrorLog getErrorData(String contract) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM error_log_data WHERE contract = ? ORDER BY logged DESC LIMIT 1")) {
+                     "SELECT " + DatabaseConfig.ERROR_LOG_COLUMNS + " FROM error_log_data WHERE contract = ? ORDER BY logged DESC LIMIT 1")) {
             pstmt.setString(1, contract);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    ErrorLog error = new ErrorLog();
-                    error.setId(rs.getInt("id"));
-                    error.setReqId(rs.getString("req_id"));
-                    error.setErrorCode(rs.getString("error_code"));
-                    error.setErrorString(rs.getString("error_string"));
-                    error.setContract(rs.getString("contract"));
-                    error.setLogged(rs.getObject("logged", LocalDateTime.class));
+                    ErrorLog error = DatabaseConfig.mapErrorLog(rs);
 
                     LocalDateTime now = LocalDateTime.now();
                     if (ChronoUnit.SECONDS.between(error.getLogged(), now) <= 2) {
@@ -53,17 +47,11 @@ public class ErrorLogRepository {
     public ErrorLog getErrorDataById(String id) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM error_log_data WHERE req_id = ? ORDER BY logged DESC LIMIT 1")) {
+                     "SELECT " + DatabaseConfig.ERROR_LOG_COLUMNS + " FROM error_log_data WHERE req_id = ? ORDER BY logged DESC LIMIT 1")) {
             pstmt.setString(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    ErrorLog error = new ErrorLog();
-                    error.setId(rs.getInt("id"));
-                    error.setReqId(rs.getString("req_id"));
-                    error.setErrorCode(rs.getString("error_code"));
-                    error.setErrorString(rs.getString("error_string"));
-                    error.setContract(rs.getString("contract"));
-                    error.setLogged(rs.getObject("logged", LocalDateTime.class));
+                    ErrorLog error = DatabaseConfig.mapErrorLog(rs);
 
                     LocalDateTime now = LocalDateTime.now();
                     if (ChronoUnit.SECONDS.between(error.getLogged(), now) <= 2) {
@@ -1,6 +1,7 @@
 package com.pickmytrade.ibapp.db.repository;
 
 import com.pickmytrade.ibapp.db.DatabaseConfig;
+import com.pickmytrade.ibapp.db.OrderClientProjection;
 import com.pickmytrade.ibapp.db.entities.OrderClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,12 +10,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 public class OrderClientRepository {
     private static final Logger log = LoggerFactory.getLogger(OrderClientRepository.class);
+    private static final OrderClientProjection FULL = OrderClientProjection.FULL;
 
     public void saveOrderClient(OrderClient orderClient) {
         try {
@@ -38,10 +39,10 @@ public class OrderClientRepository {
         List<OrderClient> orders = new ArrayList<>();
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE tp_temp_id IS NULL AND sl_temp_id IS NULL AND entry_status IN ('FILLED', 'SUBMITTED', 'PRESUBMITTED')")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE tp_temp_id IS NULL AND sl_temp_id IS NULL AND entry_status IN ('FILLED', 'SUBMITTED', 'PRESUBMITTED')")) {
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    orders.add(mapResultSetToOrderClient(rs));
+                    orders.add(FULL.map(rs));
                 }
             }
         } catch (SQLException e) {
@@ -54,11 +55,11 @@ public class OrderClientRepository {
         List<OrderClient> orders = new ArrayList<>();
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE orders_random_id = ? AND entry_status IN ('FILLED', 'SUBMITTED', 'PRESUBMITTED')")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE orders_random_id = ? AND entry_status IN ('FILLED', 'SUBMITTED', 'PRESUBMITTED')")) {
             pstmt.setString(1, randomId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    orders.add(mapResultSetToOrderClient(rs));
+                    orders.add(FULL.map(rs));
                 }
             }
         } catch (SQLException e) {
@@ -80,11 +81,11 @@ public class OrderClientRepository {
         List<OrderClient> orders = new ArrayList<>();
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE orders_random_id = ? AND entry_status NOT IN ('SUBMITTED', 'FILLED')")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE orders_random_id = ? AND entry_status NOT IN ('SUBMITTED', 'FILLED')")) {
             pstmt.setString(1, randomId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    orders.add(mapResultSetToOrderClient(rs));
+                    orders.add(FULL.map(rs));
                 }
             }
         } catch (SQLException e) {
@@ -96,11 +97,11 @@ public class OrderClientRepository {
     public OrderClient getOrderClientAlertByEntry(String entryId) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE entry_id = ? ORDER BY id DESC LIMIT 1")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE entry_id = ? ORDER BY id DESC LIMIT 1")) {
             pstmt.setString(1, entryId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
+                    return FULL.map(rs);
                 }
             }
         } catch (SQLException e) {
@@ -122,10 +123,10 @@ public class OrderClientRepository {
         List<OrderClient> orders = new ArrayList<>();
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE entry_status = 'SUBMITTED'")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE entry_status = 'SUBMITTED'")) {
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    orders.add(mapResultSetToOrderClient(rs));
+                    orders.add(FULL.map(rs));
                 }
             }
         } catch (SQLException e) {
@@ -137,11 +138,11 @@ public class OrderClientRepository {
     public OrderClient getOrderClientAlertById(Integer id) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE id = ? ORDER BY id DESC LIMIT 1")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE id = ? ORDER BY id DESC LIMIT 1")) {
             pstmt.setInt(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
+                    return FULL.map(rs);
                 }
             }
         } catch (SQLException e) {
@@ -153,12 +154,12 @@ public class OrderClientRepository {
     public OrderClient getOrderClientAlertByAccountId(String accountId, String status) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE account_id = ? AND entry_status = ? ORDER BY id DESC LIMIT 1")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE account_id = ? AND entry_status = ? ORDER BY id DESC LIMIT 1")) {
             pstmt.setString(1, accountId);
             pstmt.setString(2, status);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
+                    return FULL.map(rs);
                 }
             }
         } catch (SQLException e) {
@@ -170,11 +171,11 @@ public class OrderClientRepository {
     public OrderClient getOrderClientAlertByTp(String tpId) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE tp_id = ? ORDER BY id DESC LIMIT 1")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE tp_id = ? ORDER BY id DESC LIMIT 1")) {
             pstmt.setString(1, tpId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
+                    return FULL.map(rs);
                 }
             }
         } catch (SQLException e) {
@@ -186,11 +187,11 @@ public class OrderClientRepository {
     public OrderClient getOrderClientAlertBySl(String slId) {
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
-                     "SELECT * FROM order_clients WHERE sl_id = ? ORDER BY id DESC LIMIT 1")) {
+                     "SELECT " + FULL.selectList() + " FROM order_clients WHERE sl_id = ? ORDER BY id DESC LIMIT 1")) {
             pstmt.setString(1, slId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToOrderClient(rs);
+                    return FULL.map(rs);
                 }
             }
         } catch (SQLException e) {
@@ -225,53 +226,4 @@ public class OrderClientRepository {
             return new ArrayList<>();
         }
     }
-
-    private OrderClient mapResultSetToOrderClient(ResultSet rs) throws SQLException {
-        OrderClient oc = new OrderClient();
-        oc.setId(rs.getInt("id"));
-        oc.setOrdersRandomId(rs.getString("orders_random_id"));
-        oc.setClientDbId(rs.getObject("client_db_id") != null ? rs.getInt("client_db_id") : null);
-        oc.setClientName(rs.getString("client_name"));
-        oc.setAccountId(rs.getString("account_id"));
-        oc.setRiskMultiplier(rs.getString("risk_multiplier"));
-        oc.setFund(rs.getObject("fund") != null ? rs.getFloat("fund") : null);
-        oc.setMaxStock(rs.getObject("max_stock") != null ? rs.getInt("max_stock") : null);
-        oc.setContractJson(rs.getString("contract_json"));
-        oc.setOrderJson(rs.getString("order_json"));
-        oc.setRemaining(rs.getFloat("remaining"));
-        oc.setRmOption(rs.getObject("rm_option") != null ? rs.getFloat("rm_option") : null);
-        oc.setRmStock(rs.getObject("rm_stock") != null ? rs.getFloat("rm_stock") : null);
-        oc.setQuantity(rs.getObject("quantity") != null ? rs.getInt("quantity") : null);
-        oc.setParentId(rs.getString("parent_id"));
-        oc.setEntryPrice(rs.getObject("entry_price") != null ? rs.getFloat("entry_price") : null);
-        oc.setEntryFilledPrice(rs.getObject("entry_filled_price") != null ? rs.getFloat("entry_filled_price") : null);
-        oc.setTpFilledPrice(rs.getObject("tp_filled_price") != null ? rs.getFloat("tp_filled_price") : null);
-        oc.setTpPrice(rs.getObject("tp_price") != null ? rs.getFloat("tp_price") : null);
-        oc.setSlPrice(rs.getObject("sl_price") != null ? rs.getFloat("sl_price") : null);
-        oc.setStrike(rs.getString("strike"));
-        oc.setEntryId(rs.getString("entry_id"));
-        oc.setTpTempId(rs.getString("tp_temp_id"));
-        oc.setSlTempId(rs.getString("sl_temp_id"));
-        oc.setTpId(rs.getString("tp_id"));
-        oc.setSlId(rs.getString("sl_id"));
-        oc.setEntryStatus(rs.getString("entry_status"));
-        oc.setTpStatus(rs.getString("tp_status"));
-        oc.setSlStatus(rs.getString("sl_status"));
-        oc.setActive(rs.getObject("active") != null ? rs.getBoolean("active") : null);
-        oc.setCreatedAt(rs.getObject("created_at", LocalDateTime.class));
-        oc.setSymbol(rs.getString("symbol"));
-        oc.setExchange(rs.getString("exchange"));
-        oc.setCurrency(rs.getString("currency"));
-        oc.setMaturityDate(rs.getString("maturity_date"));
-        oc.setTradingClass(rs.getString("trading_class"));
-        oc.setCallPut(rs.getString("call_put"));
-        oc.setAction(rs.getString("action"));
-        oc.setSecurityType(rs.getString("security_type"));
-        oc.setOrderType(rs.getString("order_type"));
-        oc.setPrice(rs.getString("price"));
-        oc.setErrorMessage(rs.getString("error_message"));
-        oc.setSentToServer(rs.getString("sent_to_server") != null ?
-                OrderClient.SentToServerStatus.valueOf(rs.getString("sent_to_server")) : OrderClient.SentToServerStatus.Initialized);
-        return oc;
-    }
 }
\ No newline at end of file